@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.rengen.takehome"
@@ -16,9 +17,7 @@ dependencies {
     implementation("io.vertx:vertx-web-client:4.4.5")
     implementation("io.vertx:vertx-core:4.4.5")
     implementation("io.vertx:vertx-config:4.4.5")
-    implementation("org.glassfish.tyrus.bundles:tyrus-standalone-client:1.18")
-    implementation("javax.json:javax.json-api:1.1.4")
-    implementation("org.glassfish:javax.json:1.1.4")
+    implementation("io.vertx:vertx-hazelcast:4.4.5")
 
     testImplementation("org.junit.jupiter:junit-jupiter:5.9.3")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
@@ -40,3 +39,19 @@ application {
 tasks.test {
     useJUnitPlatform()
 }
+
+// Hot-path benchmarks live in src/jmh/java; run with ./gradlew jmh
+jmh {
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
+
+// Local Kucoin stand-in for load tests; set "kucoin" in config.json to point the service at it
+tasks.register<JavaExec>("runSimulator") {
+    group = "application"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.rengen.takehome.KucoinSimulator")
+}
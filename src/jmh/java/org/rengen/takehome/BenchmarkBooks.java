@@ -0,0 +1,139 @@
+package org.rengen.takehome;
+
+import java.util.Random;
+
+// Deterministic book and update generators shared by the benchmarks. Prices sit on a 0.1 tick
+// grid around a BTC-like mid.
+final class BenchmarkBooks {
+    static final String SYMBOL = "BTC-USDT";
+    static final double MID = 30000.0;
+    static final double TICK = 0.1;
+    static final long SNAPSHOT_SEQUENCE = 1_000_000L;
+
+    // Matches OrderBook's retained depth so the shadow book used for generation stays in step
+    private static final int BOOK_DEPTH = 100;
+    private static final int NEAR_TOUCH_LEVELS = 5;
+
+    private BenchmarkBooks() {
+    }
+
+    static OrderBookSnapshot snapshot(int depth) {
+        PriceLevels bids = new PriceLevels(true, depth);
+        PriceLevels asks = new PriceLevels(false, depth);
+        for (int k = 1; k <= depth; k++) {
+            bids.set(bidPrice(k), 1.0 + (k % 7) * 0.25);
+            asks.set(askPrice(k), 1.0 + (k % 5) * 0.5);
+        }
+        return new OrderBookSnapshot(SYMBOL, SNAPSHOT_SEQUENCE, bids, asks);
+    }
+
+    static double bidPrice(int ticksFromMid) {
+        return MID - ticksFromMid * TICK;
+    }
+
+    static double askPrice(int ticksFromMid) {
+        return MID + ticksFromMid * TICK;
+    }
+
+    // One change per update: half size updates, a quarter inserts between existing levels and a
+    // quarter deletes. The mix decides where in the book the touched level sits.
+    static Level2Update[] randomUpdates(OrderBookSnapshot snapshot, String mix, int count, Random random) {
+        PriceLevels bids = copy(snapshot.getBids());
+        PriceLevels asks = copy(snapshot.getAsks());
+        long sequence = snapshot.getSequence();
+        Level2Update[] updates = new Level2Update[count];
+        for (int i = 0; i < count; i++) {
+            boolean bidSide = random.nextBoolean();
+            PriceLevels side = bidSide ? bids : asks;
+            int level = pickLevel(mix, side.size(), random);
+            int op = random.nextInt(4);
+
+            double price;
+            double size;
+            if (op == 3 && side.size() > 1) {
+                price = side.priceAt(level);
+                size = 0.0;
+                side.remove(price);
+            } else if (op == 2) {
+                price = side.priceAt(level) + (bidSide ? -TICK / 2 : TICK / 2);
+                size = randomSize(random);
+                side.set(price, size);
+                side.truncate(BOOK_DEPTH);
+            } else {
+                price = side.priceAt(level);
+                size = randomSize(random);
+                side.set(price, size);
+            }
+
+            sequence++;
+            Level2Update update = newUpdate(sequence, sequence);
+            (bidSide ? update.getBids() : update.getAsks()).add(price, size, sequence);
+            updates[i] = update;
+        }
+        return updates;
+    }
+
+    // The market walking up one tick per update: a new best bid on top (pushing the worst bid
+    // out once the book is full), the best ask taken out and a new ask added at the far end
+    static Level2Update[] churnUpdates(OrderBookSnapshot snapshot, int count) {
+        int depth = snapshot.getAsks().size();
+        long sequence = snapshot.getSequence();
+        Level2Update[] updates = new Level2Update[count];
+        for (int i = 0; i < count; i++) {
+            Level2Update update = newUpdate(sequence + 1, sequence + 3);
+            update.getBids().add(bidPrice(-i), 2.0, ++sequence);
+            update.getAsks().add(askPrice(i + 1), 0.0, ++sequence);
+            update.getAsks().add(askPrice(i + 1 + depth), 1.5, ++sequence);
+            updates[i] = update;
+        }
+        return updates;
+    }
+
+    // The official side used for validation: the first levels of the book, with some sizes off
+    static OrderBookSnapshot officialSnapshot(int depth, int mismatchedLevels) {
+        OrderBookSnapshot official = snapshot(depth);
+        for (int i = 0; i < mismatchedLevels && i < depth; i++) {
+            official.getBids().set(official.getBids().priceAt(i), 9.0);
+            official.getAsks().set(official.getAsks().priceAt(i), 9.0);
+        }
+        return official;
+    }
+
+    private static int pickLevel(String mix, int depth, Random random) {
+        boolean nearTouch;
+        switch (mix) {
+            case "NEAR_TOUCH":
+                nearTouch = true;
+                break;
+            case "DEEP":
+                nearTouch = false;
+                break;
+            default:
+                nearTouch = random.nextInt(10) < 7;
+                break;
+        }
+        if (nearTouch) {
+            return random.nextInt(Math.min(NEAR_TOUCH_LEVELS, depth));
+        }
+        int from = depth / 2;
+        return from + random.nextInt(depth - from);
+    }
+
+    private static double randomSize(Random random) {
+        return 0.001 + random.nextInt(5000) / 1000.0;
+    }
+
+    private static Level2Update newUpdate(long sequenceStart, long sequenceEnd) {
+        Level2Update update = new Level2Update();
+        update.setSymbol(SYMBOL);
+        update.setSequenceStart(sequenceStart);
+        update.setSequenceEnd(sequenceEnd);
+        return update;
+    }
+
+    private static PriceLevels copy(PriceLevels levels) {
+        PriceLevels copy = new PriceLevels(levels.isDescending(), levels.size());
+        levels.forEach(copy::set);
+        return copy;
+    }
+}
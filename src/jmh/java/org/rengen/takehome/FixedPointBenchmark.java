@@ -0,0 +1,71 @@
+package org.rengen.takehome;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Price and size strings as they appear in level2 messages, read as fixed point and as doubles
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedPointBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final String[] values = new String[COUNT];
+    private final long[] scaled = new long[COUNT];
+    private final StringBuilder sb = new StringBuilder(32);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = i % 2 == 0
+                    ? String.valueOf(20000 + random.nextInt(20000)) + "." + random.nextInt(10)
+                    : "0." + String.format("%08d", random.nextInt(100_000_000));
+            scaled[i] = FixedPoint.parse(values[i], SymbolPrecision.DEFAULT.getPriceDecimals());
+        }
+    }
+
+    @Benchmark
+    public long parseFixedPoint() {
+        long sum = 0;
+        for (String value : values) {
+            sum += FixedPoint.parse(value, SymbolPrecision.DEFAULT.getPriceDecimals());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double parseDouble() {
+        double sum = 0;
+        for (String value : values) {
+            sum += Double.parseDouble(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int formatFixedPoint() {
+        int length = 0;
+        for (long value : scaled) {
+            sb.setLength(0);
+            length += FixedPoint.format(sb, value, SymbolPrecision.DEFAULT.getPriceDecimals()).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int formatDouble() {
+        int length = 0;
+        for (long value : scaled) {
+            sb.setLength(0);
+            length += sb.append(FixedPoint.toDouble(value, SymbolPrecision.DEFAULT.getPriceDecimals())).length();
+        }
+        return length;
+    }
+}
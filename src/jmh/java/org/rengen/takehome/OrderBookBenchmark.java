@@ -0,0 +1,83 @@
+package org.rengen.takehome;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of the OrderBook write and read paths. Run with the gc profiler (the Gradle jmh
+// task enables it) to see the allocation rate per operation next to the score.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    private static final int UPDATE_COUNT = 4096;
+
+    @Param({"20", "50", "100"})
+    public int depth;
+
+    @Param({"NEAR_TOUCH", "DEEP", "MIXED"})
+    public String mix;
+
+    private OrderBookSnapshot snapshot;
+    private Level2Update[] updates;
+    private Level2Update[] churn;
+
+    private OrderBook snapshotBook;
+    private OrderBook incrementalBook;
+    private OrderBook churnBook;
+    private int nextUpdate;
+    private int nextChurn;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshot = BenchmarkBooks.snapshot(depth);
+        updates = BenchmarkBooks.randomUpdates(snapshot, mix, UPDATE_COUNT, new Random(42));
+        churn = BenchmarkBooks.churnUpdates(snapshot, UPDATE_COUNT);
+
+        snapshotBook = new OrderBook();
+        snapshotBook.applySnapshot(snapshot);
+        incrementalBook = new OrderBook();
+        incrementalBook.applySnapshot(snapshot);
+        churnBook = new OrderBook();
+        churnBook.applySnapshot(snapshot);
+    }
+
+    @Benchmark
+    public long applySnapshot() {
+        snapshotBook.applySnapshot(snapshot);
+        return snapshotBook.getLastSequence();
+    }
+
+    // The generated stream assumes it starts from the snapshot, so the book is reset whenever the
+    // stream wraps; that costs one snapshot per 4096 updates
+    @Benchmark
+    public int applyIncremental() {
+        if (nextUpdate == updates.length) {
+            incrementalBook.applySnapshot(snapshot);
+            nextUpdate = 0;
+        }
+        incrementalBook.applyIncremental(updates[nextUpdate++]);
+        return incrementalBook.getBids().size();
+    }
+
+    // Every update pushes a new best bid, so once the side is full each batch ends in a prune
+    @Benchmark
+    public int applyIncrementalWithPruneChurn() {
+        if (nextChurn == churn.length) {
+            churnBook.applySnapshot(snapshot);
+            nextChurn = 0;
+        }
+        churnBook.applyIncremental(churn[nextChurn++]);
+        return churnBook.getBids().size();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return snapshotBook.toJson();
+    }
+}
@@ -0,0 +1,45 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of validating a book against a level2_20 style official snapshot
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookComparatorBenchmark {
+
+    private static final int OFFICIAL_DEPTH = 20;
+
+    @Param({"20", "100"})
+    public int depth;
+
+    @Param({"0", "5"})
+    public int mismatchedLevels;
+
+    private OrderBook book;
+    private OrderBookSnapshot official;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        book = new OrderBook();
+        book.applySnapshot(BenchmarkBooks.snapshot(depth));
+        official = BenchmarkBooks.officialSnapshot(OFFICIAL_DEPTH, mismatchedLevels);
+    }
+
+    @Benchmark
+    public JsonObject compareOrderBooks() {
+        return OrderBookComparator.compareOrderBooks(book, official);
+    }
+
+    @Benchmark
+    public double calculateMatchPercentage() {
+        return OrderBookComparator.calculateMatchPercentage(book.getBids(), official.getBids())
+                + OrderBookComparator.calculateMatchPercentage(book.getAsks(), official.getAsks());
+    }
+}
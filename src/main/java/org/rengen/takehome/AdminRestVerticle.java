@@ -12,7 +12,7 @@ public class AdminRestVerticle extends AbstractVerticle {
 
         // GET endpoint to force stop the WebSocket (disable auto reconnect)
         router.get("/admin/websocket/stop").handler(ctx -> {
-            vertx.eventBus().request("websocket.stop", "", reply -> {
+            vertx.eventBus().request("websocket.stop", "", LocalMessageCodec.LOCAL_ONLY, reply -> {
                 if (reply.succeeded()) {
                     ctx.response()
                             .putHeader("content-type", "application/json")
@@ -25,7 +25,7 @@ public class AdminRestVerticle extends AbstractVerticle {
 
         // GET endpoint to force start the WebSocket (no auto reconnect)
         router.get("/admin/websocket/start").handler(ctx -> {
-            vertx.eventBus().request("websocket.start", "", reply -> {
+            vertx.eventBus().request("websocket.start", "", LocalMessageCodec.LOCAL_ONLY, reply -> {
                 if (reply.succeeded()) {
                     ctx.response()
                             .putHeader("content-type", "application/json")
@@ -38,7 +38,7 @@ public class AdminRestVerticle extends AbstractVerticle {
 
         // GET endpoint to restart the WebSocket with auto reconnect enabled
         router.get("/admin/websocket/restart").handler(ctx -> {
-            vertx.eventBus().request("websocket.restart", "", reply -> {
+            vertx.eventBus().request("websocket.restart", "", LocalMessageCodec.LOCAL_ONLY, reply -> {
                 if (reply.succeeded()) {
                     ctx.response()
                             .putHeader("content-type", "application/json")
@@ -49,9 +49,14 @@ public class AdminRestVerticle extends AbstractVerticle {
             });
         });
 
+        // Prometheus scrape endpoint
+        router.get("/metrics").handler(ctx -> ctx.response()
+                .putHeader("content-type", "text/plain; version=0.0.4")
+                .end(Metrics.get().toPrometheus()));
+
         vertx.createHttpServer()
                 .requestHandler(router)
-                .listen(8081)
+                .listen(config().getInteger("adminPort", 8081))
                 .onSuccess(server -> {
                     System.out.println("Admin REST server started on port " + server.actualPort());
                     startPromise.complete();
@@ -0,0 +1,125 @@
+package org.rengen.takehome;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Point-in-time copy of a shard's books in a memory-mapped file, so a restarted service can
+// serve (stale) books immediately instead of waiting for a snapshot round. Layout:
+//
+//   int magic | int formatVersion | int bookCount | long savedAtMillis
+//   per book: short symbolLength | symbol | byte priceDecimals | byte sizeDecimals | long sequence
+//             | int bidCount | int askCount | (long price, long size) per bid | ... per ask
+//
+// Levels are stored as the book's fixed point values; a book restored under a different
+// precision is rescaled when it is loaded.
+//
+// A checkpoint is written to a temporary file and renamed over the previous one, so readers
+// only ever see a complete file.
+public class BookCheckpoint {
+    static final int MAGIC = 0x4B424B31;
+    static final int FORMAT_VERSION = 2;
+    static final String FILE_PREFIX = "checkpoint-";
+    static final String FILE_SUFFIX = ".dat";
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+
+    private BookCheckpoint() {
+    }
+
+    public static Path file(Path directory, int shard) {
+        return directory.resolve(FILE_PREFIX + shard + FILE_SUFFIX);
+    }
+
+    public static void write(Path file, Map<String, BookView> books) throws IOException {
+        int size = HEADER_BYTES;
+        for (Map.Entry<String, BookView> e : books.entrySet()) {
+            BookView view = e.getValue();
+            size += 2 + e.getKey().length() + 2 + 8 + 4 + 4 + (view.getBids().size() + view.getAsks().size()) * 16;
+        }
+
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(books.size()).putLong(System.currentTimeMillis());
+            for (Map.Entry<String, BookView> e : books.entrySet()) {
+                byte[] symbol = e.getKey().getBytes(StandardCharsets.US_ASCII);
+                BookView view = e.getValue();
+                SymbolPrecision precision = view.getBids().getPrecision();
+                out.putShort((short) symbol.length).put(symbol)
+                        .put((byte) precision.getPriceDecimals()).put((byte) precision.getSizeDecimals())
+                        .putLong(view.getSequence())
+                        .putInt(view.getBids().size()).putInt(view.getAsks().size());
+                putLevels(out, view.getBids());
+                putLevels(out, view.getAsks().withPrecision(precision));
+            }
+            out.force();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void putLevels(MappedByteBuffer out, PriceLevels side) {
+        for (int i = 0; i < side.size(); i++) {
+            out.putLong(side.scaledPriceAt(i)).putLong(side.scaledSizeAt(i));
+        }
+    }
+
+    // Reads every book in the file as a snapshot of its checkpointed state
+    public static List<OrderBookSnapshot> read(Path file) throws IOException {
+        List<OrderBookSnapshot> books = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a book checkpoint: " + file);
+            }
+            int count = in.getInt();
+            in.getLong();
+            for (int b = 0; b < count; b++) {
+                byte[] symbol = new byte[in.getShort()];
+                in.get(symbol);
+                SymbolPrecision precision = new SymbolPrecision(in.get(), in.get());
+                long sequence = in.getLong();
+                int bidCount = in.getInt();
+                int askCount = in.getInt();
+                PriceLevels bids = readLevels(in, true, bidCount, precision);
+                PriceLevels asks = readLevels(in, false, askCount, precision);
+                books.add(new OrderBookSnapshot(new String(symbol, StandardCharsets.US_ASCII), sequence, bids, asks));
+            }
+        }
+        return books;
+    }
+
+    private static PriceLevels readLevels(MappedByteBuffer in, boolean descending, int count, SymbolPrecision precision) {
+        PriceLevels levels = new PriceLevels(descending, count, precision);
+        for (int i = 0; i < count; i++) {
+            // Stored best first, so every set() appends
+            levels.setScaled(in.getLong(), in.getLong());
+        }
+        return levels;
+    }
+
+    // Checkpoint files of every shard; after a change in shard count a symbol may sit in any of them
+    public static List<Path> files(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (Stream<Path> list = Files.list(directory)) {
+            list.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().forEach(files::add);
+        }
+        return files;
+    }
+}
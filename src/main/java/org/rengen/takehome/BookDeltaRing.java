@@ -0,0 +1,48 @@
+package org.rengen.takehome;
+
+// Every level change applied to one book, one entry per price level. Columns: time, sequence,
+// fixed point price and size, side, then the price and size decimals. A size of 0 removes the
+// level.
+public class BookDeltaRing extends TimeSeriesRing {
+    private final int sequenceBase;
+    private final int priceBase;
+    private final int sizeBase;
+    private final int sideBase;
+    private final int priceDecimalsBase;
+    private final int sizeDecimalsBase;
+
+    public BookDeltaRing(int capacity) {
+        super(capacity, 8 + 8 + 8 + 1 + 2);
+        sequenceBase = columnBase(8);
+        priceBase = columnBase(16);
+        sizeBase = columnBase(24);
+        sideBase = columnBase(32);
+        priceDecimalsBase = columnBase(33);
+        sizeDecimalsBase = columnBase(34);
+    }
+
+    public void add(long time, long sequence, boolean bid, long price, long size, SymbolPrecision precision) {
+        int slot = append(time);
+        data.putLong(sequenceBase + slot * 8, sequence);
+        data.putLong(priceBase + slot * 8, price);
+        data.putLong(sizeBase + slot * 8, size);
+        data.put(sideBase + slot, (byte) (bid ? 1 : 0));
+        data.put(priceDecimalsBase + slot, (byte) precision.getPriceDecimals());
+        data.put(sizeDecimalsBase + slot, (byte) precision.getSizeDecimals());
+    }
+
+    public long sequenceAt(long index) {
+        return data.getLong(sequenceBase + slot(index) * 8);
+    }
+
+    // {"type":"delta","ts":..,"sequence":..,"side":"bid","price":..,"size":..}
+    public void appendJson(StringBuilder sb, long index) {
+        int slot = slot(index);
+        sb.append("{\"type\":\"delta\",\"ts\":").append(timeAt(index))
+                .append(",\"sequence\":").append(data.getLong(sequenceBase + slot * 8))
+                .append(",\"side\":\"").append(data.get(sideBase + slot) == 1 ? "bid" : "ask")
+                .append("\",\"price\":");
+        FixedPoint.format(sb, data.getLong(priceBase + slot * 8), data.get(priceDecimalsBase + slot)).append(",\"size\":");
+        FixedPoint.format(sb, data.getLong(sizeBase + slot * 8), data.get(sizeDecimalsBase + slot)).append('}');
+    }
+}
@@ -0,0 +1,110 @@
+package org.rengen.takehome;
+
+// Recent history of one book held off-heap: periodic samples of the top levels, plus every
+// applied level change when deltas are retained. Owned by the shard that owns the book and only
+// touched from its event loop.
+public class BookHistory {
+    private final BookSampleRing samples;
+    private final BookDeltaRing deltas;
+    private long sampledVersion = -1;
+
+    // deltaCapacity 0 keeps samples only
+    public BookHistory(int capacity, int depth, int deltaCapacity) {
+        this.samples = new BookSampleRing(capacity, depth);
+        this.deltas = deltaCapacity > 0 ? new BookDeltaRing(deltaCapacity) : null;
+    }
+
+    // Skipped when the book has not changed since the last sample, so a quiet book costs nothing
+    // and the sample at or before any time is still its state at that time
+    public void sample(long time, OrderBook book) {
+        if (book.getLastSequence() == -1 || book.getVersion() == sampledVersion) {
+            return;
+        }
+        samples.add(time, book.getLastSequence(), book.getBids(), book.getAsks());
+        sampledVersion = book.getVersion();
+    }
+
+    // Call before the update is applied: changes at or below lastSequence are the ones the book skips
+    public void recordChanges(long time, long lastSequence, Level2Update update) {
+        if (deltas == null) {
+            return;
+        }
+        recordSide(time, lastSequence, true, update.getBids(), update.getPrecision());
+        recordSide(time, lastSequence, false, update.getAsks(), update.getPrecision());
+    }
+
+    private void recordSide(long time, long lastSequence, boolean bid, Level2Update.Changes changes, SymbolPrecision precision) {
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.sequenceAt(i) > lastSequence) {
+                deltas.add(time, changes.sequenceAt(i), bid, changes.scaledPriceAt(i), changes.scaledSizeAt(i), precision);
+            }
+        }
+    }
+
+    public BookSampleRing getSamples() {
+        return samples;
+    }
+
+    public boolean retainsDeltas() {
+        return deltas != null;
+    }
+
+    // The sample in effect at time, or null if the history does not reach back that far
+    public String sampleAt(long time) {
+        long index = samples.floor(time);
+        if (index < 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(256 + samples.depth() * 64);
+        samples.appendJson(sb, index);
+        return sb.toString();
+    }
+
+    public Cursor range(long from, long to, boolean includeDeltas) {
+        return new Cursor(from, to, includeDeltas && deltas != null);
+    }
+
+    // Walks samples and deltas between two times in time order; at equal times a delta goes
+    // before the sample that already contains it. Entries overwritten while a slow reader is
+    // behind are skipped.
+    public class Cursor {
+        private final long to;
+        private final boolean withDeltas;
+        private long nextSample;
+        private long nextDelta;
+
+        Cursor(long from, long to, boolean withDeltas) {
+            this.to = to;
+            this.withDeltas = withDeltas;
+            this.nextSample = samples.ceiling(from);
+            this.nextDelta = withDeltas ? deltas.ceiling(from) : -1;
+        }
+
+        // Appends the next entry as one JSON object; false once the range is exhausted
+        public boolean appendNext(StringBuilder sb) {
+            nextSample = Math.max(nextSample, samples.oldest());
+            boolean hasSample = nextSample < samples.end() && samples.timeAt(nextSample) <= to;
+            boolean hasDelta = false;
+            if (withDeltas) {
+                nextDelta = Math.max(nextDelta, deltas.oldest());
+                hasDelta = nextDelta < deltas.end() && deltas.timeAt(nextDelta) <= to;
+            }
+            if (hasDelta && (!hasSample || deltaFirst())) {
+                deltas.appendJson(sb, nextDelta++);
+                return true;
+            }
+            if (hasSample) {
+                samples.appendJson(sb, nextSample++);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean deltaFirst() {
+            long deltaTime = deltas.timeAt(nextDelta);
+            long sampleTime = samples.timeAt(nextSample);
+            return deltaTime < sampleTime
+                    || (deltaTime == sampleTime && deltas.sequenceAt(nextDelta) <= samples.sequenceAt(nextSample));
+        }
+    }
+}
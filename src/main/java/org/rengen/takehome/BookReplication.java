@@ -0,0 +1,158 @@
+package org.rengen.takehome;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Streams what a shard feeds its books to the standby node of each symbol, over the clustered
+// event bus. The standby runs the records through the same code path as its own input, and since
+// every record carries exchange sequence numbers, applying one twice or late is harmless: the
+// book skips what it has already seen.
+//
+// Records written during one event loop turn go out as one message per node. Wire layout:
+//
+//   byte type | short symbolLength | symbol | byte priceDecimals | byte sizeDecimals
+//   SNAPSHOT: long sequence | int bidCount | int askCount | (long price, long size) per level
+//   UPDATE:   long sequenceStart | long sequenceEnd | long time | int bidCount | int askCount
+//             | (long price, long size, long sequence) per change
+//
+// Prices and sizes travel as the fixed point values the sender holds, at the precision in the
+// header, so the standby ends up with exactly the same levels.
+public class BookReplication {
+    public static final String ADDRESS_PREFIX = "orderbook.replica.";
+    static final byte SNAPSHOT = 1;
+    static final byte UPDATE = 2;
+
+    private final Vertx vertx;
+    private final Context context;
+    private final Map<String, Buffer> pending = new HashMap<>();
+    private boolean flushScheduled;
+
+    public BookReplication(Vertx vertx, Context context) {
+        this.vertx = vertx;
+        this.context = context;
+    }
+
+    // Where a node receives the records replicated to it
+    public static String address(String node) {
+        return ADDRESS_PREFIX + node;
+    }
+
+    public void snapshot(String node, String symbol, long sequence, PriceLevels bids, PriceLevels asks) {
+        appendSnapshot(bufferFor(node), symbol, sequence, bids, asks);
+    }
+
+    public void update(String node, Level2Update update) {
+        appendUpdate(bufferFor(node), update);
+    }
+
+    private Buffer bufferFor(String node) {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            context.runOnContext(v -> flush());
+        }
+        return pending.computeIfAbsent(node, k -> Buffer.buffer(4096));
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        pending.forEach((node, records) -> vertx.eventBus().send(address(node), records));
+        pending.clear();
+    }
+
+    static void appendSnapshot(Buffer out, String symbol, long sequence, PriceLevels bids, PriceLevels asks) {
+        asks = asks.withPrecision(bids.getPrecision());
+        appendHeader(out, SNAPSHOT, symbol, bids.getPrecision());
+        out.appendLong(sequence).appendInt(bids.size()).appendInt(asks.size());
+        appendLevels(out, bids);
+        appendLevels(out, asks);
+    }
+
+    static void appendUpdate(Buffer out, Level2Update update) {
+        appendHeader(out, UPDATE, update.getSymbol(), update.getPrecision());
+        out.appendLong(update.getSequenceStart()).appendLong(update.getSequenceEnd()).appendLong(update.getTime())
+                .appendInt(update.getBids().size()).appendInt(update.getAsks().size());
+        appendChanges(out, update.getBids());
+        appendChanges(out, update.getAsks());
+    }
+
+    private static void appendHeader(Buffer out, byte type, String symbol, SymbolPrecision precision) {
+        byte[] name = symbol.getBytes(StandardCharsets.US_ASCII);
+        out.appendByte(type).appendShort((short) name.length).appendBytes(name)
+                .appendByte((byte) precision.getPriceDecimals()).appendByte((byte) precision.getSizeDecimals());
+    }
+
+    private static void appendLevels(Buffer out, PriceLevels side) {
+        for (int i = 0; i < side.size(); i++) {
+            out.appendLong(side.scaledPriceAt(i)).appendLong(side.scaledSizeAt(i));
+        }
+    }
+
+    private static void appendChanges(Buffer out, Level2Update.Changes changes) {
+        for (int i = 0; i < changes.size(); i++) {
+            out.appendLong(changes.scaledPriceAt(i)).appendLong(changes.scaledSizeAt(i)).appendLong(changes.sequenceAt(i));
+        }
+    }
+
+    // Every record in one replication message, in order: OrderBookSnapshot or Level2Update
+    public static List<Object> decode(Buffer in) {
+        List<Object> records = new ArrayList<>();
+        int pos = 0;
+        while (pos < in.length()) {
+            byte type = in.getByte(pos);
+            int symbolLength = in.getShort(pos + 1);
+            String symbol = new String(in.getBytes(pos + 3, pos + 3 + symbolLength), StandardCharsets.US_ASCII);
+            pos += 3 + symbolLength;
+            SymbolPrecision precision = new SymbolPrecision(in.getByte(pos), in.getByte(pos + 1));
+            pos += 2;
+            if (type == SNAPSHOT) {
+                long sequence = in.getLong(pos);
+                int bidCount = in.getInt(pos + 8);
+                int askCount = in.getInt(pos + 12);
+                pos += 16;
+                PriceLevels bids = new PriceLevels(true, bidCount, precision);
+                pos = readLevels(in, pos, bidCount, bids);
+                PriceLevels asks = new PriceLevels(false, askCount, precision);
+                pos = readLevels(in, pos, askCount, asks);
+                records.add(new OrderBookSnapshot(symbol, sequence, bids, asks));
+            } else if (type == UPDATE) {
+                Level2Update update = new Level2Update();
+                update.setSymbol(symbol);
+                update.setPrecision(precision);
+                update.setSequenceStart(in.getLong(pos));
+                update.setSequenceEnd(in.getLong(pos + 8));
+                update.setTime(in.getLong(pos + 16));
+                int bidCount = in.getInt(pos + 24);
+                int askCount = in.getInt(pos + 28);
+                pos += 32;
+                pos = readChanges(in, pos, bidCount, update.getBids());
+                pos = readChanges(in, pos, askCount, update.getAsks());
+                records.add(update);
+            } else {
+                throw new IllegalArgumentException("Unknown replication record type " + type + " at " + pos);
+            }
+        }
+        return records;
+    }
+
+    private static int readLevels(Buffer in, int pos, int count, PriceLevels side) {
+        for (int i = 0; i < count; i++, pos += 16) {
+            // Written best first, so every set() appends
+            side.setScaled(in.getLong(pos), in.getLong(pos + 8));
+        }
+        return pos;
+    }
+
+    private static int readChanges(Buffer in, int pos, int count, Level2Update.Changes changes) {
+        for (int i = 0; i < count; i++, pos += 24) {
+            changes.addScaled(in.getLong(pos), in.getLong(pos + 8), in.getLong(pos + 16));
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,88 @@
+package org.rengen.takehome;
+
+// Samples of one book's top `depth` levels. Columns: time, sequence, bid count, ask count, then
+// bid prices, bid sizes, ask prices and ask sizes with `depth` slots each, then the price and size
+// decimals. Levels are kept as fixed point values at the sample's precision and written exactly.
+public class BookSampleRing extends TimeSeriesRing {
+    private final int depth;
+    private final int sequenceBase;
+    private final int bidCountBase;
+    private final int askCountBase;
+    private final int bidPriceBase;
+    private final int bidSizeBase;
+    private final int askPriceBase;
+    private final int askSizeBase;
+    private final int priceDecimalsBase;
+    private final int sizeDecimalsBase;
+
+    public BookSampleRing(int capacity, int depth) {
+        super(capacity, 8 + 4 + 4 + depth * 32 + 2);
+        this.depth = depth;
+        sequenceBase = columnBase(8);
+        bidCountBase = columnBase(16);
+        askCountBase = columnBase(20);
+        bidPriceBase = columnBase(24);
+        bidSizeBase = columnBase(24 + depth * 8);
+        askPriceBase = columnBase(24 + depth * 16);
+        askSizeBase = columnBase(24 + depth * 24);
+        priceDecimalsBase = columnBase(24 + depth * 32);
+        sizeDecimalsBase = columnBase(25 + depth * 32);
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    // Both sides are stored at the bids' precision
+    public void add(long time, long sequence, PriceLevels bids, PriceLevels asks) {
+        int slot = append(time);
+        SymbolPrecision precision = bids.getPrecision();
+        data.putLong(sequenceBase + slot * 8, sequence);
+        data.put(priceDecimalsBase + slot, (byte) precision.getPriceDecimals());
+        data.put(sizeDecimalsBase + slot, (byte) precision.getSizeDecimals());
+        data.putInt(bidCountBase + slot * 4, putLevels(bidPriceBase, bidSizeBase, slot, bids, precision));
+        data.putInt(askCountBase + slot * 4, putLevels(askPriceBase, askSizeBase, slot, asks, precision));
+    }
+
+    private int putLevels(int priceBase, int sizeBase, int slot, PriceLevels side, SymbolPrecision precision) {
+        int count = Math.min(depth, side.size());
+        int offset = slot * depth * 8;
+        SymbolPrecision from = side.getPrecision();
+        for (int i = 0; i < count; i++) {
+            data.putLong(priceBase + offset + i * 8,
+                    FixedPoint.rescale(side.scaledPriceAt(i), from.getPriceDecimals(), precision.getPriceDecimals()));
+            data.putLong(sizeBase + offset + i * 8,
+                    FixedPoint.rescale(side.scaledSizeAt(i), from.getSizeDecimals(), precision.getSizeDecimals()));
+        }
+        return count;
+    }
+
+    public long sequenceAt(long index) {
+        return data.getLong(sequenceBase + slot(index) * 8);
+    }
+
+    // {"type":"sample","ts":..,"sequence":..,"bids":[[price,size],..],"asks":[..]}
+    public void appendJson(StringBuilder sb, long index) {
+        int slot = slot(index);
+        sb.append("{\"type\":\"sample\",\"ts\":").append(timeAt(index)).append(",\"sequence\":").append(sequenceAt(index));
+        sb.append(",\"bids\":");
+        appendLevels(sb, bidPriceBase, bidSizeBase, slot, data.getInt(bidCountBase + slot * 4));
+        sb.append(",\"asks\":");
+        appendLevels(sb, askPriceBase, askSizeBase, slot, data.getInt(askCountBase + slot * 4));
+        sb.append('}');
+    }
+
+    private void appendLevels(StringBuilder sb, int priceBase, int sizeBase, int slot, int count) {
+        int offset = slot * depth * 8;
+        int priceDecimals = data.get(priceDecimalsBase + slot);
+        int sizeDecimals = data.get(sizeDecimalsBase + slot);
+        sb.append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('[');
+            FixedPoint.format(sb, data.getLong(priceBase + offset + i * 8), priceDecimals).append(',');
+            FixedPoint.format(sb, data.getLong(sizeBase + offset + i * 8), sizeDecimals).append(']');
+        }
+        sb.append(']');
+    }
+}
@@ -0,0 +1,154 @@
+package org.rengen.takehome;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.ServerWebSocket;
+
+// One client of the /stream/orderbook WebSocket. It gets a snapshot of the top depth levels
+// first and then deltas against what it was last sent. Nothing is queued per book change:
+// when the client is over its rate or its socket's write queue is full the subscriber is only
+// marked dirty, and the next send diffs the current book against the last sent state, so a
+// slow client sees the latest book with intermediate states conflated away.
+//
+// Lives on the event loop of the shard owning the symbol; the socket's drain and close
+// callbacks hop back onto it.
+public class BookStreamSubscriber {
+    // Per-subscriber bound on buffered outbound bytes before updates start being conflated
+    static final int WRITE_QUEUE_MAX_BYTES = 64 * 1024;
+
+    private final String symbol;
+    private final ServerWebSocket socket;
+    private final int depth;
+    private final long minIntervalMs;
+    private final Vertx vertx;
+    private final Context ownerContext;
+
+    private final PriceLevels sentBids;
+    private final PriceLevels sentAsks;
+    private boolean snapshotSent;
+    private long sentVersion = -1;
+    private long lastSentAt;
+    private boolean timerPending;
+    private boolean closed;
+    private OrderBook book;
+
+    public BookStreamSubscriber(String symbol, ServerWebSocket socket, int depth, double maxRate,
+                                Vertx vertx, Context ownerContext) {
+        this.symbol = symbol;
+        this.socket = socket;
+        this.depth = depth;
+        this.minIntervalMs = maxRate > 0 ? (long) Math.ceil(1000.0 / maxRate) : 0;
+        this.vertx = vertx;
+        this.ownerContext = ownerContext;
+        // The same precision the symbol's book keeps, so sent and current levels compare exactly
+        SymbolPrecision precision = SymbolPrecision.of(symbol);
+        this.sentBids = new PriceLevels(true, depth, precision);
+        this.sentAsks = new PriceLevels(false, depth, precision);
+        socket.setWriteQueueMaxSize(WRITE_QUEUE_MAX_BYTES);
+        socket.drainHandler(v -> ownerContext.runOnContext(x -> flush()));
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public ServerWebSocket getSocket() {
+        return socket;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    // Called by the owning shard whenever the book may have changed
+    void onBookChanged(OrderBook book) {
+        this.book = book;
+        flush();
+    }
+
+    private void flush() {
+        if (closed || book == null || book.getVersion() == sentVersion || timerPending) {
+            return;
+        }
+        if (socket.writeQueueFull()) {
+            // The drain handler brings us back once the client catches up
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long wait = lastSentAt + minIntervalMs - now;
+        if (wait > 0) {
+            timerPending = true;
+            vertx.setTimer(wait, id -> ownerContext.runOnContext(v -> {
+                timerPending = false;
+                flush();
+            }));
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"type\":\"").append(snapshotSent ? "delta" : "snapshot")
+                .append("\",\"symbol\":\"").append(symbol)
+                .append("\",\"sequence\":").append(book.getLastSequence())
+                .append(",\"bids\":[");
+        boolean changed = appendSide(sb, sentBids, book.getBids());
+        sb.append("],\"asks\":[");
+        changed |= appendSide(sb, sentAsks, book.getAsks());
+        sb.append("]}");
+
+        sentVersion = book.getVersion();
+        if (changed || !snapshotSent) {
+            socket.writeTextMessage(sb.toString());
+            snapshotSent = true;
+            lastSentAt = now;
+        }
+    }
+
+    // Writes the levels that differ between what was sent and the current top of the book (size
+    // 0 for levels that left it), then records the current top as sent. Both sides are sorted
+    // best first, so this is a single merge.
+    private boolean appendSide(StringBuilder sb, PriceLevels sent, PriceLevels current) {
+        int count = Math.min(depth, current.size());
+        int i = 0;
+        int j = 0;
+        boolean any = false;
+        while (i < sent.size() || j < count) {
+            int cmp;
+            if (i == sent.size()) {
+                cmp = 1;
+            } else if (j == count) {
+                cmp = -1;
+            } else {
+                cmp = sent.compareScaled(sent.scaledPriceAt(i), current.scaledPriceAt(j));
+            }
+            if (cmp < 0) {
+                any = appendLevel(sb, any, sent, sent.scaledPriceAt(i), 0);
+                i++;
+            } else if (cmp > 0) {
+                any = appendLevel(sb, any, current, current.scaledPriceAt(j), current.scaledSizeAt(j));
+                j++;
+            } else {
+                if (sent.scaledSizeAt(i) != current.scaledSizeAt(j)) {
+                    any = appendLevel(sb, any, current, current.scaledPriceAt(j), current.scaledSizeAt(j));
+                }
+                i++;
+                j++;
+            }
+        }
+        sent.clear();
+        for (int k = 0; k < count; k++) {
+            sent.setScaled(current.scaledPriceAt(k), current.scaledSizeAt(k));
+        }
+        return any;
+    }
+
+    private static boolean appendLevel(StringBuilder sb, boolean any, PriceLevels side, long price, long size) {
+        if (any) {
+            sb.append(',');
+        }
+        SymbolPrecision precision = side.getPrecision();
+        sb.append('[');
+        FixedPoint.format(sb, price, precision.getPriceDecimals()).append(',');
+        FixedPoint.format(sb, size, precision.getSizeDecimals()).append(']');
+        return true;
+    }
+}
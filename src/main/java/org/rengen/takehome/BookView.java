@@ -0,0 +1,73 @@
+package org.rengen.takehome;
+
+// Immutable copy of an order book as of one sequence, published by OrderBook.publishView()
+// through a volatile field. Readers on any thread see either the previous view or the next one,
+// never a half-applied batch. The ladders are private copies that are never modified after
+// construction; callers must treat them as read-only.
+public final class BookView {
+    public static final BookView EMPTY = new BookView(-1L, -1L, 0L, new PriceLevels(true, 1), new PriceLevels(false, 1), false);
+
+    private final long sequence;
+    private final long version;
+    private final long receivedAtNanos;
+    private final PriceLevels bids;
+    private final PriceLevels asks;
+    private final boolean stale;
+    private final OrderBookJsonCache jsonCache = new OrderBookJsonCache(this);
+
+    public BookView(long sequence, long version, long receivedAtNanos, PriceLevels bids, PriceLevels asks) {
+        this(sequence, version, receivedAtNanos, bids, asks, false);
+    }
+
+    public BookView(long sequence, long version, long receivedAtNanos, PriceLevels bids, PriceLevels asks, boolean stale) {
+        this.sequence = sequence;
+        this.version = version;
+        this.receivedAtNanos = receivedAtNanos;
+        this.bids = bids;
+        this.asks = asks;
+        this.stale = stale;
+        // Normally already current (see OrderBook.publishView); done here so no reader ever writes
+        bids.updatePrefixSums();
+        asks.updatePrefixSums();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    // The OrderBook's mutation counter at publication; differs between any two views of a book
+    public long getVersion() {
+        return version;
+    }
+
+    // System.nanoTime() receive time of the newest live update in this view, 0 if none
+    public long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    public PriceLevels getBids() {
+        return bids;
+    }
+
+    public PriceLevels getAsks() {
+        return asks;
+    }
+
+    // Restored from a checkpoint and not yet confirmed by the live feed or a snapshot
+    public boolean isStale() {
+        return stale;
+    }
+
+    public String toJson(int depth, boolean pretty) {
+        return OrderBook.toJson(sequence, bids, asks, depth, pretty, stale);
+    }
+
+    public StringBuilder appendJson(StringBuilder sb, int depth) {
+        return OrderBook.appendCompactJson(sb, sequence, bids, asks, depth, stale);
+    }
+
+    // Encoded responses for this view, built on first use
+    public OrderBookJsonCache getJsonCache() {
+        return jsonCache;
+    }
+}
@@ -0,0 +1,106 @@
+package org.rengen.takehome;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+// Reusable output for JSON responses built across many books. The response is written into one
+// StringBuilder that lives as long as the event loop using it, and taken off in chunks of about
+// CHUNK_SIZE, so a large response never sits in memory whole and nothing but the chunk Buffers
+// is allocated per request. Only for the event loop that owns it; callers take() everything
+// written before yielding, so requests interleaved on that loop never see each other's output.
+//
+// JSON already encoded elsewhere (another node's part of a batch) is spliced in as raw bytes
+// with splice(), without being decoded.
+public class ChunkedJsonWriter {
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private final StringBuilder sb = new StringBuilder(CHUNK_SIZE * 2);
+    private byte[] bytes = new byte[CHUNK_SIZE * 2];
+    // The current chunk up to the last splice, null while nothing has been spliced into it
+    private Buffer spliced;
+
+    public StringBuilder builder() {
+        return sb;
+    }
+
+    public boolean chunkFull() {
+        return sb.length() + (spliced == null ? 0 : spliced.length()) >= CHUNK_SIZE;
+    }
+
+    // Appends encoded JSON after what has been written so far
+    public void splice(Buffer raw) {
+        if (spliced == null) {
+            spliced = Buffer.buffer(CHUNK_SIZE + raw.length());
+        }
+        appendTo(spliced).appendBuffer(raw);
+    }
+
+    // Copies what has been written into a Buffer of its own and empties the builder
+    public Buffer take() {
+        Buffer chunk = spliced == null ? Buffer.buffer(sb.length()) : spliced;
+        spliced = null;
+        return appendTo(chunk);
+    }
+
+    private Buffer appendTo(Buffer target) {
+        int length = sb.length();
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = sb.charAt(i);
+            if (c > 0x7F) {
+                // Only escaped strings and numbers are written, so this is never reached in practice
+                target.appendBytes(sb.toString().getBytes(StandardCharsets.UTF_8));
+                sb.setLength(0);
+                return target;
+            }
+            bytes[i] = (byte) c;
+        }
+        sb.setLength(0);
+        return target.appendBytes(bytes, 0, length);
+    }
+
+    // A JSON string; anything outside printable ASCII is escaped, so the output stays ASCII
+    public static StringBuilder appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7E) {
+                sb.append("\\u");
+                String hex = Integer.toHexString(c);
+                for (int pad = hex.length(); pad < 4; pad++) {
+                    sb.append('0');
+                }
+                sb.append(hex);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    // The values of a batch written as lines (a forwarded request), in the order asked for, as
+    // slices of the body
+    public static void splitLines(Buffer body, List<String> symbols, Map<String, Buffer> values) {
+        int start = 0;
+        int length = body.length();
+        for (String symbol : symbols) {
+            int end = start;
+            while (end < length && body.getByte(end) != '\n') {
+                end++;
+            }
+            if (end == length) {
+                // Cut short; the rest keep the values they had
+                return;
+            }
+            values.put(symbol, body.slice(start, end));
+            start = end + 1;
+        }
+    }
+}
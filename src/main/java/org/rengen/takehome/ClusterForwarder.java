@@ -0,0 +1,107 @@
+package org.rengen.takehome;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Map;
+import java.util.Set;
+
+// Sends HTTP reads for books this node does not hold to the node owning them. A forwarded request
+// carries FORWARDED_HEADER and is always answered where it lands, so two nodes that briefly
+// disagree about an owner cannot bounce a request between them.
+public class ClusterForwarder {
+    static final String FORWARDED_HEADER = "X-Forwarded-By";
+    static final String SERVED_BY_HEADER = "X-Served-By";
+    // Headers that describe one connection, not the response
+    private static final Set<String> HOP_BY_HOP = Set.of("connection", "keep-alive", "transfer-encoding", "upgrade");
+
+    private final ClusterMembership membership;
+    private final HttpClient client;
+
+    public ClusterForwarder(Vertx vertx, ClusterMembership membership) {
+        this.membership = membership;
+        this.client = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(true));
+    }
+
+    static boolean isForwarded(RoutingContext ctx) {
+        return ctx.request().getHeader(FORWARDED_HEADER) != null;
+    }
+
+    // Replays the request on the symbol's owner and streams the answer back as it arrives
+    void forward(RoutingContext ctx, String symbol) {
+        String owner = membership.ownerOf(symbol);
+        RequestOptions options = requestOptions(owner, ctx.request().uri());
+        HttpServerResponse response = ctx.response();
+        if (options == null) {
+            response.setStatusCode(503).end("No address known for node " + owner + " owning " + symbol);
+            return;
+        }
+        for (String header : new String[]{"Accept-Encoding", "If-None-Match"}) {
+            String value = ctx.request().getHeader(header);
+            if (value != null) {
+                options.putHeader(header, value);
+            }
+        }
+        client.request(options)
+                .compose(HttpClientRequest::send)
+                .onSuccess(upstream -> {
+                    response.setStatusCode(upstream.statusCode());
+                    for (Map.Entry<String, String> header : upstream.headers()) {
+                        if (!HOP_BY_HOP.contains(header.getKey().toLowerCase())) {
+                            response.putHeader(header.getKey(), header.getValue());
+                        }
+                    }
+                    response.putHeader(SERVED_BY_HEADER, owner);
+                    if (upstream.getHeader("Content-Length") == null) {
+                        response.setChunked(true);
+                    }
+                    upstream.pipeTo(response);
+                })
+                .onFailure(err -> {
+                    if (!response.headWritten()) {
+                        response.setStatusCode(502).end("Owner " + owner + " of " + symbol + " did not answer: " + err.getMessage());
+                    }
+                });
+    }
+
+    // GET of another node's part of a batch read that is split by owner, as the raw body
+    Future<Buffer> fetch(String node, String uri) {
+        RequestOptions options = requestOptions(node, uri);
+        if (options == null) {
+            return Future.failedFuture("No address known for node " + node);
+        }
+        return client.request(options)
+                .compose(HttpClientRequest::send)
+                .compose(response -> response.statusCode() == 200
+                        ? response.body()
+                        : Future.failedFuture("HTTP " + response.statusCode() + " from " + node));
+    }
+
+    // Absolute URL of a path on another node, for clients that have to be redirected there
+    String urlOf(String node, String scheme, String uri) {
+        String address = membership.httpAddress(node);
+        return address == null ? null : scheme + "://" + address + uri;
+    }
+
+    private RequestOptions requestOptions(String node, String uri) {
+        String address = node == null ? null : membership.httpAddress(node);
+        if (address == null) {
+            return null;
+        }
+        int colon = address.lastIndexOf(':');
+        return new RequestOptions()
+                .setMethod(HttpMethod.GET)
+                .setHost(address.substring(0, colon))
+                .setPort(Integer.parseInt(address.substring(colon + 1)))
+                .setURI(uri)
+                .putHeader(FORWARDED_HEADER, membership.getLocalNode());
+    }
+}
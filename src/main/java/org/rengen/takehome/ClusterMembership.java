@@ -0,0 +1,122 @@
+package org.rengen.takehome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The live nodes of a clustered deployment and which of them owns and which stands by for each
+// symbol. Liveness comes from heartbeats: a node that has not been heard from within the failure
+// timeout is dropped. Ownership is rendezvous hashing over the live nodes, so every node computes
+// the same owner without coordination, and a node joining or leaving only moves the symbols it
+// wins or held; the runner-up for a symbol is its standby and becomes owner if the owner dies.
+//
+// heartbeat() and expire() are called from the cluster verticle's event loop only; the ranking
+// reads one immutable list and is safe from any thread.
+public class ClusterMembership {
+    private final String localNode;
+    private final Map<String, Long> lastSeen = new HashMap<>();
+    private final Map<String, String> httpAddresses = new ConcurrentHashMap<>();
+    private volatile List<String> live;
+
+    public ClusterMembership(String localNode, String localHttpAddress) {
+        this.localNode = localNode;
+        this.live = List.of(localNode);
+        httpAddresses.put(localNode, localHttpAddress);
+    }
+
+    public String getLocalNode() {
+        return localNode;
+    }
+
+    // Returns true if the node was not live before
+    public boolean heartbeat(String node, String httpAddress, long now) {
+        if (httpAddress != null) {
+            httpAddresses.put(node, httpAddress);
+        }
+        if (node.equals(localNode) || lastSeen.put(node, now) != null) {
+            return false;
+        }
+        publish();
+        return true;
+    }
+
+    // A node announcing a clean shutdown is dropped right away; returns true if it was live
+    public boolean leave(String node) {
+        if (lastSeen.remove(node) == null) {
+            return false;
+        }
+        publish();
+        return true;
+    }
+
+    // Drops every node silent for longer than timeoutMs; returns true if any was dropped
+    public boolean expire(long now, long timeoutMs) {
+        if (!lastSeen.values().removeIf(seen -> now - seen > timeoutMs)) {
+            return false;
+        }
+        publish();
+        return true;
+    }
+
+    private void publish() {
+        List<String> nodes = new ArrayList<>(lastSeen.keySet());
+        nodes.add(localNode);
+        Collections.sort(nodes);
+        live = Collections.unmodifiableList(nodes);
+    }
+
+    public List<String> liveNodes() {
+        return live;
+    }
+
+    public String ownerOf(String symbol) {
+        return ranked(symbol, 0);
+    }
+
+    // The node that takes the symbol over if its owner dies; null while this node is alone
+    public String standbyOf(String symbol) {
+        return ranked(symbol, 1);
+    }
+
+    // "host:port" the node serves HTTP on, as announced in its heartbeats
+    public String httpAddress(String node) {
+        return httpAddresses.get(node);
+    }
+
+    // The node with the highest weight for the symbol owns it, the second highest stands by
+    private String ranked(String symbol, int rank) {
+        List<String> nodes = live;
+        if (rank >= nodes.size()) {
+            return null;
+        }
+        String first = null;
+        String second = null;
+        long firstWeight = Long.MIN_VALUE;
+        long secondWeight = Long.MIN_VALUE;
+        for (String node : nodes) {
+            long w = weight(node, symbol);
+            if (first == null || w > firstWeight) {
+                second = first;
+                secondWeight = firstWeight;
+                first = node;
+                firstWeight = w;
+            } else if (second == null || w > secondWeight) {
+                second = node;
+                secondWeight = w;
+            }
+        }
+        return rank == 0 ? first : second;
+    }
+
+    // String.hashCode is specified by the JLS, so every JVM agrees on the weights; the mix spreads
+    // nearby hash codes over the whole range
+    static long weight(String node, String symbol) {
+        long z = node.hashCode() * 0x9E3779B97F4A7C15L + symbol.hashCode();
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
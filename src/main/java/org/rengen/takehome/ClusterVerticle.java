@@ -0,0 +1,109 @@
+package org.rengen.takehome;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps this node's view of the cluster and receives the books replicated to it. Every node
+// publishes a heartbeat on the clustered event bus; a node missing for failureTimeoutMs is
+// considered dead and its symbols move to their standbys. Start completes after joinTimeoutMs so
+// the other nodes are known before any symbol is claimed.
+public class ClusterVerticle extends AbstractVerticle {
+    public static final String HEARTBEAT_ADDRESS = "cluster.heartbeat";
+    // Published locally, once joined, whenever the live node set changes
+    public static final String MEMBERSHIP_ADDRESS = "cluster.membership";
+
+    private final OrderBookShards shards;
+    private ClusterMembership membership;
+    private boolean joined;
+
+    public ClusterVerticle(OrderBookShards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        membership = shards.getMembership();
+        JsonObject cluster = config().getJsonObject("cluster", new JsonObject());
+        long heartbeatIntervalMs = cluster.getLong("heartbeatIntervalMs", 500L);
+        long failureTimeoutMs = cluster.getLong("failureTimeoutMs", 2000L);
+
+        vertx.eventBus().<JsonObject>consumer(HEARTBEAT_ADDRESS, message -> {
+            JsonObject beat = message.body();
+            String node = beat.getString("node");
+            boolean changed = beat.getBoolean("leaving", false)
+                    ? membership.leave(node)
+                    : membership.heartbeat(node, beat.getString("http"), System.currentTimeMillis());
+            if (changed) {
+                membershipChanged(node + (beat.getBoolean("leaving", false) ? " left" : " joined"));
+            }
+        });
+
+        vertx.eventBus().<Buffer>consumer(BookReplication.address(membership.getLocalNode()), message -> dispatch(message.body()));
+
+        heartbeat(false);
+        vertx.setPeriodic(heartbeatIntervalMs, id -> {
+            heartbeat(false);
+            if (membership.expire(System.currentTimeMillis(), failureTimeoutMs)) {
+                membershipChanged("heartbeat timeout");
+            }
+        });
+
+        vertx.setTimer(cluster.getLong("joinTimeoutMs", failureTimeoutMs), id -> {
+            joined = true;
+            System.out.println("Joined cluster as " + membership.getLocalNode() + "; live nodes " + membership.liveNodes());
+            startPromise.complete();
+        });
+    }
+
+    // Tells the others right away instead of letting them wait out the failure timeout
+    @Override
+    public void stop() {
+        heartbeat(true);
+    }
+
+    private void heartbeat(boolean leaving) {
+        JsonObject beat = new JsonObject()
+                .put("node", membership.getLocalNode())
+                .put("http", membership.httpAddress(membership.getLocalNode()));
+        if (leaving) {
+            beat.put("leaving", true);
+        }
+        vertx.eventBus().publish(HEARTBEAT_ADDRESS, beat);
+    }
+
+    private void membershipChanged(String reason) {
+        System.out.println("Cluster membership changed (" + reason + "); live nodes " + membership.liveNodes());
+        if (joined) {
+            vertx.eventBus().publish(MEMBERSHIP_ADDRESS, membership.liveNodes().size(), LocalMessageCodec.LOCAL_ONLY);
+        }
+    }
+
+    // Decoded here, off the shards' loops, then handed to each shard in one batch
+    private void dispatch(Buffer body) {
+        List<Object> records;
+        try {
+            records = BookReplication.decode(body);
+        } catch (RuntimeException e) {
+            System.err.println("Dropping malformed replication message: " + e.getMessage());
+            return;
+        }
+        Map<KucoinOrderBookVerticle, List<Object>> byShard = new HashMap<>();
+        for (Object record : records) {
+            String symbol = record instanceof OrderBookSnapshot
+                    ? ((OrderBookSnapshot) record).getSymbol()
+                    : ((Level2Update) record).getSymbol();
+            KucoinOrderBookVerticle shard = shards.owner(symbol);
+            if (shard != null) {
+                byShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(record);
+            }
+        }
+        byShard.forEach((shard, shardRecords) -> shard.getContext().runOnContext(v -> shard.applyReplicated(shardRecords)));
+    }
+}
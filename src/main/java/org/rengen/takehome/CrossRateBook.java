@@ -0,0 +1,165 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Implied book for a pair that is not traded directly, built from two live books quoted in the
+// same currency: ETH-BTC from ETH-USDT (the base leg) and BTC-USDT (the quote leg). Selling ETH
+// for BTC means hitting ETH-USDT bids and lifting BTC-USDT asks, so implied bids pair those two
+// sides level by level on the common currency amount, and implied asks pair ETH-USDT asks with
+// BTC-USDT bids.
+//
+// The derived book is only rebuilt when a leg changed within the levels the last build
+// actually used; churn deeper in a leg's book costs a comparison and nothing else.
+public class CrossRateBook {
+    private final String symbol;
+    private final String baseLeg;
+    private final String quoteLeg;
+    private final int depth;
+
+    // Set while a refresh is queued on the owning shard, so a burst of leg updates costs one rebuild
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private long baseVersion = -1;
+    private long quoteVersion = -1;
+    private long sequence;
+    private boolean builtFromStale;
+    private final LegUsage bidBase = new LegUsage();
+    private final LegUsage bidQuote = new LegUsage();
+    private final LegUsage askBase = new LegUsage();
+    private final LegUsage askQuote = new LegUsage();
+
+    public CrossRateBook(String symbol, String baseLeg, String quoteLeg, int depth) {
+        this.symbol = symbol;
+        this.baseLeg = baseLeg;
+        this.quoteLeg = quoteLeg;
+        this.depth = depth;
+    }
+
+    // [{"symbol": "ETH-BTC", "base": "ETH-USDT", "quote": "BTC-USDT", "depth": 20}, ...]
+    public static List<CrossRateBook> fromConfig(JsonArray config) {
+        List<CrossRateBook> books = new ArrayList<>();
+        if (config == null) {
+            return books;
+        }
+        for (int i = 0; i < config.size(); i++) {
+            JsonObject entry = config.getJsonObject(i);
+            books.add(new CrossRateBook(entry.getString("symbol").toUpperCase(), entry.getString("base").toUpperCase(),
+                    entry.getString("quote").toUpperCase(), entry.getInteger("depth", 20)));
+        }
+        return books;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getBaseLeg() {
+        return baseLeg;
+    }
+
+    public String getQuoteLeg() {
+        return quoteLeg;
+    }
+
+    // True if the caller should queue a refresh; false if one is already queued
+    boolean scheduleRefresh() {
+        return refreshScheduled.compareAndSet(false, true);
+    }
+
+    void refreshStarted() {
+        refreshScheduled.set(false);
+    }
+
+    // Rebuilds the implied book from the latest leg views if anything it depends on moved.
+    // Returns true if the book was changed. Runs on the shard owning the implied symbol.
+    public boolean update(BookView base, BookView quote, OrderBook book) {
+        if (base.getVersion() == baseVersion && quote.getVersion() == quoteVersion) {
+            return false;
+        }
+        baseVersion = base.getVersion();
+        quoteVersion = quote.getVersion();
+        boolean stale = base.isStale() || quote.isStale();
+        if (stale == builtFromStale && !bidBase.changed(base.getBids()) && !bidQuote.changed(quote.getAsks())
+                && !askBase.changed(base.getAsks()) && !askQuote.changed(quote.getBids())) {
+            return false;
+        }
+
+        PriceLevels bids = new PriceLevels(true, depth, book.getPrecision());
+        PriceLevels asks = new PriceLevels(false, depth, book.getPrecision());
+        combine(base.getBids(), quote.getAsks(), bids, bidBase, bidQuote);
+        combine(base.getAsks(), quote.getBids(), asks, askBase, askQuote);
+        sequence = Math.max(sequence, book.getLastSequence()) + 1;
+        OrderBookSnapshot implied = new OrderBookSnapshot(symbol, sequence, bids, asks);
+        builtFromStale = stale;
+        if (stale) {
+            // Built from a leg that is itself unconfirmed, so it is served as stale too
+            book.restore(implied);
+        } else {
+            book.applySnapshot(implied);
+        }
+        return true;
+    }
+
+    // Walks both legs best first, each implied level taking as much of the common currency as the
+    // thinner of the two current levels offers
+    private void combine(PriceLevels baseSide, PriceLevels quoteSide, PriceLevels out, LegUsage baseUsage, LegUsage quoteUsage) {
+        int i = 0;
+        int j = 0;
+        double baseLeft = baseSide.isEmpty() ? 0 : baseSide.priceAt(0) * baseSide.sizeAt(0);
+        double quoteLeft = quoteSide.isEmpty() ? 0 : quoteSide.priceAt(0) * quoteSide.sizeAt(0);
+        while (out.size() < depth && i < baseSide.size() && j < quoteSide.size()) {
+            double amount = Math.min(baseLeft, quoteLeft);
+            double price = baseSide.priceAt(i) / quoteSide.priceAt(j);
+            out.set(price, out.sizeOf(price) + amount / baseSide.priceAt(i));
+            baseLeft -= amount;
+            quoteLeft -= amount;
+            if (baseLeft <= 0 && ++i < baseSide.size()) {
+                baseLeft = baseSide.priceAt(i) * baseSide.sizeAt(i);
+            }
+            if (quoteLeft <= 0 && ++j < quoteSide.size()) {
+                quoteLeft = quoteSide.priceAt(j) * quoteSide.sizeAt(j);
+            }
+        }
+        baseUsage.record(baseSide, Math.min(i + 1, baseSide.size()));
+        quoteUsage.record(quoteSide, Math.min(j + 1, quoteSide.size()));
+    }
+
+    // The leading levels of one leg side that the last build read. A change inside them, or any
+    // change at all when the build ran out of levels on that side, calls for a rebuild.
+    private static class LegUsage {
+        private double[] prices = new double[0];
+        private double[] sizes = new double[0];
+        private int used = -1;
+        private boolean exhausted;
+
+        void record(PriceLevels side, int count) {
+            if (prices.length < count) {
+                prices = new double[count];
+                sizes = new double[count];
+            }
+            for (int k = 0; k < count; k++) {
+                prices[k] = side.priceAt(k);
+                sizes[k] = side.sizeAt(k);
+            }
+            used = count;
+            exhausted = count == side.size();
+        }
+
+        boolean changed(PriceLevels side) {
+            if (used < 0 || side.size() < used || (exhausted && side.size() != used)) {
+                return true;
+            }
+            for (int k = 0; k < used; k++) {
+                if (Double.compare(prices[k], side.priceAt(k)) != 0 || Double.compare(sizes[k], side.sizeAt(k)) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
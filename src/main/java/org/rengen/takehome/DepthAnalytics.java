@@ -0,0 +1,117 @@
+package org.rengen.takehome;
+
+// Depth, imbalance and cost-to-fill answered from the running totals each published ladder
+// carries (see PriceLevels), so a query is one or two binary searches whatever the depth. Works
+// on immutable views and is safe from any thread.
+public final class DepthAnalytics {
+
+    // One parsed query, applied to one view or to many in a batch
+    @FunctionalInterface
+    public interface Query {
+        void appendJson(StringBuilder sb, BookView view);
+    }
+
+    private DepthAnalytics() {
+    }
+
+    // Size and notional resting within bps of the mid on each side
+    public static Query depthWithin(double bps) {
+        return (sb, view) -> {
+            double mid = mid(view);
+            int bidLevels = Double.isNaN(mid) ? 0 : view.getBids().countWithin(mid * (1 - bps / 10_000));
+            int askLevels = Double.isNaN(mid) ? 0 : view.getAsks().countWithin(mid * (1 + bps / 10_000));
+            start(sb, view);
+            appendField(sb, "mid", mid);
+            appendField(sb, "bps", bps);
+            appendField(sb, "bidSize", view.getBids().cumulativeSize(bidLevels));
+            appendField(sb, "bidNotional", view.getBids().cumulativeNotional(bidLevels));
+            appendField(sb, "askSize", view.getAsks().cumulativeSize(askLevels));
+            appendField(sb, "askNotional", view.getAsks().cumulativeNotional(askLevels));
+            sb.append('}');
+        };
+    }
+
+    // (bid - ask) / (bid + ask) over the best `levels` levels, or within bps of the mid when levels is 0
+    public static Query imbalance(double bps, int levels) {
+        return (sb, view) -> {
+            int bidLevels = levels;
+            int askLevels = levels;
+            if (levels <= 0) {
+                double mid = mid(view);
+                bidLevels = Double.isNaN(mid) ? 0 : view.getBids().countWithin(mid * (1 - bps / 10_000));
+                askLevels = Double.isNaN(mid) ? 0 : view.getAsks().countWithin(mid * (1 + bps / 10_000));
+            }
+            double bidSize = view.getBids().cumulativeSize(bidLevels);
+            double askSize = view.getAsks().cumulativeSize(askLevels);
+            start(sb, view);
+            if (levels > 0) {
+                sb.append(",\"levels\":").append(levels);
+            } else {
+                appendField(sb, "bps", bps);
+            }
+            appendField(sb, "bidSize", bidSize);
+            appendField(sb, "askSize", askSize);
+            appendField(sb, "imbalance", bidSize + askSize > 0 ? (bidSize - askSize) / (bidSize + askSize) : Double.NaN);
+            sb.append('}');
+        };
+    }
+
+    // Sweeping `quantity` from the best price: buys take the asks, sells the bids. Slippage is the
+    // VWAP's distance from the best price in bps, positive when it costs the taker.
+    public static Query costToFill(boolean buy, double quantity) {
+        return (sb, view) -> {
+            PriceLevels side = buy ? view.getAsks() : view.getBids();
+            int index = side.fillIndex(quantity);
+            double filled;
+            double notional;
+            double worstPrice;
+            if (index >= 0) {
+                filled = quantity;
+                notional = side.cumulativeNotional(index) + (quantity - side.cumulativeSize(index)) * side.priceAt(index);
+                worstPrice = side.priceAt(index);
+            } else {
+                filled = side.cumulativeSize(side.size());
+                notional = side.cumulativeNotional(side.size());
+                worstPrice = side.isEmpty() ? Double.NaN : side.priceAt(side.size() - 1);
+            }
+            double bestPrice = side.isEmpty() ? Double.NaN : side.priceAt(0);
+            double vwap = filled > 0 ? notional / filled : Double.NaN;
+            double slippageBps = (buy ? vwap - bestPrice : bestPrice - vwap) / bestPrice * 10_000;
+
+            start(sb, view);
+            sb.append(",\"side\":\"").append(buy ? "buy" : "sell").append('"');
+            appendField(sb, "quantity", quantity);
+            appendField(sb, "filled", filled);
+            appendField(sb, "notional", notional);
+            appendField(sb, "vwap", vwap);
+            appendField(sb, "bestPrice", bestPrice);
+            appendField(sb, "worstPrice", worstPrice);
+            appendField(sb, "slippageBps", slippageBps);
+            sb.append(",\"complete\":").append(index >= 0).append('}');
+        };
+    }
+
+    // NaN while either side is empty
+    private static double mid(BookView view) {
+        if (view.getBids().isEmpty() || view.getAsks().isEmpty()) {
+            return Double.NaN;
+        }
+        return (view.getBids().priceAt(0) + view.getAsks().priceAt(0)) / 2;
+    }
+
+    private static void start(StringBuilder sb, BookView view) {
+        sb.append("{\"sequence\":").append(view.getSequence());
+        if (view.isStale()) {
+            sb.append(",\"stale\":true");
+        }
+    }
+
+    private static void appendField(StringBuilder sb, String name, double value) {
+        sb.append(",\"").append(name).append("\":");
+        if (Double.isNaN(value)) {
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+    }
+}
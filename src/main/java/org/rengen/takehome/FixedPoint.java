@@ -0,0 +1,143 @@
+package org.rengen.takehome;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Decimal numbers held as longs scaled by 10^decimals, so that a price or size read off the wire
+// is kept exactly and two of them compare with a single long comparison. The parser works on the
+// ASCII digits directly; only exponent notation or more than 18 significant digits fall back to
+// BigDecimal.
+public final class FixedPoint {
+    public static final int MAX_DECIMALS = 18;
+
+    private static final long[] POW10 = new long[MAX_DECIMALS + 1];
+    private static final double[] POW10_DOUBLE = new double[MAX_DECIMALS + 1];
+
+    static {
+        long p = 1;
+        for (int i = 0; i <= MAX_DECIMALS; i++) {
+            POW10[i] = p;
+            POW10_DOUBLE[i] = p;
+            p *= 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    public static long parse(CharSequence s, int decimals) {
+        return parse(s, 0, s.length(), decimals);
+    }
+
+    // Digits beyond `decimals` are rounded half up. Throws NumberFormatException like parseDouble
+    // on anything that is not a decimal number, and on values that do not fit the scale.
+    public static long parse(CharSequence s, int start, int end, int decimals) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (s.charAt(pos) == '-' || s.charAt(pos) == '+')) {
+            negative = s.charAt(pos) == '-';
+            pos++;
+        }
+        long value = 0;
+        int significant = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean roundUp = false;
+        boolean anyDigit = false;
+        for (; pos < end; pos++) {
+            char c = s.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (fraction && fractionDigits++ >= decimals) {
+                    // The first dropped digit decides the rounding; the rest only have to be digits
+                    if (fractionDigits == decimals + 1) {
+                        roundUp = c >= '5';
+                    }
+                    continue;
+                }
+                value = value * 10 + (c - '0');
+                if (value != 0 && ++significant > MAX_DECIMALS) {
+                    return parseSlow(s, start, end, decimals);
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c == 'e' || c == 'E') {
+                return parseSlow(s, start, end, decimals);
+            } else {
+                throw new NumberFormatException("Not a decimal number: " + s.subSequence(start, end));
+            }
+        }
+        if (!anyDigit) {
+            throw new NumberFormatException("Not a decimal number: " + s.subSequence(start, end));
+        }
+        int kept = Math.min(fractionDigits, decimals);
+        int shift = decimals - kept;
+        if (significant + shift > MAX_DECIMALS) {
+            return parseSlow(s, start, end, decimals);
+        }
+        value *= POW10[shift];
+        if (roundUp) {
+            value++;
+        }
+        return negative ? -value : value;
+    }
+
+    private static long parseSlow(CharSequence s, int start, int end, int decimals) {
+        try {
+            return new BigDecimal(s.subSequence(start, end).toString())
+                    .setScale(decimals, RoundingMode.HALF_UP)
+                    .unscaledValue()
+                    .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Out of range at " + decimals + " decimals: " + s.subSequence(start, end));
+        }
+    }
+
+    // Plain decimal notation with trailing zeros dropped, keeping one fractional digit like
+    // Double.toString does for whole numbers ("100.0", "0.00012", never "1.2E-4")
+    public static StringBuilder format(StringBuilder sb, long value, int decimals) {
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        long unit = POW10[decimals];
+        sb.append(value / unit).append('.');
+        long fraction = value % unit;
+        if (fraction == 0) {
+            return sb.append('0');
+        }
+        int digits = decimals;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        for (int i = digits - 1; i > 0 && fraction < POW10[i]; i--) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
+    public static String toString(long value, int decimals) {
+        return format(new StringBuilder(24), value, decimals).toString();
+    }
+
+    // Exact whenever the scaled value is, which holds for anything parsed from up to 15 digits
+    public static double toDouble(long value, int decimals) {
+        return value / POW10_DOUBLE[decimals];
+    }
+
+    // Nearest representable value; for numbers computed in floating point, not read off the wire
+    public static long fromDouble(double value, int decimals) {
+        return Math.round(value * POW10_DOUBLE[decimals]);
+    }
+
+    // Moves a value between two scales, rounding half up when decimals are dropped
+    public static long rescale(long value, int fromDecimals, int toDecimals) {
+        if (toDecimals >= fromDecimals) {
+            return value * POW10[toDecimals - fromDecimals];
+        }
+        long divisor = POW10[fromDecimals - toDecimals];
+        long half = value < 0 ? -(divisor >> 1) : divisor >> 1;
+        return (value + half) / divisor;
+    }
+}
@@ -0,0 +1,256 @@
+package org.rengen.takehome;
+
+import io.vertx.core.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Point-to-point hand-off of decoded level2 updates from the WebSocket sessions and the journal
+// replay to the shard owning their symbol. Every symbol has its own bounded queue, so one busy
+// symbol cannot crowd out the others, and the shard drains each queue in batches: consecutive
+// updates of a symbol are applied together and the book is published once per batch.
+//
+// A symbol whose queue is full is handled by the overflow policy: BLOCK has the producer stop
+// reading until the queue has drained to half, DROP throws that symbol's queued updates away and
+// lets the shard resnapshot it. Either way memory is bounded by the capacity per symbol (plus, for
+// BLOCK, the frames a paused socket had already read).
+//
+// Work that has to happen in order with a symbol's updates (a replayed snapshot) is queued
+// with afterQueued() and runs once every update offered before it has been applied.
+//
+// offer() is safe from any thread; the drain runs on the shard's context.
+public class IngestQueue {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP;
+
+        public static OverflowPolicy fromConfig(String value) {
+            if (value == null) {
+                return BLOCK;
+            }
+            switch (value) {
+                case "block":
+                    return BLOCK;
+                case "drop":
+                    return DROP;
+                default:
+                    throw new IllegalArgumentException("Unknown ingest overflow policy: " + value);
+            }
+        }
+    }
+
+    // Called on the shard's context
+    public interface Sink {
+        void onBatch(String symbol, List<Level2Update> batch);
+
+        // Updates of the symbol were thrown away under DROP; the book has a hole until resnapshot
+        void onDropped(String symbol, int count);
+    }
+
+    private final Context context;
+    private final Sink sink;
+    private final int capacity;
+    private final int maxBatch;
+    private final OverflowPolicy policy;
+    private final Map<String, SymbolQueue> queues = new ConcurrentHashMap<>();
+    // Symbols with updates waiting, each listed at most once
+    private final ConcurrentLinkedQueue<SymbolQueue> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final List<Level2Update> batch = new ArrayList<>();
+
+    public IngestQueue(Context context, Sink sink, int capacity, int maxBatch, OverflowPolicy policy) {
+        if (capacity < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("Ingest queue capacity and batch size must be positive: " + capacity + ", " + maxBatch);
+        }
+        this.context = context;
+        this.sink = sink;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.policy = policy;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    // Queues the update under the configured policy. Returns false when the producer should stop
+    // reading; `resume` is then run, once, when the symbol's queue has drained to half.
+    public boolean offer(Level2Update update, Runnable resume) {
+        return offer(update, resume, policy);
+    }
+
+    // For producers that must never lose an update (journal replay): always BLOCK
+    public boolean offerOrWait(Level2Update update, Runnable resume) {
+        return offer(update, resume, OverflowPolicy.BLOCK);
+    }
+
+    private boolean offer(Level2Update update, Runnable resume, OverflowPolicy overflowPolicy) {
+        SymbolQueue queue = queues.computeIfAbsent(update.getSymbol(), SymbolQueue::new);
+        boolean full = queue.size.get() >= capacity;
+        if (full && overflowPolicy == OverflowPolicy.DROP) {
+            // The hole makes the queued updates useless; the snapshot replaces them all
+            update.release();
+            int dropped = 1 + queue.clear();
+            queue.dropped.addAndGet(dropped);
+            context.runOnContext(v -> sink.onDropped(queue.symbol, dropped));
+            return true;
+        }
+        queue.lastQueuedSequence = update.getSequenceEnd();
+        queue.updates.offer(update);
+        queue.size.incrementAndGet();
+        queue.offered.incrementAndGet();
+        if (queue.scheduled.compareAndSet(false, true)) {
+            ready.offer(queue);
+            scheduleDrain();
+        }
+        if (!full) {
+            return true;
+        }
+        queue.blocked.incrementAndGet();
+        queue.waiting.offer(resume);
+        // The drain may have run between the size check and registering; do not wait for the next one
+        if (queue.size.get() <= capacity / 2 && queue.waiting.remove(resume)) {
+            resume.run();
+        }
+        return false;
+    }
+
+    // Runs the task on the shard's context after every update of the symbol offered so far has
+    // been applied, and before any offered later
+    public void afterQueued(String symbol, Runnable task) {
+        SymbolQueue queue = queues.computeIfAbsent(symbol, SymbolQueue::new);
+        queue.barriers.offer(new Barrier(queue.offered.get(), task));
+        if (queue.scheduled.compareAndSet(false, true)) {
+            ready.offer(queue);
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            context.runOnContext(v -> drain());
+        }
+    }
+
+    // One batch per symbol that has updates, then back to the event loop; symbols with more
+    // waiting go to the back of the line
+    private void drain() {
+        drainScheduled.set(false);
+        for (int n = ready.size(); n > 0; n--) {
+            SymbolQueue queue = ready.poll();
+            if (queue == null) {
+                break;
+            }
+            queue.scheduled.set(false);
+            // A batch stops at the next barrier, so the updates after it wait for its task
+            Barrier barrier = queue.barriers.peek();
+            long limit = barrier == null ? maxBatch : Math.min(maxBatch, barrier.position - queue.consumed.get());
+            batch.clear();
+            Level2Update update;
+            while (batch.size() < limit && (update = queue.updates.poll()) != null) {
+                batch.add(update);
+            }
+            if (!batch.isEmpty()) {
+                queue.size.addAndGet(-batch.size());
+                queue.consumed.addAndGet(batch.size());
+                queue.lastDrainedSequence = batch.get(batch.size() - 1).getSequenceEnd();
+                sink.onBatch(queue.symbol, batch);
+                if (queue.size.get() <= capacity / 2) {
+                    Runnable resume;
+                    while ((resume = queue.waiting.poll()) != null) {
+                        resume.run();
+                    }
+                }
+            }
+            while ((barrier = queue.barriers.peek()) != null && barrier.position <= queue.consumed.get()) {
+                queue.barriers.poll();
+                barrier.task.run();
+            }
+            if ((!queue.updates.isEmpty() || !queue.barriers.isEmpty()) && queue.scheduled.compareAndSet(false, true)) {
+                ready.offer(queue);
+            }
+        }
+        batch.clear();
+        if (!ready.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    public int depth(String symbol) {
+        SymbolQueue queue = queues.get(symbol);
+        return queue == null ? 0 : queue.size.get();
+    }
+
+    // Per symbol: updates queued, how far the last applied sequence trails the last queued one,
+    // how long the oldest queued live update has waited, and the updates dropped and producer
+    // pauses so far
+    public void forEachSymbol(LagConsumer consumer) {
+        long now = System.nanoTime();
+        for (SymbolQueue queue : queues.values()) {
+            // The head may be applied and recycled meanwhile; its receive time is read once
+            Level2Update oldest = queue.updates.peek();
+            long receivedAt = oldest == null ? 0 : oldest.getReceivedAtNanos();
+            long waitedNanos = receivedAt == 0 ? 0 : now - receivedAt;
+            long sequenceLag = queue.lastDrainedSequence < 0 ? 0 : Math.max(0, queue.lastQueuedSequence - queue.lastDrainedSequence);
+            consumer.accept(queue.symbol, queue.size.get(), sequenceLag, waitedNanos / 1_000_000L,
+                    queue.dropped.get(), queue.blocked.get());
+        }
+    }
+
+    @FunctionalInterface
+    public interface LagConsumer {
+        void accept(String symbol, int depth, long sequenceLag, long lagMs, long dropped, long blocked);
+    }
+
+    private static final class SymbolQueue {
+        final String symbol;
+        final ConcurrentLinkedQueue<Level2Update> updates = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        // Set while the queue is listed in `ready`
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Barrier> barriers = new ConcurrentLinkedQueue<>();
+        // Updates ever queued, and ever taken off (applied or dropped); barriers are placed by these
+        final AtomicLong offered = new AtomicLong();
+        final AtomicLong consumed = new AtomicLong();
+        final AtomicInteger dropped = new AtomicInteger();
+        final AtomicInteger blocked = new AtomicInteger();
+        volatile long lastQueuedSequence = -1L;
+        volatile long lastDrainedSequence = -1L;
+
+        SymbolQueue(String symbol) {
+            this.symbol = symbol;
+        }
+
+        int clear() {
+            int removed = 0;
+            Level2Update update;
+            while ((update = updates.poll()) != null) {
+                update.release();
+                removed++;
+            }
+            size.addAndGet(-removed);
+            consumed.addAndGet(removed);
+            return removed;
+        }
+    }
+
+    private static final class Barrier {
+        final long position;
+        final Runnable task;
+
+        Barrier(long position, Runnable task) {
+            this.position = position;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.rengen.takehome;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.file.Path;
+
+// Drives the order book shards from a recorded journal instead of the exchange. In "paced"
+// mode records are released on their original timeline (optionally sped up); in "flat" mode
+// they are pushed as fast as the shards take them, which doubles as a deterministic offline
+// throughput test and a way to reproduce recorded sequence gaps.
+public class JournalReplayVerticle extends AbstractVerticle {
+
+    // Records dispatched per event loop turn before yielding
+    private static final int BATCH_SIZE = 1024;
+
+    private final OrderBookShards shards;
+    private final Level2FrameDecoder decoder = new Level2FrameDecoder();
+    private final Level2UpdatePool updates = new Level2UpdatePool();
+    private final MarketDataJournalReader.JournalRecord record = new MarketDataJournalReader.JournalRecord();
+
+    private MarketDataJournalReader reader;
+    private boolean paced;
+    private double speed;
+
+    private boolean pending;
+    private long firstRecordNanos = -1L;
+    private long startNanos;
+    private long frames;
+    private long snapshots;
+    private long skipped;
+    // Set while a shard's ingest queue is full; pumping stops until it drains
+    private boolean blocked;
+
+    public JournalReplayVerticle(OrderBookShards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        JsonObject replay = config().getJsonObject("replay", new JsonObject());
+        paced = "paced".equalsIgnoreCase(replay.getString("mode", "flat"));
+        speed = replay.getDouble("speed", 1.0);
+        String directory = replay.getString("directory", "journal");
+        try {
+            reader = new MarketDataJournalReader(Path.of(directory));
+        } catch (Exception e) {
+            startPromise.fail(e);
+            return;
+        }
+
+        System.out.println("Replaying journal " + directory + (paced ? " at " + speed + "x original pace" : " flat out"));
+        startNanos = System.nanoTime();
+        vertx.runOnContext(v -> pump());
+        startPromise.complete();
+    }
+
+    private void pump() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (!pending) {
+                if (!reader.next(record)) {
+                    finish();
+                    return;
+                }
+                pending = true;
+            }
+            if (paced) {
+                long delayMs = delayMillis();
+                if (delayMs > 0) {
+                    vertx.setTimer(delayMs, id -> pump());
+                    return;
+                }
+            }
+            pending = false;
+            if (!dispatch()) {
+                blocked = true;
+                return;
+            }
+        }
+        vertx.runOnContext(v -> pump());
+    }
+
+    // How long to hold the pending record back to keep the original spacing between records
+    private long delayMillis() {
+        if (firstRecordNanos == -1L) {
+            firstRecordNanos = record.getReceivedAtNanos();
+        }
+        long dueNanos = (long) ((record.getReceivedAtNanos() - firstRecordNanos) / speed);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return (dueNanos - elapsedNanos) / 1_000_000L;
+    }
+
+    // Replayed updates go point to point onto the owning shard's ingest queue and are never
+    // dropped: returns false when that queue is full, and pumping resumes once it has drained
+    private boolean dispatch() {
+        try {
+            if (record.getType() == MarketDataJournal.FRAME) {
+                Level2Update update = updates.acquire();
+                if (!decoder.decode(record.getPayload(), update)) {
+                    update.release();
+                    skipped++;
+                    return true;
+                }
+                frames++;
+                return shards.owner(update.getSymbol()).getIngest().offerOrWait(update, this::resume);
+            } else if (record.getType() == MarketDataJournal.SNAPSHOT) {
+                JsonObject data = new JsonObject(record.getPayload()).getJsonObject("data");
+                if (data == null) {
+                    skipped++;
+                    return true;
+                }
+                // Through the symbol's ingest queue too, so it lands between the same frames it was
+                // recorded between
+                String symbol = record.getSymbol();
+                OrderBookSnapshot snapshot = OrderBookSnapshot.fromJson(symbol, data);
+                KucoinOrderBookVerticle owner = shards.owner(symbol);
+                owner.getIngest().afterQueued(symbol, () -> owner.applyReplayedSnapshot(snapshot));
+                snapshots++;
+            } else {
+                skipped++;
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to replay journal record: " + e.getMessage());
+            skipped++;
+        }
+        return true;
+    }
+
+    // From the shard that drained the full queue
+    private void resume() {
+        context.runOnContext(v -> {
+            if (blocked) {
+                blocked = false;
+                pump();
+            }
+        });
+    }
+
+    private void finish() {
+        long elapsedMs = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000L);
+        long total = frames + snapshots;
+        System.out.println("Journal replay finished: " + frames + " frames, " + snapshots + " snapshots, "
+                + skipped + " skipped in " + elapsedMs + "ms (" + (total * 1000 / elapsedMs) + " records/s)");
+    }
+}
@@ -0,0 +1,44 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonObject;
+
+// Where the REST API (token and snapshot calls) lives, read from the "kucoin" block of
+// config.json. Defaults to the public Kucoin API; point it at KucoinSimulator for load tests.
+public class KucoinEndpoint {
+    public static final String DEFAULT_HOST = "api.kucoin.com";
+
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+
+    public KucoinEndpoint(String host, int port, boolean ssl) {
+        this.host = host;
+        this.port = port;
+        this.ssl = ssl;
+    }
+
+    public static KucoinEndpoint fromConfig(JsonObject config) {
+        JsonObject kucoin = config.getJsonObject("kucoin", new JsonObject());
+        boolean ssl = kucoin.getBoolean("ssl", true);
+        return new KucoinEndpoint(
+                kucoin.getString("host", DEFAULT_HOST),
+                kucoin.getInteger("port", ssl ? 443 : 80),
+                ssl);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isSsl() {
+        return ssl;
+    }
+
+    public String baseUrl() {
+        return (ssl ? "https://" : "http://") + host + ":" + port;
+    }
+}
@@ -1,14 +1,25 @@
 package org.rengen.takehome;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 
 public class KucoinOrderBookVerticle extends AbstractVerticle {
 
@@ -16,290 +27,1159 @@ public class KucoinOrderBookVerticle extends AbstractVerticle {
     private final ConcurrentMap<String, Long> lastRefreshTimestamp = new ConcurrentHashMap<>();
     private static final long REFRESH_COOLDOWN_MS = 5000;
     private final ConcurrentMap<String, Boolean> refreshInProgress = new ConcurrentHashMap<>();
+    // Updates held across a gap, per symbol; bounded by gapBufferCapacity
+    private final Map<String, UpdateRingBuffer> gapBuffers = new HashMap<>();
+    private int gapBufferCapacity = UpdateRingBuffer.DEFAULT_CAPACITY;
+    private UpdateRingBuffer.OverflowPolicy gapBufferOverflow = UpdateRingBuffer.OverflowPolicy.DROP_OLDEST;
+    // When each outstanding gap was first seen, to report how long recovery took
+    private final Map<String, Long> gapDetectedAt = new HashMap<>();
+    // Live updates on their way to this shard, queued per symbol by the sessions and the replay
+    private IngestQueue ingest;
+
+    private static final int DEFAULT_STREAM_DEPTH = 20;
+    // Push subscribers per symbol; only touched from this shard's event loop
+    private final Map<String, List<BookStreamSubscriber>> streamSubscribers = new HashMap<>();
+
+    private final OrderBookShards shards;
+    private final int shardIndex;
+
+    // Warm start: this shard's books are written here periodically and restored (as stale) on start
+    private Path checkpointFile;
+    private final Map<String, Long> checkpointedVersions = new HashMap<>();
+    private boolean checkpointInProgress;
+
+    // Implied books owned by this shard, and every implied book keyed by the legs it is built from
+    private final Map<String, CrossRateBook> crossRates = new HashMap<>();
+    private final Map<String, List<CrossRateBook>> crossRatesByLeg = new HashMap<>();
+
+    // Clustered only: what this node does with each configured symbol of this shard, the standby
+    // of each symbol it owns, and the stream of owned books to those standbys
+    private final List<String> shardSymbols = new ArrayList<>();
+    private final Map<String, OrderBookShards.Role> roles = new HashMap<>();
+    private final Map<String, String> standbys = new HashMap<>();
+    private BookReplication replication;
+    private ClusterForwarder forwarder;
+
+    // Sampled book history per symbol, off-heap; null config leaves it disabled
+    private final Map<String, BookHistory> histories = new HashMap<>();
+    private JsonObject historyConfig;
+    private static final int HISTORY_BATCH = 512;
+
+    // Every book this node can serve, for batch reads of "all", in configured order
+    private final List<String> allSymbols = new ArrayList<>();
+    // Output of batch reads; requests on this shard's loop take turns with it
+    private final ChunkedJsonWriter batchWriter = new ChunkedJsonWriter();
+    // Value of a batch symbol whose owner did not answer
+    private static final Buffer NULL_VALUE = Buffer.buffer("null");
+
+    public KucoinOrderBookVerticle() {
+        this(new OrderBookShards(1), 0);
+    }
+
+    public KucoinOrderBookVerticle(OrderBookShards shards, int shardIndex) {
+        this.shards = shards;
+        this.shardIndex = shardIndex;
+    }
 
     @Override
     public void start(Promise<Void> startPromise) {
+        gapBufferCapacity = config().getInteger("gapBufferCapacity", UpdateRingBuffer.DEFAULT_CAPACITY);
+        gapBufferOverflow = UpdateRingBuffer.OverflowPolicy.fromConfig(config().getString("gapBufferOverflow"));
+        JsonObject ingestConfig = config().getJsonObject("ingest", new JsonObject());
+        ingest = new IngestQueue(context, new IngestQueue.Sink() {
+            @Override
+            public void onBatch(String symbol, List<Level2Update> batch) {
+                handleUpdates(symbol, batch);
+            }
+
+            @Override
+            public void onDropped(String symbol, int count) {
+                handleIngestOverflow(symbol, count);
+            }
+        }, ingestConfig.getInteger("queueCapacity", IngestQueue.DEFAULT_CAPACITY),
+                ingestConfig.getInteger("maxBatch", IngestQueue.DEFAULT_MAX_BATCH),
+                IngestQueue.OverflowPolicy.fromConfig(ingestConfig.getString("overflow")));
+        Metrics.get().registerIngestQueue(shardIndex, ingest);
+        ClusterMembership membership = shards.getMembership();
+        if (membership != null) {
+            replication = new BookReplication(vertx, context);
+            forwarder = new ClusterForwarder(vertx, membership);
+            for (Object symbol : config().getJsonArray("symbols", new JsonArray())) {
+                if (OrderBookShards.shardOf((String) symbol, shards.count()) == shardIndex) {
+                    shardSymbols.add((String) symbol);
+                }
+            }
+            onMembershipChanged();
+            vertx.eventBus().localConsumer(ClusterVerticle.MEMBERSHIP_ADDRESS, message -> onMembershipChanged());
+        }
+        // Every shard parses the same list so any of them can tell which implied books a leg feeds;
+        // this must happen before register() publishes the shard to the other loops. Legs may live
+        // on different nodes in a cluster, so implied books are not built there.
+        List<CrossRateBook> configuredCrossRates = CrossRateBook.fromConfig(config().getJsonArray("crossRates"));
+        if (membership != null && !configuredCrossRates.isEmpty()) {
+            System.err.println("crossRates are not supported in a clustered deployment; ignoring " + configuredCrossRates.size());
+            configuredCrossRates.clear();
+        }
+        for (Object symbol : config().getJsonArray("symbols", new JsonArray())) {
+            allSymbols.add(((String) symbol).toUpperCase());
+        }
+        for (CrossRateBook cross : configuredCrossRates) {
+            allSymbols.add(cross.getSymbol());
+            if (OrderBookShards.shardOf(cross.getSymbol(), shards.count()) == shardIndex) {
+                crossRates.put(cross.getSymbol(), cross);
+            }
+            crossRatesByLeg.computeIfAbsent(cross.getBaseLeg(), k -> new ArrayList<>()).add(cross);
+            crossRatesByLeg.computeIfAbsent(cross.getQuoteLeg(), k -> new ArrayList<>()).add(cross);
+        }
+        shards.register(shardIndex, this);
+        JsonObject checkpoint = config().getJsonObject("checkpoint");
+        if (checkpoint != null) {
+            Path directory = Path.of(checkpoint.getString("directory", "checkpoints"));
+            checkpointFile = BookCheckpoint.file(directory, shardIndex);
+            restoreCheckpoints(directory);
+            long intervalMs = checkpoint.getLong("intervalMs", 5000L);
+            if (intervalMs > 0) {
+                vertx.setPeriodic(intervalMs, id -> writeCheckpoint());
+            }
+        }
+
+        historyConfig = config().getJsonObject("history");
+        if (historyConfig != null) {
+            long intervalMs = historyConfig.getLong("intervalMs", 1000L);
+            vertx.setPeriodic(intervalMs, id -> {
+                long now = System.currentTimeMillis();
+                orderBooks.forEach((symbol, book) -> historyOf(symbol).sample(now, book));
+            });
+        }
+
+        // Every shard serves the same router on httpPort; Vert.x spreads connections across the
+        // instances and each request is then run on the event loop of the shard owning the symbol
         Router router = Router.router(vertx);
+        if (forwarder != null) {
+            routeToHolders(router);
+        }
 
         router.get("/orderbook/:symbol").handler(ctx -> {
             String symbol = ctx.pathParam("symbol").toUpperCase();
-            OrderBook book = orderBooks.get(symbol);
-            if (book == null) {
-                ctx.response().setStatusCode(404).end("Order book not found for symbol: " + symbol);
-            } else {
-                ctx.response().putHeader("Content-Type", "application/json").end(book.toJson());
+            Integer depth = intParam(ctx, "depth", Integer.MAX_VALUE);
+            if (depth == null) {
+                return;
             }
+            serveOrderBook(ctx, symbol, depth);
         });
 
-        router.get("/orderbook/validate/:symbol").handler(ctx -> {
+        // Many books in one response, streamed in chunks; each value is the compact encoding of
+        // /orderbook/:symbol, or null for a symbol without a book
+        router.get("/orderbooks").handler(ctx -> {
+            List<String> symbols = batchSymbols(ctx);
+            if (symbols == null) {
+                return;
+            }
+            Integer depth = intParam(ctx, "depth", Integer.MAX_VALUE);
+            if (depth == null) {
+                return;
+            }
+            serveBatch(ctx, symbols, (sb, symbol) -> {
+                BookView view = getBookView(symbol);
+                if (view == null) {
+                    sb.append("null");
+                } else {
+                    view.appendJson(sb, depth);
+                }
+            });
+        });
+
+        // L1 reads come straight from the published TopOfBook without hopping onto the owner
+        router.get("/orderbook/:symbol/top").handler(ctx -> {
             String symbol = ctx.pathParam("symbol").toUpperCase();
-            OrderBook myBook = orderBooks.get(symbol);
-            if (myBook == null) {
+            TopOfBook top = topOf(symbol);
+            if (top == null) {
                 ctx.response().setStatusCode(404).end("Order book not found for symbol: " + symbol);
+            } else {
+                ctx.response().putHeader("Content-Type", "application/json").end(top.toJson());
+            }
+        });
+
+        router.get("/top").handler(ctx -> {
+            List<String> symbols = batchSymbols(ctx);
+            if (symbols == null) {
                 return;
             }
+            serveBatch(ctx, symbols, (sb, symbol) -> {
+                TopOfBook top = topOf(symbol);
+                sb.append(top == null ? "null" : top.toJson());
+            });
+        });
 
-            vertx.eventBus().<String>request("orderbook.getSnapshot", symbol, reply -> {
-                if (reply.succeeded()) {
-                    try {
-                        JsonObject officialSnapshotResponse = new JsonObject(reply.result().body());
-                        JsonObject officialSnapshot = officialSnapshotResponse.getJsonObject("data");
-                        if (officialSnapshot == null) {
-                            ctx.response().setStatusCode(500).end("Invalid official snapshot received");
-                            return;
-                        }
-                        JsonObject diff = compareOrderBooks(myBook, officialSnapshot);
-
-                        JsonObject response = new JsonObject();
-                        response.put("bids_match_percentage", diff.getDouble("bids_match_percentage"));
-                        response.put("asks_match_percentage", diff.getDouble("asks_match_percentage"));
-                        response.put("booksMatch", diff.getBoolean("booksMatch"));
-
-                        JsonObject diffs = new JsonObject();
-                        diffs.put("bids_diff", diff.getJsonArray("bids_diff"));
-                        diffs.put("asks_diff", diff.getJsonArray("asks_diff"));
-                        response.put("diffs", diffs);
-
-                        ctx.response()
-                                .putHeader("Content-Type", "application/json")
-                                .end(response.encodePrettily());
-                    } catch (Exception e) {
-                        ctx.response().setStatusCode(500).end("Failed to process official snapshot: " + e.getMessage());
+        // Depth analytics come from the running totals in the published views, on any event loop
+        for (String metric : List.of("depth", "imbalance", "cost")) {
+            router.get("/orderbook/:symbol/" + metric).handler(ctx -> {
+                String symbol = ctx.pathParam("symbol").toUpperCase();
+                DepthAnalytics.Query query = analyticsQuery(ctx, metric);
+                if (query == null) {
+                    return;
+                }
+                BookView view = getBookView(symbol);
+                if (view == null) {
+                    ctx.response().setStatusCode(404).end("Order book not found for symbol: " + symbol);
+                    return;
+                }
+                StringBuilder sb = new StringBuilder(256);
+                query.appendJson(sb, view);
+                ctx.response().putHeader("Content-Type", "application/json").end(sb.toString());
+            });
+
+            router.get("/analytics/" + metric).handler(ctx -> {
+                List<String> symbols = batchSymbols(ctx);
+                if (symbols == null) {
+                    return;
+                }
+                DepthAnalytics.Query query = analyticsQuery(ctx, metric);
+                if (query == null) {
+                    return;
+                }
+                serveBatch(ctx, symbols, (sb, symbol) -> {
+                    BookView view = getBookView(symbol);
+                    if (view == null) {
+                        sb.append("null");
+                    } else {
+                        query.appendJson(sb, view);
                     }
+                });
+            });
+        }
+
+        // Point-in-time and range reads of the sampled history run on the owner, which writes it
+        router.get("/orderbook/:symbol/at").handler(ctx -> {
+            String symbol = ctx.pathParam("symbol").toUpperCase();
+            Long ts = longParam(ctx, "ts", null);
+            KucoinOrderBookVerticle owner = ts == null ? null : historyOwner(ctx, symbol);
+            if (owner == null) {
+                return;
+            }
+            owner.context.runOnContext(v -> {
+                BookHistory history = owner.histories.get(symbol);
+                String sample = history == null ? null : history.sampleAt(ts);
+                if (sample == null) {
+                    ctx.response().setStatusCode(404).end("No history for " + symbol + " at " + ts);
                 } else {
-                    ctx.response().setStatusCode(500).end("Failed to fetch official snapshot: " + reply.cause().getMessage());
+                    ctx.response().putHeader("Content-Type", "application/json").end(sample);
+                }
+            });
+        });
+
+        // Newline-delimited JSON, streamed in batches so a long range never blocks the owner's loop
+        router.get("/orderbook/:symbol/history").handler(ctx -> {
+            String symbol = ctx.pathParam("symbol").toUpperCase();
+            Long from = longParam(ctx, "from", 0L);
+            Long to = from == null ? null : longParam(ctx, "to", Long.MAX_VALUE);
+            KucoinOrderBookVerticle owner = to == null ? null : historyOwner(ctx, symbol);
+            if (owner == null) {
+                return;
+            }
+            if (from > to) {
+                ctx.response().setStatusCode(400).end("from is after to");
+                return;
+            }
+            boolean includeDeltas = "true".equalsIgnoreCase(ctx.request().getParam("deltas"));
+            owner.context.runOnContext(v -> {
+                BookHistory history = owner.histories.get(symbol);
+                if (history == null) {
+                    ctx.response().setStatusCode(404).end("No history for " + symbol);
+                    return;
                 }
+                HttpServerResponse response = ctx.response().setChunked(true).putHeader("Content-Type", "application/x-ndjson");
+                owner.streamHistory(response, history.range(from, to, includeDeltas));
             });
         });
 
+        // WebSocket push of the book: a snapshot of the top depth levels, then conflated deltas
+        router.get("/stream/orderbook/:symbol").handler(ctx -> {
+            String symbol = ctx.pathParam("symbol").toUpperCase();
+            Integer depth = intParam(ctx, "depth", DEFAULT_STREAM_DEPTH);
+            if (depth == null) {
+                return;
+            }
+            double maxRate;
+            try {
+                maxRate = Double.parseDouble(ctx.request().getParam("maxRate", "0"));
+            } catch (NumberFormatException e) {
+                ctx.response().setStatusCode(400).end("Invalid maxRate: " + ctx.request().getParam("maxRate"));
+                return;
+            }
+            KucoinOrderBookVerticle owner = shards.owner(symbol);
+            if (owner == null) {
+                ctx.response().setStatusCode(503).end("Order book shard not ready for symbol: " + symbol);
+                return;
+            }
+            ctx.request().toWebSocket()
+                    .onSuccess(ws -> owner.context.runOnContext(v -> owner.addStreamSubscriber(
+                            new BookStreamSubscriber(symbol, ws, depth, maxRate, owner.vertx, owner.context))))
+                    .onFailure(err -> System.err.println("Stream upgrade failed for " + symbol + ": " + err.getMessage()));
+        });
+
+        // Background validation results, held by OrderBookValidatorVerticle
+        router.get("/validation").handler(ctx -> replyWithValidation(ctx, ""));
+        router.get("/validation/:symbol").handler(ctx -> replyWithValidation(ctx, ctx.pathParam("symbol").toUpperCase()));
+
+        router.get("/orderbook/validate/:symbol").handler(ctx -> {
+            String symbol = ctx.pathParam("symbol").toUpperCase();
+            validate(ctx, symbol);
+        });
+
         vertx.createHttpServer()
                 .requestHandler(router)
-                .listen(8080)
+                .listen(config().getInteger("httpPort", 8080))
                 .onSuccess(server -> {
-                    System.out.println("HTTP server started on port " + server.actualPort());
+                    System.out.println("HTTP server started on port " + server.actualPort() + " for shard " + shardIndex);
                     startPromise.complete();
                 })
                 .onFailure(startPromise::fail);
 
-        vertx.eventBus().consumer("orderbook.snapshot", message -> {
-            JsonObject obj = new JsonObject((String) message.body());
-            String symbol = obj.getString("symbol");
-            String snapshotStr = obj.getString("snapshot");
-            if (symbol == null || snapshotStr == null) {
-                System.err.println("Invalid snapshot message received");
-                return;
+        vertx.eventBus().<OrderBookSnapshot>localConsumer(
+                OrderBookShards.shardAddress(OrderBookShards.SNAPSHOT_ADDRESS, shardIndex),
+                message -> handleSnapshotMessage(message.body()));
+        vertx.eventBus().<String>localConsumer(
+                OrderBookShards.shardAddress(OrderBookShards.SNAPSHOT_FAILED_ADDRESS, shardIndex),
+                message -> handleSnapshotFailed(message.body()));
+    }
+
+    @Override
+    public void stop() {
+        // Final checkpoint on a clean shutdown, written in place since the loop is going away
+        if (checkpointFile != null && !checkpointInProgress) {
+            try {
+                BookCheckpoint.write(checkpointFile, publishedViews());
+            } catch (IOException e) {
+                System.err.println("Failed to write checkpoint " + checkpointFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Reads every shard's checkpoint, since the shard count may have changed, and keeps the books
+    // this shard owns (in a cluster: holds, as owner or standby). Runs before the consumers are registered, so no live update can race it.
+    private void restoreCheckpoints(Path directory) {
+        try {
+            for (Path file : BookCheckpoint.files(directory)) {
+                for (OrderBookSnapshot saved : BookCheckpoint.read(file)) {
+                    String symbol = saved.getSymbol();
+                    if (OrderBookShards.shardOf(symbol, shards.count()) != shardIndex || role(symbol) == OrderBookShards.Role.NONE) {
+                        continue;
+                    }
+                    OrderBook book = orderBooks.computeIfAbsent(symbol, k -> new OrderBook(SymbolPrecision.of(k)));
+                    book.restore(saved);
+                    checkpointedVersions.put(symbol, book.publishView().getVersion());
+                    System.out.println("Restored " + symbol + " at sequence " + saved.getSequence() + " from " + file + " (stale)");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to restore checkpoints from " + directory + ", starting empty: " + e.getMessage());
+        }
+    }
+
+    // Published views are immutable, so the copy is taken here and written on a worker thread.
+    // Skipped when nothing changed since the last checkpoint or the previous write is still going.
+    private void writeCheckpoint() {
+        if (checkpointInProgress) {
+            return;
+        }
+        Map<String, BookView> views = publishedViews();
+        boolean changed = false;
+        for (Map.Entry<String, BookView> e : views.entrySet()) {
+            Long written = checkpointedVersions.get(e.getKey());
+            if (written == null || written != e.getValue().getVersion()) {
+                changed = true;
+                break;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+        checkpointInProgress = true;
+        vertx.<Void>executeBlocking(promise -> {
+            try {
+                BookCheckpoint.write(checkpointFile, views);
+                promise.complete();
+            } catch (IOException e) {
+                promise.fail(e);
+            }
+        }, ar -> {
+            checkpointInProgress = false;
+            if (ar.succeeded()) {
+                views.forEach((symbol, view) -> checkpointedVersions.put(symbol, view.getVersion()));
+            } else {
+                System.err.println("Failed to write checkpoint " + checkpointFile + ": " + ar.cause().getMessage());
             }
-            JsonObject snapshotJson = new JsonObject(snapshotStr);
-            handleSnapshotMessage(symbol, snapshotJson);
         });
+    }
 
-        vertx.eventBus().consumer("orderbook.updates", message -> {
-            JsonObject json = new JsonObject((String) message.body());
-            handleUpdateMessage(json);
+    private Map<String, BookView> publishedViews() {
+        Map<String, BookView> views = new TreeMap<>();
+        orderBooks.forEach((symbol, book) -> {
+            BookView view = book.getView();
+            if (view.getSequence() != -1) {
+                views.put(symbol, view);
+            }
         });
+        return views;
     }
 
-    private void handleSnapshotMessage(String symbol, JsonObject snapshotJson) {
-        OrderBook book = orderBooks.computeIfAbsent(symbol, k -> new OrderBook());
+    // Serves the cached encoding of the latest published view; polling clients that send back the
+    // ETag get a 304. Runs on whichever event loop took the request.
+    private void serveOrderBook(RoutingContext ctx, String symbol, int depth) {
+        BookView view = getBookView(symbol);
+        if (view == null) {
+            ctx.response().setStatusCode(404).end("Order book not found for symbol: " + symbol);
+            return;
+        }
+        OrderBookJsonCache cache = view.getJsonCache();
+        String etag = cache.etag();
+        ctx.response().putHeader("ETag", etag).putHeader("Vary", "Accept-Encoding");
+        if (view.isStale()) {
+            ctx.response().putHeader("X-Book-Stale", "true");
+        }
 
-        JsonObject data = snapshotJson.getJsonObject("data");
-        if (data == null) {
-            System.err.println("Snapshot data missing for symbol " + symbol);
+        String ifNoneMatch = ctx.request().getHeader("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            ctx.response().setStatusCode(304).end();
             return;
         }
-        refreshInProgress.remove(symbol);
 
-        try {
-            long sequence;
-            Object seqObj = data.getValue("sequence");
-            if (seqObj instanceof String) {
-                sequence = Long.parseLong((String) seqObj);
-            } else if (seqObj instanceof Number) {
-                sequence = ((Number) seqObj).longValue();
+        boolean pretty = !"true".equalsIgnoreCase(ctx.request().getParam("compact"));
+        String acceptEncoding = ctx.request().getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            ctx.response().putHeader("Content-Encoding", "gzip");
+        }
+        ctx.response().putHeader("Content-Type", "application/json").end(cache.get(depth, pretty, gzip));
+        if (view.getReceivedAtNanos() != 0) {
+            Metrics.get().receiveToResponse.recordNanos(System.nanoTime() - view.getReceivedAtNanos());
+        }
+    }
+
+    // Clustered reads: a request for one symbol is answered here if this node owns its book or keeps
+    // a replica of it, and forwarded to the owner otherwise. Registered ahead of the handlers that
+    // serve the books, which these fall through to.
+    private void routeToHolders(Router router) {
+        router.get("/orderbook/validate/:symbol").handler(ctx -> forwardUnlessHeld(ctx, ctx.pathParam("symbol"), false));
+        // Background validation results live with the owner's validator
+        router.get("/validation/:symbol").handler(ctx -> forwardUnlessHeld(ctx, ctx.pathParam("symbol"), true));
+        router.get("/orderbook/:symbol").handler(ctx -> forwardUnlessHeld(ctx, ctx.pathParam("symbol"), false));
+        router.get("/orderbook/:symbol/*").handler(ctx -> {
+            if ("validate".equals(ctx.pathParam("symbol"))) {
+                ctx.next();
+            } else {
+                forwardUnlessHeld(ctx, ctx.pathParam("symbol"), false);
+            }
+        });
+        // A WebSocket upgrade is not proxied; the client is sent to the owner instead
+        router.get("/stream/orderbook/:symbol").handler(ctx -> {
+            String symbol = ctx.pathParam("symbol").toUpperCase();
+            if (ClusterForwarder.isForwarded(ctx) || shards.holdsLocally(symbol)) {
+                ctx.next();
+                return;
+            }
+            String url = forwarder.urlOf(shards.getMembership().ownerOf(symbol), "ws", ctx.request().uri());
+            if (url == null) {
+                ctx.response().setStatusCode(503).end("Owner of " + symbol + " is not known yet");
             } else {
-                sequence = -1L;
+                ctx.response().setStatusCode(307).putHeader("Location", url).end();
             }
-            if (sequence != -1L) {
-                book.setLastSequence(sequence);
+        });
+    }
+
+    private void forwardUnlessHeld(RoutingContext ctx, String symbol, boolean ownerOnly) {
+        symbol = symbol.toUpperCase();
+        OrderBookShards.Role role = shards.roleOf(symbol);
+        if (ClusterForwarder.isForwarded(ctx) || role == OrderBookShards.Role.OWNER
+                || (!ownerOnly && role == OrderBookShards.Role.STANDBY)) {
+            if (role == OrderBookShards.Role.STANDBY) {
+                ctx.response().putHeader("X-Book-Replica", "true");
+            }
+            ctx.next();
+        } else {
+            forwarder.forward(ctx, symbol);
+        }
+    }
+
+    // The symbols of a batch read, upper-cased and without blanks, or every configured book for
+    // "all"; answers 400 and returns null if missing
+    private List<String> batchSymbols(RoutingContext ctx) {
+        String symbols = ctx.request().getParam("symbols");
+        if (symbols == null || symbols.isEmpty()) {
+            ctx.response().setStatusCode(400).end("Missing symbols");
+            return null;
+        }
+        if ("all".equalsIgnoreCase(symbols)) {
+            return allSymbols;
+        }
+        List<String> parsed = new ArrayList<>();
+        for (String requested : symbols.split(",")) {
+            String symbol = requested.trim().toUpperCase();
+            if (!symbol.isEmpty()) {
+                parsed.add(symbol);
             }
-        } catch (Exception e) {
-            System.err.println("Error parsing sequence in snapshot for " + symbol + ": " + e.getMessage());
         }
+        return parsed;
+    }
 
-        book.applySnapshot(data);
+    // A JSON object keyed by symbol, in the order asked for, with each value written by appendValue.
+    // In a cluster the symbols this node does not hold are fetched from their owners, one request
+    // per node with the same parameters, and their values spliced in as the owner encoded them
+    // (null if the owner failed). Such a forwarded request is answered with just the values, one
+    // per line, so the caller can split them without decoding; values never contain a newline.
+    private void serveBatch(RoutingContext ctx, List<String> symbols, BiConsumer<StringBuilder, String> appendValue) {
+        Map<String, Buffer> remote = new HashMap<>();
+        List<Future> fetches = new ArrayList<>();
+        boolean forwarded = forwarder != null && ClusterForwarder.isForwarded(ctx);
+        if (forwarder != null && !forwarded) {
+            Map<String, List<String>> byOwner = new TreeMap<>();
+            for (String symbol : symbols) {
+                if (!shards.holdsLocally(symbol)) {
+                    byOwner.computeIfAbsent(shards.getMembership().ownerOf(symbol), k -> new ArrayList<>()).add(symbol);
+                }
+            }
+            byOwner.forEach((node, nodeSymbols) -> {
+                for (String symbol : nodeSymbols) {
+                    remote.put(symbol, NULL_VALUE);
+                }
+                fetches.add(forwarder.fetch(node, batchUri(ctx, nodeSymbols)).map(body -> {
+                    ChunkedJsonWriter.splitLines(body, nodeSymbols, remote);
+                    return body;
+                }));
+            });
+        }
+        ctx.response().putHeader("Content-Type", forwarded ? "application/x-ndjson" : "application/json");
+        if (fetches.isEmpty()) {
+            writeBatch(ctx.response(), symbols, 0, forwarded, remote, appendValue);
+        } else {
+            CompositeFuture.join(fetches).onComplete(done -> writeBatch(ctx.response(), symbols, 0, false, remote, appendValue));
+        }
     }
 
-    public void handleUpdateMessage(JsonObject json) {
-        String symbol = getSymbol(json);
-        if (symbol == null) {
-            System.out.println("No symbol found in message");
+    // Writes the batch from symbol `from` on, as a JSON object or, for a forwarded request, as
+    // lines. A response that outgrows one chunk goes out chunked, and when the connection's write
+    // queue fills up the rest waits for it to drain, so a slow reader of a large batch holds at
+    // most a few chunks in memory.
+    private void writeBatch(HttpServerResponse response, List<String> symbols, int from, boolean lines,
+                            Map<String, Buffer> remote, BiConsumer<StringBuilder, String> appendValue) {
+        if (response.closed()) {
             return;
         }
-        JsonObject data = json.getJsonObject("data");
-        if (data == null) {
-            return;
+        StringBuilder sb = batchWriter.builder();
+        sb.setLength(0);
+        if (from == 0 && !lines) {
+            sb.append('{');
+        }
+        for (int i = from; i < symbols.size(); i++) {
+            String symbol = symbols.get(i);
+            if (!lines) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                ChunkedJsonWriter.appendString(sb, symbol).append(':');
+            }
+            Buffer value = remote.get(symbol);
+            if (value == null) {
+                appendValue.accept(sb, symbol);
+            } else {
+                batchWriter.splice(value);
+            }
+            if (lines) {
+                sb.append('\n');
+            }
+            if (batchWriter.chunkFull() && i + 1 < symbols.size()) {
+                response.setChunked(true);
+                response.write(batchWriter.take());
+                if (response.writeQueueFull()) {
+                    int next = i + 1;
+                    response.drainHandler(v -> writeBatch(response, symbols, next, lines, remote, appendValue));
+                    return;
+                }
+            }
+        }
+        if (!lines) {
+            sb.append('}');
         }
+        response.end(batchWriter.take());
+    }
 
-        OrderBook book = orderBooks.computeIfAbsent(symbol, k -> new OrderBook());
+    // The same request with only the given symbols
+    private static String batchUri(RoutingContext ctx, List<String> symbols) {
+        StringBuilder uri = new StringBuilder(ctx.request().path()).append("?symbols=")
+                .append(URLEncoder.encode(String.join(",", symbols), StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> param : ctx.queryParams()) {
+            if (!"symbols".equals(param.getKey())) {
+                uri.append('&').append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8))
+                        .append('=').append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8));
+            }
+        }
+        return uri.toString();
+    }
 
-        handleIncrementalUpdate(symbol, book, data);
+    // Parses the parameters of one analytics metric; answers 400 and returns null if invalid
+    private static DepthAnalytics.Query analyticsQuery(RoutingContext ctx, String metric) {
+        Double bps = doubleParam(ctx, "bps", 10.0);
+        if (bps == null) {
+            return null;
+        }
+        switch (metric) {
+            case "depth":
+                return DepthAnalytics.depthWithin(bps);
+            case "imbalance":
+                Integer levels = intParam(ctx, "levels", 0);
+                return levels == null ? null : DepthAnalytics.imbalance(bps, levels);
+            default:
+                String side = ctx.request().getParam("side");
+                if (!"buy".equalsIgnoreCase(side) && !"sell".equalsIgnoreCase(side)) {
+                    ctx.response().setStatusCode(400).end("side must be buy or sell");
+                    return null;
+                }
+                Double quantity = doubleParam(ctx, "quantity", null);
+                return quantity == null ? null : DepthAnalytics.costToFill("buy".equalsIgnoreCase(side), quantity);
+        }
     }
 
-    private final Map<String, List<JsonObject>> incrementalUpdateBuffer = new ConcurrentHashMap<>();
+    // Reads a positive number query parameter, required when defaultValue is null; answers 400 and returns null if invalid
+    private static Double doubleParam(RoutingContext ctx, String name, Double defaultValue) {
+        String value = ctx.request().getParam(name);
+        if (value == null) {
+            if (defaultValue == null) {
+                ctx.response().setStatusCode(400).end("Missing " + name);
+            }
+            return defaultValue;
+        }
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed > 0 && !Double.isInfinite(parsed)) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        ctx.response().setStatusCode(400).end("Invalid " + name + ": " + value);
+        return null;
+    }
 
-    private void handleIncrementalUpdate(String symbol, OrderBook book, JsonObject data) {
-        long sequenceStart = data.getLong("sequenceStart", -1L);
-        long sequenceEnd = data.getLong("sequenceEnd", -1L);
+    // Reads a long query parameter, required when defaultValue is null; answers 400 and returns null if invalid
+    private static Long longParam(RoutingContext ctx, String name, Long defaultValue) {
+        String value = ctx.request().getParam(name);
+        if (value == null) {
+            if (defaultValue == null) {
+                ctx.response().setStatusCode(400).end("Missing " + name);
+            }
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            ctx.response().setStatusCode(400).end("Invalid " + name + ": " + value);
+            return null;
+        }
+    }
 
-        if (sequenceEnd == -1) {
+    // The shard owning the symbol if history is enabled; otherwise answers and returns null
+    private KucoinOrderBookVerticle historyOwner(RoutingContext ctx, String symbol) {
+        if (historyConfig == null) {
+            ctx.response().setStatusCode(404).end("Book history is not enabled");
+            return null;
+        }
+        KucoinOrderBookVerticle owner = shards.owner(symbol);
+        if (owner == null) {
+            ctx.response().setStatusCode(503).end("Order book shard not ready for symbol: " + symbol);
+        }
+        return owner;
+    }
+
+    private BookHistory historyOf(String symbol) {
+        return histories.computeIfAbsent(symbol, k -> new BookHistory(historyConfig.getInteger("capacity", 3600),
+                historyConfig.getInteger("depth", 20),
+                historyConfig.getBoolean("retainDeltas", false) ? historyConfig.getInteger("deltaCapacity", 262144) : 0));
+    }
+
+    // Writes one batch per loop turn and waits for the socket to drain when the client is slow
+    private void streamHistory(HttpServerResponse response, BookHistory.Cursor cursor) {
+        if (response.closed()) {
             return;
         }
+        StringBuilder sb = new StringBuilder(HISTORY_BATCH * 128);
+        int written = 0;
+        while (written < HISTORY_BATCH && cursor.appendNext(sb)) {
+            sb.append('\n');
+            written++;
+        }
+        if (written > 0) {
+            response.write(sb.toString());
+        }
+        if (written < HISTORY_BATCH) {
+            response.end();
+        } else if (response.writeQueueFull()) {
+            response.drainHandler(v -> context.runOnContext(x -> streamHistory(response, cursor)));
+        } else {
+            context.runOnContext(v -> streamHistory(response, cursor));
+        }
+    }
 
-        // Ignore stale messages
-        if (sequenceEnd <= book.getLastSequence()) {
+    // Reads an optional positive integer query parameter; answers 400 and returns null if invalid
+    private static Integer intParam(RoutingContext ctx, String name, int defaultValue) {
+        String value = ctx.request().getParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        ctx.response().setStatusCode(400).end("Invalid " + name + ": " + value);
+        return null;
+    }
+
+    private void replyWithValidation(RoutingContext ctx, String symbol) {
+        vertx.eventBus().request(OrderBookValidatorVerticle.HISTORY_ADDRESS, symbol, LocalMessageCodec.LOCAL_ONLY, reply -> {
+            if (reply.succeeded()) {
+                Object body = reply.result().body();
+                String json = body instanceof JsonObject ? ((JsonObject) body).encodePrettily() : ((JsonArray) body).encodePrettily();
+                ctx.response().putHeader("Content-Type", "application/json").end(json);
+            } else {
+                ctx.response().setStatusCode(503).end("Background validation unavailable: " + reply.cause().getMessage());
+            }
+        });
+    }
+
+    // Compares the view published when the request came in against the exchange snapshot
+    private void validate(RoutingContext ctx, String symbol) {
+        BookView myBook = getBookView(symbol);
+        if (myBook == null) {
+            ctx.response().setStatusCode(404).end("Order book not found for symbol: " + symbol);
             return;
         }
 
-        // Detect gap
-        if (book.getLastSequence() != -1 && sequenceStart > book.getLastSequence() + 1) {
-            // Buffer this update instead of discarding
-            incrementalUpdateBuffer.computeIfAbsent(symbol, k -> new ArrayList<>()).add(data);
+        vertx.eventBus().<OrderBookSnapshot>request("orderbook.getSnapshot", symbol, LocalMessageCodec.LOCAL_ONLY, reply -> {
+            if (reply.succeeded()) {
+                try {
+                    OrderBookSnapshot officialSnapshot = reply.result().body();
+                    JsonObject diff = OrderBookComparator.compareOrderBooks(myBook, officialSnapshot);
 
-            if (!refreshInProgress.containsKey(symbol)) {
-                long now = System.currentTimeMillis();
-                long lastRefresh = lastRefreshTimestamp.getOrDefault(symbol, 0L);
-                if (now - lastRefresh > REFRESH_COOLDOWN_MS) {
-                    vertx.eventBus().send("orderbook.refresh", symbol);
-                    lastRefreshTimestamp.put(symbol, now);
-                    refreshInProgress.put(symbol, true);
-//                    System.out.println("refreshing order book for " + symbol);
+                    JsonObject response = new JsonObject();
+                    response.put("bids_match_percentage", diff.getDouble("bids_match_percentage"));
+                    response.put("asks_match_percentage", diff.getDouble("asks_match_percentage"));
+                    response.put("booksMatch", diff.getBoolean("booksMatch"));
+
+                    JsonObject diffs = new JsonObject();
+                    diffs.put("bids_diff", diff.getJsonArray("bids_diff"));
+                    diffs.put("asks_diff", diff.getJsonArray("asks_diff"));
+                    response.put("diffs", diffs);
+
+                    ctx.response()
+                            .putHeader("Content-Type", "application/json")
+                            .end(response.encodePrettily());
+                } catch (Exception e) {
+                    ctx.response().setStatusCode(500).end("Failed to process official snapshot: " + e.getMessage());
                 }
+            } else {
+                ctx.response().setStatusCode(500).end("Failed to fetch official snapshot: " + reply.cause().getMessage());
             }
-            else {
-                System.out.println("refresh already in progress for " + symbol + ", buffering incremental update");
+        });
+    }
+
+    // The books map is concurrent and the L1 is published through a volatile, so any thread may read it
+    private TopOfBook topOf(String symbol) {
+        OrderBook book = bookOf(symbol);
+        return book == null ? null : book.getTop();
+    }
+
+    // Latest published view of the symbol's book, from whichever shard owns it; safe from any
+    // thread, including worker threads and other verticles. Null if there is no book yet.
+    public BookView getBookView(String symbol) {
+        OrderBook book = bookOf(symbol);
+        return book == null ? null : book.getView();
+    }
+
+    private OrderBook bookOf(String symbol) {
+        KucoinOrderBookVerticle owner = shards.owner(symbol);
+        return owner == null ? null : owner.orderBooks.get(symbol);
+    }
+
+    private void addStreamSubscriber(BookStreamSubscriber subscriber) {
+        String symbol = subscriber.getSymbol();
+        streamSubscribers.computeIfAbsent(symbol, k -> new ArrayList<>()).add(subscriber);
+        subscriber.getSocket().closeHandler(v -> context.runOnContext(x -> {
+            subscriber.close();
+            List<BookStreamSubscriber> subscribers = streamSubscribers.get(symbol);
+            if (subscribers != null) {
+                subscribers.remove(subscriber);
+                if (subscribers.isEmpty()) {
+                    streamSubscribers.remove(symbol);
+                }
             }
+        }));
+        OrderBook book = orderBooks.get(symbol);
+        if (book != null) {
+            subscriber.onBookChanged(book);
+        }
+    }
+
+    private void notifyStreams(String symbol, OrderBook book) {
+        List<BookStreamSubscriber> subscribers = streamSubscribers.get(symbol);
+        if (subscribers == null) {
             return;
         }
+        for (BookStreamSubscriber subscriber : subscribers) {
+            subscriber.onBookChanged(book);
+        }
+    }
 
-        // If any buffered increments exist and sequenceStart is now continuous, apply them first
-        List<JsonObject> buffered = incrementalUpdateBuffer.get(symbol);
-        if (buffered != null && !buffered.isEmpty()) {
-            buffered.sort(Comparator.comparingLong(o -> o.getLong("sequenceEnd", -1L)));
-            for (JsonObject bufferedUpdate : buffered) {
-                if (bufferedUpdate.getLong("sequenceStart", -1L) == book.getLastSequence() + 1) {
-                    book.applyIncremental(bufferedUpdate.getJsonObject("changes"));
-                    book.setLastSequence(bufferedUpdate.getLong("sequenceEnd"));
-                } else {
-                    // If gap still not continuous, break to wait for snapshot refresh
-                    break;
+    // A leg moved: rebuild the implied books it feeds on the shards that own them. Refreshes for
+    // another shard are coalesced, so a burst of leg updates turns into one rebuild there.
+    private void notifyCrossRates(String leg) {
+        List<CrossRateBook> affected = crossRatesByLeg.get(leg);
+        if (affected == null) {
+            return;
+        }
+        for (CrossRateBook cross : affected) {
+            KucoinOrderBookVerticle owner = shards.owner(cross.getSymbol());
+            if (owner == this) {
+                refreshCrossRate(crossRates.get(cross.getSymbol()));
+            } else if (owner != null) {
+                CrossRateBook owned = owner.crossRates.get(cross.getSymbol());
+                if (owned.scheduleRefresh()) {
+                    owner.context.runOnContext(v -> owner.refreshCrossRate(owned));
                 }
             }
-            buffered.clear();
         }
+    }
 
-        // Apply current incremental update if continuous
-        if (sequenceStart == book.getLastSequence() + 1) {
-            book.applyIncremental(data.getJsonObject("changes"));
-            book.setLastSequence(sequenceEnd);
-        } else {
-            // If not continuous, buffer current update too
-            incrementalUpdateBuffer.computeIfAbsent(symbol, k -> new ArrayList<>()).add(data);
+    private void refreshCrossRate(CrossRateBook cross) {
+        cross.refreshStarted();
+        BookView base = getBookView(cross.getBaseLeg());
+        BookView quote = getBookView(cross.getQuoteLeg());
+        if (base == null || quote == null) {
+            return;
+        }
+        String symbol = cross.getSymbol();
+        OrderBook book = orderBooks.computeIfAbsent(symbol, k -> new OrderBook(SymbolPrecision.of(k)));
+        if (cross.update(base, quote, book)) {
+            book.publishView();
+            notifyStreams(symbol, book);
         }
     }
 
+    // Outside a cluster every symbol is owned here
+    private OrderBookShards.Role role(String symbol) {
+        return replication == null ? OrderBookShards.Role.OWNER : roles.getOrDefault(symbol, OrderBookShards.Role.NONE);
+    }
 
-
-    private String getSymbol(JsonObject json) {
-        String topic = json.getString("topic");
-        if (topic != null && topic.contains(":")) {
-            return topic.substring(topic.indexOf(":") + 1).toUpperCase();
+    // Recomputes the role of each of this shard's symbols and acts on what changed: a standby
+    // that became owner takes over from its replica, an owner ships its live book to a new standby
+    // or, when a joining node takes the symbol, to the new owner, and a book this node is no
+    // longer asked to hold is dropped. The first call, at start, only records the roles.
+    private void onMembershipChanged() {
+        ClusterMembership membership = shards.getMembership();
+        for (String symbol : shardSymbols) {
+            OrderBookShards.Role before = roles.get(symbol);
+            OrderBookShards.Role now = shards.roleOf(symbol);
+            String standby = now == OrderBookShards.Role.OWNER ? membership.standbyOf(symbol) : null;
+            String previousStandby = standby == null ? standbys.remove(symbol) : standbys.put(symbol, standby);
+            roles.put(symbol, now);
+            if (before == null || (before == now && Objects.equals(standby, previousStandby))) {
+                continue;
+            }
+            System.out.println(symbol + " is now " + now + (standby == null ? "" : " with standby " + standby) + " (was " + before + ")");
+            OrderBook book = orderBooks.get(symbol);
+            if (now == OrderBookShards.Role.OWNER) {
+                if (before == OrderBookShards.Role.STANDBY) {
+                    takeOver(symbol, book);
+                }
+                if (standby != null && !standby.equals(previousStandby)) {
+                    shipBook(standby, symbol, book);
+                }
+            } else if (before == OrderBookShards.Role.OWNER) {
+                shipBook(membership.ownerOf(symbol), symbol, book);
+            }
+            if (now == OrderBookShards.Role.NONE) {
+                dropBook(symbol);
+            }
         }
-        return null;
     }
 
-    private JsonObject compareOrderBooks(OrderBook myBook, JsonObject officialSnapshot) {
-        JsonObject diff = new JsonObject();
+    // The replica has been following both the owner's stream and its own feed subscription, so
+    // it normally continues without a snapshot; only a hole neither of them filled needs one
+    private void takeOver(String symbol, OrderBook book) {
+        UpdateRingBuffer buffer = gapBuffers.get(symbol);
+        if (book == null || book.getLastSequence() == -1) {
+            System.out.println("Took over " + symbol + " without replicated state; requesting a snapshot");
+            requestRefresh(symbol, 0);
+        } else if (buffer != null && !buffer.isEmpty()) {
+            System.out.println("Took over " + symbol + " at sequence " + book.getLastSequence() + " with a gap; requesting a snapshot");
+            requestRefresh(symbol, buffer.peek().getSequenceStart() - book.getLastSequence() - 1);
+        } else {
+            System.out.println("Took over " + symbol + " at sequence " + book.getLastSequence() + " from its replica");
+        }
+    }
 
-        Map<Double, Double> officialBids = toMap(officialSnapshot.getJsonArray("bids"));
-        Map<Double, Double> officialAsks = toMap(officialSnapshot.getJsonArray("asks"));
+    // Only a confirmed book is shipped; a stale one goes over once the feed confirms it
+    private void shipBook(String node, String symbol, OrderBook book) {
+        if (node == null || book == null || book.getLastSequence() == -1 || book.isStale()) {
+            return;
+        }
+        replication.snapshot(node, symbol, book.getLastSequence(), book.getBids(), book.getAsks());
+    }
 
-        Map<Double, Double> myBids = myBook.getBids();
-        Map<Double, Double> myAsks = myBook.getAsks();
+    private void dropBook(String symbol) {
+        orderBooks.remove(symbol);
+        UpdateRingBuffer buffer = gapBuffers.remove(symbol);
+        if (buffer != null) {
+            buffer.clear();
+        }
+        gapDetectedAt.remove(symbol);
+        refreshInProgress.remove(symbol);
+        System.out.println("Released " + symbol);
+    }
 
-        JsonArray bidsDiff = new JsonArray();
-        compareSideDiff(myBids, officialBids, bidsDiff);
+    // Owner side: every update received goes to the standby as is, and a book that just stopped
+    // being stale goes over whole, since the standby had no confirmed state to apply it to
+    private void replicate(String symbol, OrderBook book, Level2Update update, boolean wasStale) {
+        String standby = standbys.get(symbol);
+        if (standby == null) {
+            return;
+        }
+        replication.update(standby, update);
+        if (wasStale && !book.isStale()) {
+            shipBook(standby, symbol, book);
+        }
+    }
 
-        JsonArray asksDiff = new JsonArray();
-        compareSideDiff(myAsks, officialAsks, asksDiff);
+    // A snapshot from the journal replay, run by the ingest queue in recorded order with the frames
+    // around it. One that is behind the book (the feed had already overtaken it when it was
+    // recorded) is skipped, as a replicated one is, rather than rewinding the book.
+    void applyReplayedSnapshot(OrderBookSnapshot snapshot) {
+        OrderBook book = orderBooks.get(snapshot.getSymbol());
+        if (book == null || book.isStale() || snapshot.getSequence() > book.getLastSequence()) {
+            handleSnapshotMessage(snapshot);
+        }
+    }
 
-        diff.put("bids_diff", bidsDiff);
-        diff.put("asks_diff", asksDiff);
+    // Records replicated to this node by a symbol's owner, decoded by ClusterVerticle. They go
+    // through the same merge as local input, and requestRefresh() only acts for owned books, so a
+    // replica waits for its owner to close a gap. A snapshot behind what the replica already has
+    // (its own feed may be ahead) is skipped.
+    void applyReplicated(List<Object> records) {
+        for (Object record : records) {
+            if (record instanceof OrderBookSnapshot) {
+                OrderBookSnapshot snapshot = (OrderBookSnapshot) record;
+                OrderBook book = orderBooks.get(snapshot.getSymbol());
+                if (role(snapshot.getSymbol()) != OrderBookShards.Role.NONE
+                        && (book == null || book.isStale() || snapshot.getSequence() > book.getLastSequence())) {
+                    handleSnapshotMessage(snapshot);
+                }
+            } else {
+                Level2Update update = (Level2Update) record;
+                String symbol = update.getSymbol();
+                if (role(symbol) == OrderBookShards.Role.NONE) {
+                    continue;
+                }
+                OrderBook book = orderBooks.computeIfAbsent(symbol, k -> new OrderBook(SymbolPrecision.of(k)));
+                handleIncrementalUpdate(symbol, book, update);
+                book.publishView();
+                notifyStreams(symbol, book);
+            }
+        }
+    }
 
-        double bidsMatchPercent = calculateMatchPercentage(myBids, officialBids);
-        double asksMatchPercent = calculateMatchPercentage(myAsks, officialAsks);
-        diff.put("bids_match_percentage", bidsMatchPercent);
-        diff.put("asks_match_percentage", asksMatchPercent);
+    // Exchange merge rules: buffered deltas at or below the snapshot sequence are discarded and
+    // the rest replayed in order; if a hole is still left another snapshot is requested
+    private void handleSnapshotMessage(OrderBookSnapshot snapshot) {
+        String symbol = snapshot.getSymbol();
+        OrderBook book = orderBooks.computeIfAbsent(symbol, k -> new OrderBook(SymbolPrecision.of(k)));
+        refreshInProgress.remove(symbol);
+        book.applySnapshot(snapshot);
+        String standby = standbys.get(symbol);
+        if (standby != null) {
+            replication.snapshot(standby, symbol, snapshot.getSequence(), snapshot.getBids(), snapshot.getAsks());
+        }
+        if (replayBuffered(symbol, book)) {
+            requestRefresh(symbol, gapBuffers.get(symbol).peek().getSequenceStart() - book.getLastSequence() - 1);
+        }
+        if (historyConfig != null) {
+            // A snapshot breaks the delta chain, so the history gets a fresh sample right away
+            historyOf(symbol).sample(System.currentTimeMillis(), book);
+        }
+        book.publishView();
+        notifyStreams(symbol, book);
+        notifyCrossRates(symbol);
+    }
 
-        diff.put("booksMatch", bidsDiff.isEmpty() && asksDiff.isEmpty());
+    // A run of consecutive updates of one symbol, handed over by the ingest queue. They arrive
+    // already decoded and are owned by this verticle, so buffering one across a gap keeps the
+    // message itself. Each is merged and replicated, but the view, the streams and the implied
+    // books are refreshed once for the whole run.
+    private void handleUpdates(String symbol, List<Level2Update> updates) {
+        Metrics metrics = Metrics.get();
+        long allocatedBefore = metrics.threadAllocatedBytes();
+        OrderBook book = orderBooks.computeIfAbsent(symbol, k -> new OrderBook(SymbolPrecision.of(k)));
+        for (int i = 0; i < updates.size(); i++) {
+            Level2Update update = updates.get(i);
+            boolean wasStale = book.isStale();
+            boolean held = handleIncrementalUpdate(symbol, book, update);
+            replicate(symbol, book, update, wasStale);
+            if (!held) {
+                // Replication has copied it by now, so the holder can go back to its producer
+                update.release();
+            }
+        }
+        book.publishView();
+        notifyStreams(symbol, book);
+        notifyCrossRates(symbol);
+        metrics.messagesHandled(updates.size(), allocatedBefore);
+    }
 
-        return diff;
+    // The ingest queue for this symbol overflowed under the "drop" policy: the book now has a hole
+    // the following updates would find anyway, so go for the snapshot straight away
+    private void handleIngestOverflow(String symbol, int dropped) {
+        System.out.println("Ingest queue for " + symbol + " overflowed; dropped " + dropped + " updates, resnapshotting");
+        OrderBook book = orderBooks.get(symbol);
+        if (book == null || book.getLastSequence() == -1) {
+            return;
+        }
+        if (gapDetectedAt.putIfAbsent(symbol, System.currentTimeMillis()) == null) {
+            Metrics.get().gapDetected();
+        }
+        requestRefresh(symbol, dropped);
     }
 
-    private Map<Double, Double> toMap(JsonArray sideArray) {
-        Map<Double, Double> map = new ConcurrentHashMap<>();
-        if (sideArray == null) return map;
+    // Returns true if the update was kept in the gap buffer, false once nothing refers to it
+    private boolean handleIncrementalUpdate(String symbol, OrderBook book, Level2Update data) {
+        long sequenceStart = data.getSequenceStart();
+        long sequenceEnd = data.getSequenceEnd();
+
+        if (sequenceEnd == -1) {
+            return false;
+        }
+
+        // Ignore stale messages
+        if (sequenceEnd <= book.getLastSequence()) {
+            return false;
+        }
 
-        for (int i = 0; i < sideArray.size(); i++) {
-            JsonArray level = sideArray.getJsonArray(i);
-            if (level != null && level.size() >= 2) {
-                double price = Double.parseDouble(level.getString(0));
-                double size = Double.parseDouble(level.getString(1));
-                map.put(price, size);
+        // Continuous (or overlapping, where applyIncremental skips the changes already seen):
+        // apply it, then whatever buffered updates it made continuous
+        if (book.getLastSequence() != -1 && sequenceStart <= book.getLastSequence() + 1) {
+            applyUpdate(book, data);
+            replayBuffered(symbol, book);
+            return false;
+        }
+
+        // Gap, or no snapshot yet: hold the update until a snapshot (or the missing update) arrives
+        UpdateRingBuffer buffer = gapBuffers.computeIfAbsent(symbol, k -> new UpdateRingBuffer(gapBufferCapacity, gapBufferOverflow));
+        long droppedBefore = buffer.getDropped();
+        boolean held = buffer.add(data);
+        Metrics.get().updateBuffered();
+        if (buffer.getDropped() > droppedBefore) {
+            Metrics.get().updatesDropped(buffer.getDropped() - droppedBefore);
+        }
+        if (droppedBefore == 0 && buffer.getDropped() > 0) {
+            System.out.println("Gap buffer for " + symbol + " is full (" + buffer.capacity() + " updates); policy " + gapBufferOverflow);
+        }
+        if (book.getLastSequence() != -1) {
+            if (gapDetectedAt.putIfAbsent(symbol, System.currentTimeMillis()) == null) {
+                Metrics.get().gapDetected();
             }
+            requestRefresh(symbol, sequenceStart - book.getLastSequence() - 1);
         }
-        return map;
+        return held;
     }
 
-    private void compareSideDiff(Map<Double, Double> mySide, Map<Double, Double> officialSide, JsonArray diffArray) {
-        Set<Double> prices = new HashSet<>();
-        prices.addAll(mySide.keySet());
-        prices.addAll(officialSide.keySet());
+    private void applyUpdate(OrderBook book, Level2Update update) {
+        if (historyConfig != null) {
+            historyOf(update.getSymbol()).recordChanges(System.currentTimeMillis(), book.getLastSequence(), update);
+        }
+        book.applyIncremental(update);
+        book.setLastSequence(update.getSequenceEnd());
+        Metrics metrics = Metrics.get();
+        if (update.getReceivedAtNanos() != 0) {
+            metrics.receiveToApply.recordNanos(System.nanoTime() - update.getReceivedAtNanos());
+        }
+        if (update.getTime() > 0) {
+            metrics.exchangeToApply.recordNanos((System.currentTimeMillis() - update.getTime()) * 1_000_000L);
+        }
+    }
 
-        for (Double price : prices) {
-            double mySize = mySide.getOrDefault(price, 0.0);
-            double officialSize = officialSide.getOrDefault(price, 0.0);
-            if (Math.abs(mySize - officialSize) > 1e-6) {
-                diffArray.add(new JsonObject()
-                        .put("price", price)
-                        .put("mySize", mySize)
-                        .put("officialSize", officialSize));
+    // Applies buffered updates in sequence order until the next one leaves a hole; returns true
+    // if updates are still waiting behind a hole
+    private boolean replayBuffered(String symbol, OrderBook book) {
+        UpdateRingBuffer buffer = gapBuffers.get(symbol);
+        if (buffer == null) {
+            return false;
+        }
+        while (!buffer.isEmpty()) {
+            Level2Update next = buffer.peek();
+            if (next.getSequenceEnd() <= book.getLastSequence()) {
+                buffer.poll().release();
+            } else if (next.getSequenceStart() <= book.getLastSequence() + 1) {
+                Level2Update applied = buffer.poll();
+                applyUpdate(book, applied);
+                applied.release();
+            } else {
+                return true;
             }
         }
+        Long detectedAt = gapDetectedAt.remove(symbol);
+        if (detectedAt != null) {
+            long recoveryMs = System.currentTimeMillis() - detectedAt;
+            Metrics.get().gapRecovery.recordNanos(recoveryMs * 1_000_000L);
+            System.out.println("Gap on " + symbol + " recovered in " + recoveryMs + "ms");
+        }
+        return false;
     }
 
-    private double calculateMatchPercentage(Map<Double, Double> mySide, Map<Double, Double> officialSide) {
-        double matchedVolume = 0.0;
-        double totalVolume = 0.0;
+    // The gap size ranks this symbol against others waiting for the snapshot budget. A standby
+    // never fetches one: its owner's snapshot reaches it through replication.
+    // The snapshot a refresh asked for could not be fetched. The next gap may ask again, and if
+    // updates are still waiting for a snapshot this asks again itself once the cooldown is over.
+    private void handleSnapshotFailed(String symbol) {
+        refreshInProgress.remove(symbol);
+        vertx.setTimer(REFRESH_COOLDOWN_MS + 1, id -> {
+            UpdateRingBuffer buffer = gapBuffers.get(symbol);
+            OrderBook book = orderBooks.get(symbol);
+            if (buffer != null && !buffer.isEmpty()) {
+                long gap = book == null || book.getLastSequence() == -1 ? 0
+                        : buffer.peek().getSequenceStart() - book.getLastSequence() - 1;
+                requestRefresh(symbol, gap);
+            }
+        });
+    }
 
-        for (double size : officialSide.values()) {
-            totalVolume += size;
+    private void requestRefresh(String symbol, long gap) {
+        if (refreshInProgress.containsKey(symbol) || role(symbol) != OrderBookShards.Role.OWNER) {
+            return;
         }
+        long now = System.currentTimeMillis();
+        long lastRefresh = lastRefreshTimestamp.getOrDefault(symbol, 0L);
+        if (now - lastRefresh > REFRESH_COOLDOWN_MS) {
+            vertx.eventBus().send("orderbook.refresh", new SnapshotRefreshRequest(symbol, gap), LocalMessageCodec.LOCAL_ONLY);
+            lastRefreshTimestamp.put(symbol, now);
+            refreshInProgress.put(symbol, true);
+            Metrics.get().refreshRequested();
+        }
+    }
 
-        if (totalVolume == 0) return 100.0;
-
-        Set<Double> prices = new HashSet<>();
-        prices.addAll(mySide.keySet());
-        prices.addAll(officialSide.keySet());
+    // This shard's event loop; the only thread that may touch its books
+    public Context getContext() {
+        return context;
+    }
 
-        for (Double price : prices) {
-            double mySize = mySide.getOrDefault(price, 0.0);
-            double officialSize = officialSide.getOrDefault(price, 0.0);
-            matchedVolume += Math.min(mySize, officialSize);
-        }
+    // Where producers hand this shard its live updates; null until the shard has started
+    public IngestQueue getIngest() {
+        return ingest;
+    }
 
-        return (matchedVolume / totalVolume) * 100.0;
+    public int getShardIndex() {
+        return shardIndex;
     }
 
+    // Books owned by this shard; only safe to use from this shard's event loop
     public Map<String, OrderBook> getOrderBooks() {
         return orderBooks;
     }
@@ -1,33 +1,67 @@
 package org.rengen.takehome;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.WebClientOptions;
 
 public class KucoinRestClientVerticle extends AbstractVerticle {
+    // On-demand validation snapshots yield to resyncs when the budget is short
+    private static final long VALIDATION_PRIORITY = -1;
 
     private WebClient client;
+    private SnapshotScheduler scheduler;
+    private KucoinEndpoint endpoint;
+    private int shardCount;
+    private long timeoutMs;
+
+    // Snapshot responses that feed the books are appended here when recording is enabled
+    private final MarketDataJournal journal;
+
+    public KucoinRestClientVerticle() {
+        this(null);
+    }
+
+    public KucoinRestClientVerticle(MarketDataJournal journal) {
+        this.journal = journal;
+    }
 
     @Override
     public void start() {
         JsonArray symbols = config().getJsonArray("symbols");
-        client = WebClient.create(vertx, new WebClientOptions().setSsl(true).setTrustAll(true));
+        shardCount = config().getInteger(OrderBookShards.SHARDS_CONFIG_KEY, 1);
+        endpoint = KucoinEndpoint.fromConfig(config());
+        JsonObject snapshots = config().getJsonObject("snapshots", new JsonObject());
+        int maxConcurrent = snapshots.getInteger("maxConcurrent", 4);
+        // A fetch that never answers would hold one of the maxConcurrent slots for good
+        timeoutMs = snapshots.getLong("timeoutMs", 10_000L);
+        // Keep-alive connections are pooled, so a burst of fetches reuses a few warm TLS sessions
+        client = WebClient.create(vertx, new WebClientOptions()
+                .setSsl(endpoint.isSsl())
+                .setTrustAll(true)
+                .setKeepAlive(true)
+                .setMaxPoolSize(maxConcurrent));
+        scheduler = new SnapshotScheduler(vertx, this::fetchOrderBookSnapshot,
+                snapshots.getDouble("requestsPerSecond", 5.0),
+                snapshots.getInteger("burst", 10),
+                maxConcurrent);
 
-        vertx.eventBus().consumer("orderbook.refresh", message -> {
-            JsonArray symbolsToFetch = new JsonArray();
-            if (message.body() instanceof String) {
-                symbolsToFetch.add((String) message.body());
+        vertx.eventBus().<SnapshotRefreshRequest>localConsumer("orderbook.refresh", message -> {
+            SnapshotRefreshRequest request = message.body();
+            if (!request.isAllSymbols()) {
+                requestSnapshotForBook(request.getSymbol(), request.getPriority());
             } else if (symbols != null) {
-                symbolsToFetch = symbols;
+                callRestAPIAndSendToEventBus(symbols);
             }
-            callRestAPIAndSendToEventBus(symbolsToFetch);
         });
 
-        vertx.eventBus().consumer("orderbook.getSnapshot", message -> {
-            String symbol = (String) message.body();
-            fetchOrderBookSnapshot(symbol, ar -> {
+        vertx.eventBus().<String>localConsumer("orderbook.getSnapshot", message -> {
+            String symbol = message.body();
+            scheduler.request(symbol, VALIDATION_PRIORITY, false, ar -> {
                 if (ar.succeeded()) {
                     message.reply(ar.result());
                 } else {
@@ -43,29 +77,64 @@ public class KucoinRestClientVerticle extends AbstractVerticle {
 
     private void callRestAPIAndSendToEventBus(JsonArray symbols) {
         for (int i = 0; i < symbols.size(); i++) {
-            String symbol = symbols.getString(i);
-            fetchOrderBookSnapshot(symbol, ar -> {
-                if (ar.succeeded()) {
-                    JsonObject payload = new JsonObject()
-                            .put("symbol", symbol)
-                            .put("snapshot", ar.result());
-                    vertx.eventBus().publish("orderbook.snapshot", payload.encode());
-                    System.out.println("snapshot sent to event bus for " + symbol + ": " + ar.result());
-                } else {
-                    System.err.println("Failed to get response for symbol " + symbol + ": " + ar.cause().getMessage());
-                }
-            });
+            requestSnapshotForBook(symbols.getString(i), 0);
         }
     }
 
-    private void fetchOrderBookSnapshot(String symbol, io.vertx.core.Handler<io.vertx.core.AsyncResult<String>> handler) {
-        client.get(443, "api.kucoin.com", "/api/v1/market/orderbook/level2_20?symbol=" + symbol)
-                .send(ar -> {
-                    if (ar.succeeded()) {
-                        handler.handle(io.vertx.core.Future.succeededFuture(ar.result().bodyAsString()));
-                    } else {
-                        handler.handle(io.vertx.core.Future.failedFuture(ar.cause()));
-                    }
-                });
+    // A failed fetch (other than rate limiting, which the scheduler retries) is reported to the
+    // owning shard, which would otherwise wait for this snapshot forever
+    private void requestSnapshotForBook(String symbol, long priority) {
+        scheduler.request(symbol, priority, true, ar -> {
+            if (ar.succeeded()) {
+                vertx.eventBus().publish(OrderBookShards.shardAddress(OrderBookShards.SNAPSHOT_ADDRESS, symbol, shardCount), ar.result(),
+                        LocalMessageCodec.LOCAL_ONLY);
+                System.out.println("snapshot sent to event bus for " + symbol + " at sequence " + ar.result().getSequence());
+            } else {
+                System.err.println("Failed to get response for symbol " + symbol + ": " + ar.cause().getMessage());
+                vertx.eventBus().publish(OrderBookShards.shardAddress(OrderBookShards.SNAPSHOT_FAILED_ADDRESS, symbol, shardCount), symbol,
+                        LocalMessageCodec.LOCAL_ONLY);
+            }
+        });
+    }
+
+    // Only called through the scheduler. The response is parsed exactly once, here; consumers
+    // receive the typed snapshot by reference. The handler is completed exactly once, whatever
+    // happens: a timeout or anything thrown while reading the response fails it.
+    private void fetchOrderBookSnapshot(String symbol, boolean record, Handler<AsyncResult<OrderBookSnapshot>> handler) {
+        Promise<OrderBookSnapshot> result = Promise.promise();
+        result.future().onComplete(handler);
+        try {
+            client.get(endpoint.getPort(), endpoint.getHost(), "/api/v1/market/orderbook/level2_20?symbol=" + symbol)
+                    .timeout(timeoutMs)
+                    .send(ar -> {
+                        try {
+                            if (ar.failed()) {
+                                result.tryFail(ar.cause());
+                                return;
+                            }
+                            if (ar.result().statusCode() == 429) {
+                                result.tryFail(new SnapshotScheduler.RateLimitedException("Snapshot request rate limited for " + symbol));
+                                return;
+                            }
+                            if (ar.result().statusCode() != 200) {
+                                result.tryFail("Snapshot request for " + symbol + " failed with HTTP status " + ar.result().statusCode());
+                                return;
+                            }
+                            if (record && journal != null) {
+                                journal.recordSnapshot(journal.now(), symbol, ar.result().bodyAsString());
+                            }
+                            JsonObject data = ar.result().bodyAsJsonObject().getJsonObject("data");
+                            if (data == null) {
+                                result.tryFail("Invalid snapshot received for " + symbol);
+                                return;
+                            }
+                            result.tryComplete(OrderBookSnapshot.fromJson(symbol, data));
+                        } catch (Exception e) {
+                            result.tryFail(e);
+                        }
+                    });
+        } catch (Exception e) {
+            result.tryFail(e);
+        }
     }
 }
@@ -0,0 +1,31 @@
+package org.rengen.takehome;
+
+import io.vertx.config.ConfigRetriever;
+import io.vertx.config.ConfigRetrieverOptions;
+import io.vertx.config.ConfigStoreOptions;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+// Starts KucoinSimulatorVerticle on its own, outside the service: ./gradlew runSimulator
+// The config file defaults to simulator.json and can be given as the first argument.
+public class KucoinSimulator {
+    public static void main(String[] args) {
+        Vertx vertx = Vertx.vertx();
+        String path = args.length > 0 ? args[0] : "simulator.json";
+
+        ConfigRetriever retriever = ConfigRetriever.create(vertx, new ConfigRetrieverOptions()
+                .addStore(new ConfigStoreOptions()
+                        .setType("file")
+                        .setOptional(true)
+                        .setConfig(new JsonObject().put("path", path))));
+
+        retriever.getConfig(ar -> {
+            if (ar.succeeded()) {
+                vertx.deployVerticle(new KucoinSimulatorVerticle(), new DeploymentOptions().setConfig(ar.result()));
+            } else {
+                System.out.println("Failed to load simulator config: " + ar.cause());
+            }
+        });
+    }
+}
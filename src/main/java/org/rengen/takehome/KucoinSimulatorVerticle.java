@@ -0,0 +1,254 @@
+package org.rengen.takehome;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+// Local stand-in for the parts of the Kucoin API this service uses: the bullet-public token
+// call, the level2_20 REST snapshot and the /market/level2 WebSocket feed. Books are synthetic
+// but internally consistent, so a client that snapshots and applies every message stays exact;
+// gaps, reorders and disconnects can be injected to exercise recovery.
+public class KucoinSimulatorVerticle extends AbstractVerticle {
+    private static final long TICK_MS = 10;
+    private static final long REPORT_INTERVAL_MS = 5000;
+    private static final int SNAPSHOT_LEVELS = 20;
+
+    private final Map<String, SymbolFeed> feeds = new HashMap<>();
+    private final Set<ServerWebSocket> connections = new LinkedHashSet<>();
+    private final Random random = new Random();
+
+    private double messagesPerTick;
+    private int changesPerMessage;
+    private int depth;
+    private int priceScale;
+    private double gapProbability;
+    private double reorderProbability;
+
+    private long messagesSent;
+    private long gapsInjected;
+    private long reordersInjected;
+    private long writesDropped;
+    private long snapshotsServed;
+    private long lastReportAt;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        JsonObject config = config();
+        messagesPerTick = config.getDouble("messagesPerSecondPerSymbol", 100.0) * TICK_MS / 1000.0;
+        changesPerMessage = Math.max(1, config.getInteger("changesPerMessage", 3));
+        depth = config.getInteger("depth", 50);
+        priceScale = config.getInteger("priceScale", 2);
+        gapProbability = config.getDouble("gapProbability", 0.0);
+        reorderProbability = config.getDouble("reorderProbability", 0.0);
+        long disconnectIntervalMs = config.getLong("disconnectIntervalMs", 0L);
+
+        Router router = Router.router(vertx);
+
+        router.post("/api/v1/bullet-public").handler(ctx -> {
+            JsonObject server = new JsonObject()
+                    .put("endpoint", "ws://" + ctx.request().host())
+                    .put("encrypt", false)
+                    .put("protocol", "websocket")
+                    .put("pingInterval", 18000)
+                    .put("pingTimeout", 10000);
+            JsonObject data = new JsonObject()
+                    .put("token", UUID.randomUUID().toString())
+                    .put("instanceServers", new JsonArray().add(server));
+            ctx.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(new JsonObject().put("code", "200000").put("data", data).encode());
+        });
+
+        router.get("/api/v1/market/orderbook/level2_20").handler(ctx -> {
+            String symbol = ctx.request().getParam("symbol");
+            if (symbol == null || symbol.isEmpty()) {
+                ctx.response().setStatusCode(400).end("Missing symbol");
+                return;
+            }
+            snapshotsServed++;
+            ctx.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(feed(symbol.toUpperCase()).book.snapshotJson(SNAPSHOT_LEVELS, System.currentTimeMillis()));
+        });
+
+        vertx.createHttpServer()
+                .webSocketHandler(this::handleWebSocket)
+                .requestHandler(router)
+                .listen(config.getInteger("port", 8090))
+                .onSuccess(server -> {
+                    System.out.println("Kucoin simulator started on port " + server.actualPort());
+                    startPromise.complete();
+                })
+                .onFailure(startPromise::fail);
+
+        lastReportAt = System.currentTimeMillis();
+        vertx.setPeriodic(TICK_MS, id -> tick());
+        vertx.setPeriodic(REPORT_INTERVAL_MS, id -> report());
+        if (disconnectIntervalMs > 0) {
+            vertx.setPeriodic(disconnectIntervalMs, id -> disconnectRandomConnection());
+        }
+    }
+
+    private void handleWebSocket(ServerWebSocket ws) {
+        if (!"/endpoint".equals(ws.path())) {
+            ws.reject(404);
+            return;
+        }
+        connections.add(ws);
+        System.out.println("Simulator accepted WebSocket connection from " + ws.remoteAddress());
+        ws.writeTextMessage(new JsonObject().put("id", UUID.randomUUID().toString()).put("type", "welcome").encode());
+
+        ws.textMessageHandler(text -> {
+            JsonObject request;
+            try {
+                request = new JsonObject(text);
+            } catch (Exception e) {
+                System.err.println("Simulator ignoring malformed request: " + text);
+                return;
+            }
+            String type = request.getString("type", "");
+            Object id = request.getValue("id");
+            switch (type) {
+                case "ping":
+                    ws.writeTextMessage(new JsonObject().put("id", id).put("type", "pong").encode());
+                    break;
+                case "subscribe":
+                case "unsubscribe":
+                    for (String symbol : topicSymbols(request.getString("topic", ""))) {
+                        if ("subscribe".equals(type)) {
+                            feed(symbol).subscribers.add(ws);
+                        } else {
+                            feed(symbol).subscribers.remove(ws);
+                        }
+                    }
+                    if (request.getBoolean("response", false)) {
+                        ws.writeTextMessage(new JsonObject().put("id", id).put("type", "ack").encode());
+                    }
+                    break;
+                default:
+                    System.out.println("Simulator ignoring request type " + type);
+            }
+        });
+
+        ws.closeHandler(v -> {
+            connections.remove(ws);
+            for (SymbolFeed feed : feeds.values()) {
+                feed.subscribers.remove(ws);
+            }
+        });
+    }
+
+    // "/market/level2:BTC-USDT,ETH-USDT" -> [BTC-USDT, ETH-USDT]
+    private static List<String> topicSymbols(String topic) {
+        List<String> symbols = new ArrayList<>();
+        int colon = topic.indexOf(':');
+        if (colon < 0) {
+            return symbols;
+        }
+        for (String symbol : topic.substring(colon + 1).split(",")) {
+            if (!symbol.isEmpty()) {
+                symbols.add(symbol.trim().toUpperCase());
+            }
+        }
+        return symbols;
+    }
+
+    private SymbolFeed feed(String symbol) {
+        return feeds.computeIfAbsent(symbol, s -> new SymbolFeed(new SyntheticBook(s, depth, priceScale)));
+    }
+
+    // Books only move while someone is subscribed; the fractional part of the per-tick rate is
+    // carried over so low rates still come out right on average
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (SymbolFeed feed : feeds.values()) {
+            if (feed.subscribers.isEmpty()) {
+                continue;
+            }
+            feed.owed += messagesPerTick;
+            while (feed.owed >= 1) {
+                feed.owed--;
+                emit(feed, feed.book.nextMessage(changesPerMessage, now));
+            }
+        }
+    }
+
+    private void emit(SymbolFeed feed, String message) {
+        if (gapProbability > 0 && random.nextDouble() < gapProbability) {
+            gapsInjected++;
+            return;
+        }
+        if (feed.heldBack == null && reorderProbability > 0 && random.nextDouble() < reorderProbability) {
+            // Hold this one back and send it right after the next message
+            feed.heldBack = message;
+            reordersInjected++;
+            return;
+        }
+        send(feed, message);
+        if (feed.heldBack != null) {
+            String late = feed.heldBack;
+            feed.heldBack = null;
+            send(feed, late);
+        }
+    }
+
+    private void send(SymbolFeed feed, String message) {
+        for (ServerWebSocket ws : feed.subscribers) {
+            // A client that cannot keep up loses messages, as it would on the real feed
+            if (ws.writeQueueFull()) {
+                writesDropped++;
+            } else {
+                ws.writeTextMessage(message);
+                messagesSent++;
+            }
+        }
+    }
+
+    private void disconnectRandomConnection() {
+        if (connections.isEmpty()) {
+            return;
+        }
+        List<ServerWebSocket> open = new ArrayList<>(connections);
+        ServerWebSocket victim = open.get(random.nextInt(open.size()));
+        System.out.println("Simulator dropping WebSocket connection from " + victim.remoteAddress());
+        victim.close((short) 1001, "Simulated disconnect");
+    }
+
+    private void report() {
+        long now = System.currentTimeMillis();
+        double seconds = (now - lastReportAt) / 1000.0;
+        lastReportAt = now;
+        System.out.printf("Simulator: %d symbols, %d connections, %.0f msgs/s sent, %d writes dropped, "
+                        + "%d gaps, %d reorders, %d snapshots served%n",
+                feeds.size(), connections.size(), messagesSent / seconds, writesDropped,
+                gapsInjected, reordersInjected, snapshotsServed);
+        messagesSent = 0;
+        writesDropped = 0;
+        gapsInjected = 0;
+        reordersInjected = 0;
+        snapshotsServed = 0;
+    }
+
+    private static class SymbolFeed {
+        final SyntheticBook book;
+        final Set<ServerWebSocket> subscribers = new LinkedHashSet<>();
+        double owed;
+        String heldBack;
+
+        SymbolFeed(SyntheticBook book) {
+            this.book = book;
+        }
+    }
+}
@@ -1,32 +1,72 @@
 package org.rengen.takehome;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.WebSocketConnectOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
 
-import javax.json.Json;
-import javax.json.JsonObjectBuilder;
-import javax.websocket.*;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
-
-@ClientEndpoint
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Owns a pool of KucoinWSSession connections and spreads the configured symbols over them, at
+// most maxSymbolsPerConnection per socket. Symbols are grouped by the shard that owns their book
+// and each session runs on that shard's event loop, so frames are decoded and applied on the
+// same thread. Symbols are periodically moved from the busiest session of a shard to its
+// quietest one, based on the message rate observed per symbol; they never change shards.
+//
+// In a cluster only the symbols this node owns or stands by for are carried, and the set follows
+// membership changes. A standby subscribes too, so it is already on the live feed when it has to
+// take over, but it never fetches snapshots: its book comes from the owner.
 public class KucoinWSClientVerticle extends AbstractVerticle {
 
-    private volatile Session userSession = null;
-    private EventBus eventBus;
-
     static final long RECONNECT_DELAY_MS = 1000; // 1 second reconnect delay
+    static final int DEFAULT_MAX_SYMBOLS_PER_CONNECTION = 50;
+    static final long DEFAULT_REBALANCE_INTERVAL_MS = 30000;
+    // Only rebalance when the busiest session carries this much more traffic than the quietest
+    static final double REBALANCE_THRESHOLD = 1.25;
+
+    private EventBus eventBus;
     private JsonArray symbols;
+    private int shardCount;
+    private int maxSymbolsPerConnection;
+    private KucoinEndpoint endpoint;
+    private WebClient tokenClient;
+    private HttpClient wsClient;
+    private final OrderBookShards shards;
+
+    private final List<KucoinWSSession> sessions = new ArrayList<>();
+    private final Map<String, AtomicLong> messageCounts = new ConcurrentHashMap<>();
+    private final Map<String, Long> countsAtLastRebalance = new ConcurrentHashMap<>();
 
     // Flag to control reconnection behavior
     private volatile boolean autoReconnect = true;
 
+    // Raw frames are appended here when recording is enabled
+    private final MarketDataJournal journal;
+
+    public KucoinWSClientVerticle() {
+        this(new OrderBookShards(1), null);
+    }
+
+    public KucoinWSClientVerticle(OrderBookShards shards, MarketDataJournal journal) {
+        this.shards = shards;
+        this.journal = journal;
+    }
+
     @Override
     public void start(Promise<Void> startPromise) throws Exception {
         eventBus = vertx.eventBus();
@@ -34,204 +74,339 @@ public class KucoinWSClientVerticle extends AbstractVerticle {
         if (symbols == null || symbols.isEmpty()) {
             throw new IllegalArgumentException("No symbols configured for KucoinWSClientVerticle");
         }
+        shardCount = config().getInteger(OrderBookShards.SHARDS_CONFIG_KEY, 1);
+        endpoint = KucoinEndpoint.fromConfig(config());
+        maxSymbolsPerConnection = Math.max(1, config().getInteger("maxSymbolsPerConnection", DEFAULT_MAX_SYMBOLS_PER_CONNECTION));
+        long rebalanceIntervalMs = config().getLong("wsRebalanceIntervalMs", DEFAULT_REBALANCE_INTERVAL_MS);
+        // The token decides which endpoint feeds every book, so the exchange's certificate is verified
+        tokenClient = WebClient.create(vertx, new WebClientOptions().setSsl(endpoint.isSsl()).setForceSni(true));
+        // One client for every session; each socket stays on the context that opened it
+        wsClient = vertx.createHttpClient(new HttpClientOptions()
+                .setTryUsePerMessageWebSocketCompression(config().getBoolean("wsCompression", true)));
+
+        createSessions();
 
         // Listen on event bus for control commands
-        eventBus.consumer("websocket.stop", message -> {
+        eventBus.localConsumer("websocket.stop", message -> {
             System.out.println("Received websocket.stop command");
             autoReconnect = false;
-            closeSession();
+            sessions.forEach(KucoinWSSession::close);
             message.reply("WebSocket stopped");
         });
 
-        eventBus.consumer("websocket.start", message -> {
+        eventBus.localConsumer("websocket.start", message -> {
             System.out.println("Received websocket.start command");
-            if (userSession == null || !userSession.isOpen()) {
+            if (sessions.stream().allMatch(KucoinWSSession::isOpen)) {
+                message.reply("WebSocket already connected");
+            } else {
                 autoReconnect = true; // re-enable auto reconnect when start manually
-                connectWebSocket();
+                sessions.forEach(KucoinWSSession::connect);
                 message.reply("WebSocket started");
-            } else {
-                message.reply("WebSocket already connected");
             }
         });
 
-        eventBus.consumer("websocket.restart", message -> {
+        eventBus.localConsumer("websocket.restart", message -> {
             System.out.println("Received websocket.restart command");
             autoReconnect = true;
-            closeSession();
+            sessions.forEach(KucoinWSSession::close);
             // reconnect will be attempted after close event triggers
             message.reply("WebSocket restart requested");
-            connectWebSocket();
+            sessions.forEach(KucoinWSSession::connect);
         });
 
-        connectWebSocket();
+        if (shards.getMembership() != null) {
+            eventBus.localConsumer(ClusterVerticle.MEMBERSHIP_ADDRESS, message -> resubscribe());
+        }
 
-        startPromise.complete();
-    }
+        sessions.forEach(KucoinWSSession::connect);
 
-    void connectWebSocket() {
-        vertx.executeBlocking(promise -> {
-            try {
-                String wsUrl = getPublicToken();
-                System.out.println("Connecting to WebSocket: " + wsUrl);
+        // Sessions come and go with ownership in a cluster, so there may be more than one later
+        if (rebalanceIntervalMs > 0 && (sessions.size() > 1 || shards.getMembership() != null)) {
+            vertx.setPeriodic(rebalanceIntervalMs, id -> rebalance());
+        }
 
-                URI endpointURI = new URI(wsUrl);
-                WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        startPromise.complete();
+    }
 
-                container.connectToServer(this, endpointURI);
-                promise.complete();
-            } catch (Exception e) {
-                System.err.println("WebSocket connection failed: " + e.getMessage());
-                promise.fail(e);
+    private void createSessions() {
+        List<String> carried = new ArrayList<>();
+        for (int i = 0; i < symbols.size(); i++) {
+            String symbol = symbols.getString(i);
+            messageCounts.put(symbol, new AtomicLong());
+            if (shards.holdsLocally(symbol)) {
+                carried.add(symbol);
             }
-        }, res -> {
-            if (res.failed()) {
-                System.out.println("Failed to connect WebSocket; retrying in " + RECONNECT_DELAY_MS + "ms");
-                scheduleReconnect();
+        }
+        Map<Integer, List<List<String>>> assignment = assignSessions(carried, shardCount, maxSymbolsPerConnection);
+        assignment.forEach((shard, shardSessions) -> {
+            for (List<String> sessionSymbols : shardSessions) {
+                KucoinWSSession session = new KucoinWSSession(sessions.size(), shard, contextOf(shard), this);
+                session.getSymbols().addAll(sessionSymbols);
+                sessions.add(session);
             }
         });
+        System.out.println("Spreading " + carried.size() + " symbols over " + sessions.size() + " WebSocket sessions on "
+                + assignment.size() + " shards");
     }
 
-    private void scheduleReconnect() {
-        if (!autoReconnect) {
-            System.out.println("Auto reconnect disabled; will not reconnect automatically.");
-            return;
+    // No traffic has been observed yet, so each shard's symbols are dealt round robin over as few
+    // sessions as the per-connection limit allows. The symbols of each session, by shard.
+    static Map<Integer, List<List<String>>> assignSessions(List<String> symbols, int shardCount, int maxSymbolsPerConnection) {
+        Map<Integer, List<String>> symbolsByShard = new TreeMap<>();
+        for (String symbol : symbols) {
+            symbolsByShard.computeIfAbsent(OrderBookShards.shardOf(symbol, shardCount), k -> new ArrayList<>()).add(symbol);
         }
-        vertx.setTimer(RECONNECT_DELAY_MS, id -> {
-            System.out.println("Attempting WebSocket reconnect...");
-            connectWebSocket();
+        Map<Integer, List<List<String>>> assignment = new TreeMap<>();
+        symbolsByShard.forEach((shard, shardSymbols) -> {
+            int sessionCount = (shardSymbols.size() + maxSymbolsPerConnection - 1) / maxSymbolsPerConnection;
+            List<List<String>> shardSessions = new ArrayList<>(sessionCount);
+            for (int i = 0; i < sessionCount; i++) {
+                shardSessions.add(new ArrayList<>());
+            }
+            for (int i = 0; i < shardSymbols.size(); i++) {
+                shardSessions.get(i % sessionCount).add(shardSymbols.get(i));
+            }
+            assignment.put(shard, shardSessions);
         });
+        return assignment;
     }
 
-    private void closeSession() {
-        if (userSession != null && userSession.isOpen()) {
-            try {
-                userSession.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "Manual close"));
-            } catch (Exception e) {
-                System.err.println("Error closing WebSocket session: " + e.getMessage());
+    // After a membership change: starts carrying the symbols this node now holds, in a session of
+    // the owning shard with room or a new one, and drops the ones it gave up
+    private void resubscribe() {
+        for (int i = 0; i < symbols.size(); i++) {
+            String symbol = symbols.getString(i);
+            KucoinWSSession carrier = null;
+            for (KucoinWSSession session : sessions) {
+                if (session.getSymbols().contains(symbol)) {
+                    carrier = session;
+                    break;
+                }
+            }
+            boolean held = shards.holdsLocally(symbol);
+            if (held && carrier == null) {
+                subscribe(symbol);
+            } else if (!held && carrier != null) {
+                carrier.removeSymbol(symbol);
             }
         }
     }
 
-    @OnOpen
-    public void onOpen(Session session) {
-        System.out.println("WebSocket connected");
-        userSession = session;
-
-        StringBuilder topicBuilder = new StringBuilder("/market/level2:");
-        for (int i = 0; i < symbols.size(); i++) {
-            topicBuilder.append(symbols.getString(i));
-            if (i < symbols.size() - 1) {
-                topicBuilder.append(",");
+    private void subscribe(String symbol) {
+        int shard = OrderBookShards.shardOf(symbol, shardCount);
+        for (KucoinWSSession session : sessions) {
+            if (session.getShard() == shard && session.getSymbols().size() < maxSymbolsPerConnection) {
+                session.addSymbol(symbol);
+                return;
             }
         }
+        KucoinWSSession session = new KucoinWSSession(sessions.size(), shard, contextOf(shard), this);
+        session.getSymbols().add(symbol);
+        sessions.add(session);
+        session.connect();
+    }
 
-        JsonObjectBuilder subscribeMsgBuilder = Json.createObjectBuilder()
-                .add("id", 1234)
-                .add("type", "subscribe")
-                .add("topic", topicBuilder.toString())
-                .add("response", true);
-
-        String subscribeMsg = subscribeMsgBuilder.build().toString();
+    // The shard's event loop, or this verticle's own if the shard is not deployed in this process
+    private Context contextOf(int shard) {
+        KucoinOrderBookVerticle owner = shards.get(shard);
+        return owner == null ? context : owner.getContext();
+    }
 
-        System.out.println("Sending subscribe message: " + subscribeMsg);
-        session.getAsyncRemote().sendText(subscribeMsg);
+    // Moves the one symbol that best evens out the load between the busiest and the quietest open
+    // session of a shard. One move per interval keeps resnapshots (and the gap they cover) rare.
+    private void rebalance() {
+        Map<String, Long> window = new HashMap<>();
+        messageCounts.forEach((symbol, count) -> {
+            long total = count.get();
+            window.put(symbol, total - countsAtLastRebalance.getOrDefault(symbol, 0L));
+            countsAtLastRebalance.put(symbol, total);
+        });
+        List<KucoinWSSession> open = new ArrayList<>();
+        for (KucoinWSSession session : sessions) {
+            if (session.isOpen()) {
+                open.add(session);
+            }
+        }
+        Move move = planRebalance(open, window, maxSymbolsPerConnection);
+        if (move == null) {
+            return;
+        }
+        System.out.println("Rebalancing " + move.symbol + " from session " + move.from.getId() + " (" + move.fromLoad
+                + " msgs) to session " + move.to.getId() + " (" + move.toLoad + " msgs) on shard " + move.from.getShard());
+        move.from.removeSymbol(move.symbol);
+        move.to.addSymbol(move.symbol);
+    }
 
-        // Request fresh snapshots on reconnect for all symbols
-        for (int i = 0; i < symbols.size(); i++) {
-            String symbol = symbols.getString(i);
-            vertx.eventBus().send("orderbook.refresh", symbol);
+    // The move for the shard whose busiest and quietest sessions are furthest apart, or null if no
+    // shard is uneven enough. A symbol only ever moves between sessions of its own shard: every
+    // session runs on its shard's event loop, and its frames must be applied there.
+    static Move planRebalance(List<KucoinWSSession> sessions, Map<String, Long> window, int maxSymbolsPerConnection) {
+        Map<Integer, List<KucoinWSSession>> byShard = new TreeMap<>();
+        for (KucoinWSSession session : sessions) {
+            byShard.computeIfAbsent(session.getShard(), k -> new ArrayList<>()).add(session);
         }
+        Move best = null;
+        for (List<KucoinWSSession> shardSessions : byShard.values()) {
+            Move move = planShardRebalance(shardSessions, window, maxSymbolsPerConnection);
+            if (move != null && (best == null || move.fromLoad - move.toLoad > best.fromLoad - best.toLoad)) {
+                best = move;
+            }
+        }
+        return best;
     }
 
-    @OnClose
-    public void onClose(Session session, CloseReason reason) {
-        System.out.println("WebSocket closed: " + reason);
-        userSession = null;
+    private static Move planShardRebalance(List<KucoinWSSession> sessions, Map<String, Long> window, int maxSymbolsPerConnection) {
+        KucoinWSSession busiest = null;
+        KucoinWSSession quietest = null;
+        long busiestLoad = -1;
+        long quietestLoad = Long.MAX_VALUE;
+        for (KucoinWSSession session : sessions) {
+            long load = 0;
+            for (String symbol : session.getSymbols()) {
+                load += window.getOrDefault(symbol, 0L);
+            }
+            if (load > busiestLoad) {
+                busiestLoad = load;
+                busiest = session;
+            }
+            if (load < quietestLoad && session.getSymbols().size() < maxSymbolsPerConnection) {
+                quietestLoad = load;
+                quietest = session;
+            }
+        }
+        if (busiest == null || quietest == null || busiest == quietest
+                || busiestLoad <= quietestLoad * REBALANCE_THRESHOLD || busiest.getSymbols().size() < 2) {
+            return null;
+        }
 
-        if (autoReconnect) {
-            System.out.println("Auto reconnect enabled - scheduling reconnect");
-            scheduleReconnect();
-        } else {
-            System.out.println("Auto reconnect disabled - not reconnecting");
+        long target = (busiestLoad - quietestLoad) / 2;
+        String candidate = null;
+        long candidateDistance = Long.MAX_VALUE;
+        for (String symbol : busiest.getSymbols()) {
+            long rate = window.getOrDefault(symbol, 0L);
+            // Moving must lower the peak, i.e. the symbol may not simply swap which session is hot
+            if (rate == 0 || quietestLoad + rate >= busiestLoad) {
+                continue;
+            }
+            long distance = Math.abs(rate - target);
+            if (distance < candidateDistance) {
+                candidateDistance = distance;
+                candidate = symbol;
+            }
         }
+        return candidate == null ? null : new Move(candidate, busiest, busiestLoad, quietest, quietestLoad);
     }
 
-    @OnMessage
-    public void onMessage(String message) {
-        try {
-            JsonObject json = new JsonObject(message);
-            String symbol = extractSymbol(json);
-            if (symbol == null) {
-                System.out.println("No symbol found in message topic, ignoring.");
-                return;
-            }
-            eventBus.publish("orderbook.updates", message);
-        } catch (Exception e) {
-            System.err.println("Failed to process message: " + e.getMessage());
+    // One symbol from one session to another, with the loads that made it worth doing
+    static final class Move {
+        final String symbol;
+        final KucoinWSSession from;
+        final long fromLoad;
+        final KucoinWSSession to;
+        final long toLoad;
+
+        Move(String symbol, KucoinWSSession from, long fromLoad, KucoinWSSession to, long toLoad) {
+            this.symbol = symbol;
+            this.from = from;
+            this.fromLoad = fromLoad;
+            this.to = to;
+            this.toLoad = toLoad;
         }
     }
 
-    @OnError
-    public void onError(Throwable t) {
-        System.err.println("WebSocket error:");
-        t.printStackTrace();
-        if (userSession != null) {
-            try {
-                userSession.close();
-            } catch (Exception ignored) {
-            }
+    boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    // Busier symbols are resynced first when many sessions reconnect at once
+    void requestSnapshot(String symbol) {
+        if (!shards.ownsLocally(symbol)) {
+            return;
         }
+        AtomicLong count = messageCounts.get(symbol);
+        long recent = count == null ? 0 : count.get() - countsAtLastRebalance.getOrDefault(symbol, 0L);
+        eventBus.send("orderbook.refresh", new SnapshotRefreshRequest(symbol, recent), LocalMessageCodec.LOCAL_ONLY);
     }
 
-    private String extractSymbol(JsonObject json) {
-        String topic = json.getString("topic", null);
-        if (topic == null) {
-            System.out.println("Message missing topic field: " + json.encode());
-            return null;
+    void record(String frame) {
+        if (journal != null) {
+            journal.recordFrame(journal.now(), frame);
         }
+    }
 
-        if (topic.contains(":")) {
-            String symbolPart = topic.substring(topic.indexOf(":") + 1).toUpperCase();
-            if (symbolPart.contains(",")) {
-                return symbolPart.split(",")[0];
-            } else {
-                return symbolPart;
-            }
+    // Called on the session's context. The update goes point to point onto the owning shard's
+    // ingest queue; false means that symbol's queue is full and the session should stop reading
+    // until `resume` runs.
+    boolean publish(Level2Update update, Runnable resume) {
+        AtomicLong count = messageCounts.get(update.getSymbol());
+        if (count != null) {
+            count.incrementAndGet();
+        }
+        Metrics.get().messageReceived(update.getSymbol());
+        KucoinOrderBookVerticle owner = shards.owner(update.getSymbol());
+        if (owner == null || owner.getIngest() == null) {
+            // Still deploying: there is no book to apply it to, and the first snapshot covers it
+            update.release();
+            return true;
         }
+        return owner.getIngest().offer(update, resume);
+    }
 
-        System.out.println("Topic field malformed (no colon): " + topic);
-        return null;
+    KucoinEndpoint getEndpoint() {
+        return endpoint;
     }
 
-    static String getPublicToken() throws Exception {
-        URL url = new URL("https://api.kucoin.com/api/v1/bullet-public");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setDoOutput(true);
+    HttpClient getHttpClient() {
+        return wsClient;
+    }
 
-        int status = conn.getResponseCode();
-        if (status != 200) {
-            throw new RuntimeException("Failed to get token: HTTP status " + status);
-        }
-        BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        try (javax.json.JsonReader jsonReader = Json.createReader(br)) {
-            javax.json.JsonObject jsonResponse = jsonReader.readObject();
+    // Fetches a bullet-public token without blocking; completes on the calling context
+    Future<Bullet> fetchBullet() {
+        return tokenClient.post(endpoint.getPort(), endpoint.getHost(), "/api/v1/bullet-public")
+                .send()
+                .compose(response -> {
+                    if (response.statusCode() != 200) {
+                        return Future.failedFuture("Failed to get token: HTTP status " + response.statusCode());
+                    }
+                    JsonObject json = response.bodyAsJsonObject();
+                    if (json == null || !"200000".equals(json.getString("code"))) {
+                        return Future.failedFuture("Error response: " + json);
+                    }
+                    JsonObject data = json.getJsonObject("data");
+                    JsonObject server = data.getJsonArray("instanceServers").getJsonObject(0);
+                    return Future.succeededFuture(new Bullet(server.getString("endpoint"), data.getString("token"),
+                            server.getLong("pingInterval", 0L)));
+                });
+    }
+
+    // Where and how to open one WebSocket, from the bullet-public response
+    static class Bullet {
+        private final URI uri;
+        private final long pingIntervalMs;
 
-            if (!"200000".equals(jsonResponse.getString("code"))) {
-                throw new RuntimeException("Error response: " + jsonResponse);
+        Bullet(String wsEndpoint, String token, long pingIntervalMs) {
+            if (wsEndpoint.endsWith("/")) {
+                wsEndpoint = wsEndpoint.substring(0, wsEndpoint.length() - 1);
             }
+            this.uri = URI.create(wsEndpoint + "/endpoint?token=" + token);
+            this.pingIntervalMs = pingIntervalMs;
+        }
 
-            javax.json.JsonObject data = jsonResponse.getJsonObject("data");
-            String token = data.getString("token");
-            String endpoint = data.getJsonArray("instanceServers").getJsonObject(0).getString("endpoint");
+        String getUrl() {
+            return uri.toString();
+        }
 
-            if (endpoint.endsWith("/")) {
-                endpoint = endpoint.substring(0, endpoint.length() - 1);
-            }
+        long getPingIntervalMs() {
+            return pingIntervalMs;
+        }
 
-            return endpoint + "/endpoint?token=" + token;
-        } finally {
-            br.close();
+        WebSocketConnectOptions connectOptions() {
+            boolean ssl = "wss".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+            return new WebSocketConnectOptions()
+                    .setHost(uri.getHost())
+                    .setPort(uri.getPort() != -1 ? uri.getPort() : ssl ? 443 : 80)
+                    .setSsl(ssl)
+                    .setURI(uri.getRawPath() + "?" + uri.getRawQuery());
         }
     }
 }
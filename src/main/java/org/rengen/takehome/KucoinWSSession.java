@@ -0,0 +1,268 @@
+package org.rengen.takehome;
+
+import io.vertx.core.Context;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One pooled WebSocket connection carrying the level2 topics of a subset of the symbols. Each
+// session connects, subscribes and reconnects on its own, so a dropped socket only resyncs the
+// symbols it was carrying.
+//
+// The token fetch, the socket and every frame run on one context: the event loop of the shard
+// that owns this session's symbols, so their updates are applied without leaving that thread.
+// Calls from other threads (pool rebalancing, admin commands) are moved onto it.
+public class KucoinWSSession {
+
+    // Kucoin accepts at most 100 topics in a single subscribe request
+    static final int MAX_TOPICS_PER_REQUEST = 100;
+    private static final AtomicLong REQUEST_IDS = new AtomicLong();
+
+    private final int id;
+    private final int shard;
+    private final Context context;
+    private final KucoinWSClientVerticle pool;
+    private final List<String> symbols = new CopyOnWriteArrayList<>();
+    private final Level2FrameDecoder decoder = new Level2FrameDecoder();
+    // Frames are decoded into recycled holders, which the owning shard hands back once applied
+    private final Level2UpdatePool updates = new Level2UpdatePool();
+    private final Runnable resume = this::resumeReading;
+
+    private volatile WebSocket socket = null;
+    private boolean connecting = false;
+    private long pingTimer = -1;
+    // Full ingest queues this session is waiting on; the socket is not read while any remain
+    private int blockedOn = 0;
+
+    public KucoinWSSession(int id, int shard, Context context, KucoinWSClientVerticle pool) {
+        this.id = id;
+        this.shard = shard;
+        this.context = context;
+        this.pool = pool;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    public boolean isOpen() {
+        WebSocket ws = socket;
+        return ws != null && !ws.isClosed();
+    }
+
+    void connect() {
+        context.runOnContext(v -> {
+            if (connecting || isOpen()) {
+                return;
+            }
+            connecting = true;
+            pool.fetchBullet()
+                    .compose(bullet -> {
+                        System.out.println("Session " + id + " connecting to WebSocket: " + bullet.getUrl());
+                        return pool.getHttpClient().webSocket(bullet.connectOptions())
+                                .map(ws -> {
+                                    onOpen(ws, bullet.getPingIntervalMs());
+                                    return ws;
+                                });
+                    })
+                    .onComplete(ar -> {
+                        connecting = false;
+                        if (ar.failed()) {
+                            System.err.println("Session " + id + " WebSocket connection failed: " + ar.cause().getMessage());
+                            System.out.println("Session " + id + " failed to connect; retrying in " + KucoinWSClientVerticle.RECONNECT_DELAY_MS + "ms");
+                            scheduleReconnect();
+                        }
+                    });
+        });
+    }
+
+    private void scheduleReconnect() {
+        if (!pool.isAutoReconnect()) {
+            System.out.println("Auto reconnect disabled; session " + id + " will not reconnect automatically.");
+            return;
+        }
+        context.owner().setTimer(KucoinWSClientVerticle.RECONNECT_DELAY_MS, timerId -> {
+            System.out.println("Attempting WebSocket reconnect for session " + id + "...");
+            connect();
+        });
+    }
+
+    void close() {
+        context.runOnContext(v -> {
+            WebSocket ws = socket;
+            if (ws != null && !ws.isClosed()) {
+                ws.close((short) 1000, "Manual close")
+                        .onFailure(e -> System.err.println("Error closing WebSocket session " + id + ": " + e.getMessage()));
+            }
+        });
+    }
+
+    // Starts carrying a symbol; when the socket is already up the topic is subscribed right away
+    void addSymbol(String symbol) {
+        symbols.add(symbol);
+        context.runOnContext(v -> {
+            if (isOpen()) {
+                sendTopics("subscribe", List.of(symbol));
+                pool.requestSnapshot(symbol);
+            }
+        });
+    }
+
+    void removeSymbol(String symbol) {
+        symbols.remove(symbol);
+        context.runOnContext(v -> {
+            if (isOpen()) {
+                sendTopics("unsubscribe", List.of(symbol));
+            }
+        });
+    }
+
+    private void onOpen(WebSocket ws, long pingIntervalMs) {
+        // Handshake headers are only available here; they tell whether permessage-deflate was agreed
+        String extensions = ws.headers() == null ? null : ws.headers().get("Sec-WebSocket-Extensions");
+        System.out.println("WebSocket session " + id + " connected on shard " + shard + (extensions == null ? "" : " with " + extensions));
+        socket = ws;
+        ws.textMessageHandler(this::onMessage);
+        ws.closeHandler(v -> onClose(ws));
+        ws.exceptionHandler(this::onError);
+        if (blockedOn > 0) {
+            ws.pause();
+        }
+
+        sendTopics("subscribe", symbols);
+
+        // Kucoin drops connections that stay silent for longer than the advertised interval
+        if (pingIntervalMs > 0) {
+            pingTimer = context.owner().setPeriodic(pingIntervalMs, timerId -> sendPing());
+        }
+
+        // Request fresh snapshots on reconnect for this session's symbols only
+        for (String symbol : symbols) {
+            pool.requestSnapshot(symbol);
+        }
+    }
+
+    private void onClose(WebSocket ws) {
+        System.out.println("WebSocket session " + id + " closed: " + ws.closeStatusCode() + " " + ws.closeReason());
+        if (socket == ws) {
+            socket = null;
+        }
+        if (pingTimer != -1) {
+            context.owner().cancelTimer(pingTimer);
+            pingTimer = -1;
+        }
+
+        if (pool.isAutoReconnect()) {
+            System.out.println("Auto reconnect enabled - scheduling reconnect of session " + id);
+            scheduleReconnect();
+        } else {
+            System.out.println("Auto reconnect disabled - not reconnecting session " + id);
+        }
+    }
+
+    private void onMessage(String message) {
+        long receivedAt = System.nanoTime();
+        pool.record(message);
+        // Each frame is decoded once, here, into an update that is handed to the book by reference
+        Level2Update update = updates.acquire();
+        boolean handedOver = false;
+        try {
+            if (!decoder.decode(message, update)) {
+                update.release();
+                if (!message.contains("\"pong\"")) {
+                    System.out.println("No symbol found in message topic, ignoring.");
+                }
+                return;
+            }
+            update.setReceivedAtNanos(receivedAt);
+            if (update.getTime() > 0) {
+                Metrics.get().exchangeToReceive.recordNanos((System.currentTimeMillis() - update.getTime()) * 1_000_000L);
+            }
+            handedOver = true;
+            if (!pool.publish(update, resume) && blockedOn++ == 0) {
+                // Backpressure: stop reading and let TCP push back on the exchange until the book catches up
+                WebSocket ws = socket;
+                if (ws != null) {
+                    ws.pause();
+                }
+            }
+        } catch (Exception e) {
+            if (!handedOver) {
+                update.release();
+            }
+            System.err.println("Failed to process message: " + e.getMessage());
+        }
+    }
+
+    // Called by the ingest queue, from the shard draining it, once a full queue has room again
+    private void resumeReading() {
+        context.runOnContext(v -> {
+            if (--blockedOn == 0) {
+                WebSocket ws = socket;
+                if (ws != null) {
+                    ws.resume();
+                }
+            }
+        });
+    }
+
+    private void onError(Throwable t) {
+        System.err.println("WebSocket session " + id + " error:");
+        t.printStackTrace();
+        WebSocket ws = socket;
+        if (ws != null && !ws.isClosed()) {
+            ws.close();
+        }
+    }
+
+    private void sendTopics(String type, Collection<String> topicSymbols) {
+        WebSocket ws = socket;
+        if (ws == null || topicSymbols.isEmpty()) {
+            return;
+        }
+        StringBuilder topicBuilder = new StringBuilder();
+        int inRequest = 0;
+        for (String symbol : topicSymbols) {
+            topicBuilder.append(inRequest == 0 ? "/market/level2:" : ",").append(symbol);
+            if (++inRequest == MAX_TOPICS_PER_REQUEST) {
+                send(ws, type, topicBuilder.toString());
+                topicBuilder.setLength(0);
+                inRequest = 0;
+            }
+        }
+        if (inRequest > 0) {
+            send(ws, type, topicBuilder.toString());
+        }
+    }
+
+    private void send(WebSocket ws, String type, String topic) {
+        String request = new JsonObject()
+                .put("id", REQUEST_IDS.incrementAndGet())
+                .put("type", type)
+                .put("topic", topic)
+                .put("response", true)
+                .encode();
+
+        System.out.println("Session " + id + " sending " + type + " message: " + request);
+        ws.writeTextMessage(request);
+    }
+
+    private void sendPing() {
+        WebSocket ws = socket;
+        if (ws != null && !ws.isClosed()) {
+            ws.writeTextMessage(new JsonObject().put("id", REQUEST_IDS.incrementAndGet()).put("type", "ping").encode());
+        }
+    }
+}
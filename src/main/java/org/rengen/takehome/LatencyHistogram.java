@@ -0,0 +1,66 @@
+package org.rengen.takehome;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram with power-of-two buckets from 1us to ~67s, in the spirit of
+// HdrHistogram but coarse enough to export every bucket as a Prometheus histogram. Recording is
+// a leading-zero count and one atomic increment, so it is cheap enough for every message.
+public class LatencyHistogram {
+    private static final int BUCKETS = 27;
+
+    private final String name;
+    private final String help;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void recordNanos(long nanos) {
+        if (nanos < 0) {
+            // Clock skew between the exchange and us; count it as the fastest bucket
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        sumNanos.add(nanos);
+    }
+
+    // Bucket i holds values up to 2^i microseconds; the last one is +Inf
+    static int bucketOf(long nanos) {
+        long micros = (nanos + 999) / 1000;
+        if (micros <= 1) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(micros - 1), BUCKETS);
+    }
+
+    static double upperBoundSeconds(int bucket) {
+        return (1L << bucket) / 1_000_000.0;
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Prometheus text exposition: cumulative buckets, then sum and count
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+            out.append(name).append("_bucket{le=\"").append(upperBoundSeconds(i)).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += counts.get(BUCKETS);
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
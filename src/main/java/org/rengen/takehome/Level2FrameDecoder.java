@@ -0,0 +1,393 @@
+package org.rengen.takehome;
+
+// Single-pass decoder for Kucoin /market/level2 frames. It walks the raw text once and writes
+// the topic symbol, sequence range, exchange time and every change triple into a reusable
+// Level2Update, without building a JSON tree or any intermediate strings. Prices and sizes go
+// from ASCII straight to fixed point at the symbol's precision (the default one if the topic
+// comes after the data; the book rescales those). Unknown fields are skipped so that extra keys
+// added by the exchange do not break decoding.
+//
+// Not thread safe: keep one instance per event loop / thread.
+public class Level2FrameDecoder {
+
+    private static final int ROOT = 0;
+    private static final int DATA = 1;
+    private static final int CHANGES = 2;
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    private CharSequence in;
+    private int pos;
+    private int end;
+
+    // Returns false for frames that are not level2 data (welcome, ack, pong, ...). Throws
+    // IllegalArgumentException when the frame is not well-formed JSON.
+    public boolean decode(CharSequence frame, Level2Update out) {
+        out.reset();
+        in = frame;
+        pos = 0;
+        end = frame.length();
+        try {
+            skipWhitespace();
+            readObject(ROOT, out);
+        } finally {
+            in = null;
+        }
+        return out.getSymbol() != null && out.getSequenceEnd() != -1L;
+    }
+
+    private void readObject(int scope, Level2Update out) {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            int keyStart = readStringBounds();
+            int keyEnd = pos - 1;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            readField(scope, keyStart, keyEnd, out);
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw malformed();
+            }
+        }
+    }
+
+    private void readField(int scope, int keyStart, int keyEnd, Level2Update out) {
+        switch (scope) {
+            case ROOT:
+                if (keyEquals(keyStart, keyEnd, "topic") && peek() == '"') {
+                    int start = readStringBounds();
+                    out.setSymbol(symbolFromTopic(start, pos - 1));
+                    return;
+                }
+                if (keyEquals(keyStart, keyEnd, "data") && peek() == '{') {
+                    readObject(DATA, out);
+                    return;
+                }
+                break;
+            case DATA:
+                if (keyEquals(keyStart, keyEnd, "changes") && peek() == '{') {
+                    if (out.getSymbol() != null) {
+                        out.setPrecision(SymbolPrecision.of(out.getSymbol()));
+                    }
+                    readObject(CHANGES, out);
+                    return;
+                }
+                if (keyEquals(keyStart, keyEnd, "sequenceStart")) {
+                    out.setSequenceStart(readLongValue());
+                    return;
+                }
+                if (keyEquals(keyStart, keyEnd, "sequenceEnd")) {
+                    out.setSequenceEnd(readLongValue());
+                    return;
+                }
+                if (keyEquals(keyStart, keyEnd, "time")) {
+                    out.setTime(readLongValue());
+                    return;
+                }
+                break;
+            case CHANGES:
+                if (keyEquals(keyStart, keyEnd, "bids") && peek() == '[') {
+                    readChanges(out.getBids(), out.getPrecision());
+                    return;
+                }
+                if (keyEquals(keyStart, keyEnd, "asks") && peek() == '[') {
+                    readChanges(out.getAsks(), out.getPrecision());
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        skipValue();
+    }
+
+    // [["price","size","sequence"], ...]
+    private void readChanges(Level2Update.Changes changes, SymbolPrecision precision) {
+        int priceDecimals = precision.getPriceDecimals();
+        int sizeDecimals = precision.getSizeDecimals();
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('[');
+            skipWhitespace();
+            long price = readScaledValue(priceDecimals);
+            skipWhitespace();
+            expect(',');
+            skipWhitespace();
+            long size = readScaledValue(sizeDecimals);
+            skipWhitespace();
+            expect(',');
+            skipWhitespace();
+            long sequence = readLongValue();
+            skipWhitespace();
+            // Tolerate trailing elements we do not know about
+            while (peek() == ',') {
+                pos++;
+                skipWhitespace();
+                skipValue();
+                skipWhitespace();
+            }
+            expect(']');
+            skipWhitespace();
+            changes.addScaled(price, size, sequence);
+            char c = next();
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw malformed();
+            }
+        }
+    }
+
+    // "/market/level2:BTC-USDT" -> BTC-USDT (first symbol when the topic lists several)
+    private String symbolFromTopic(int start, int stop) {
+        int colon = -1;
+        for (int i = start; i < stop; i++) {
+            if (in.charAt(i) == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon < 0 || colon + 1 >= stop) {
+            return null;
+        }
+        int symbolEnd = stop;
+        for (int i = colon + 1; i < stop; i++) {
+            if (in.charAt(i) == ',') {
+                symbolEnd = i;
+                break;
+            }
+        }
+        return symbols.resolve(in, colon + 1, symbolEnd);
+    }
+
+    private long readLongValue() {
+        boolean quoted = peek() == '"';
+        if (quoted) {
+            pos++;
+        }
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        int start = pos;
+        long value = 0;
+        while (pos < end) {
+            char c = in.charAt(pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            pos++;
+        }
+        if (pos == start) {
+            throw malformed();
+        }
+        if (quoted) {
+            expect('"');
+        }
+        return negative ? -value : value;
+    }
+
+    private long readScaledValue(int decimals) {
+        boolean quoted = peek() == '"';
+        if (quoted) {
+            pos++;
+        }
+        int start = pos;
+        while (pos < end) {
+            char c = in.charAt(pos);
+            if ((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+                break;
+            }
+            pos++;
+        }
+        int stop = pos;
+        if (stop == start) {
+            throw malformed();
+        }
+        if (quoted) {
+            expect('"');
+        }
+        try {
+            return FixedPoint.parse(in, start, stop, decimals);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed level2 frame at offset " + start + ": " + e.getMessage());
+        }
+    }
+
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            readStringBounds();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < end) {
+                char ch = in.charAt(pos);
+                if (ch == '"') {
+                    readStringBounds();
+                    continue;
+                }
+                pos++;
+                if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if (ch == '}' || ch == ']') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                }
+            }
+            throw malformed();
+        } else {
+            // number, true, false, null
+            while (pos < end) {
+                char ch = in.charAt(pos);
+                if (ch == ',' || ch == '}' || ch == ']' || ch <= ' ') {
+                    break;
+                }
+                pos++;
+            }
+        }
+    }
+
+    // Consumes a string literal and returns the index of its first character; pos ends up
+    // just past the closing quote
+    private int readStringBounds() {
+        expect('"');
+        int start = pos;
+        while (pos < end) {
+            char c = in.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == '"') {
+                return start;
+            }
+        }
+        throw malformed();
+    }
+
+    private boolean keyEquals(int start, int stop, String key) {
+        int len = stop - start;
+        if (len != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (in.charAt(start + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && in.charAt(pos) <= ' ') {
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= end) {
+            throw malformed();
+        }
+        return in.charAt(pos);
+    }
+
+    private char next() {
+        if (pos >= end) {
+            throw malformed();
+        }
+        return in.charAt(pos++);
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw malformed();
+        }
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed level2 frame at offset " + pos);
+    }
+
+    // Interns upper-cased symbols so that decoding a known symbol does not allocate a String
+    static final class SymbolTable {
+        private String[] table = new String[64];
+        private int count;
+
+        String resolve(CharSequence s, int start, int stop) {
+            int hash = hash(s, start, stop);
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (true) {
+                String existing = table[slot];
+                if (existing == null) {
+                    break;
+                }
+                if (matches(existing, s, start, stop)) {
+                    return existing;
+                }
+                slot = (slot + 1) & mask;
+            }
+            String symbol = s.subSequence(start, stop).toString().toUpperCase();
+            table[slot] = symbol;
+            if (++count * 2 > table.length) {
+                rehash();
+            }
+            return symbol;
+        }
+
+        private void rehash() {
+            String[] old = table;
+            table = new String[old.length << 1];
+            int mask = table.length - 1;
+            for (String symbol : old) {
+                if (symbol == null) {
+                    continue;
+                }
+                int slot = hash(symbol, 0, symbol.length()) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = symbol;
+            }
+        }
+
+        private static int hash(CharSequence s, int start, int stop) {
+            int h = 0;
+            for (int i = start; i < stop; i++) {
+                h = 31 * h + Character.toUpperCase(s.charAt(i));
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean matches(String symbol, CharSequence s, int start, int stop) {
+            if (symbol.length() != stop - start) {
+                return false;
+            }
+            for (int i = 0; i < symbol.length(); i++) {
+                if (symbol.charAt(i) != Character.toUpperCase(s.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
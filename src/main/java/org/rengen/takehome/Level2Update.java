@@ -0,0 +1,197 @@
+package org.rengen.takehome;
+
+import java.util.Arrays;
+
+// One decoded /market/level2 message: the symbol, its sequence range and the change triples
+// for each side. Instances are reused across frames: Level2FrameDecoder resets one before
+// filling it, and one taken from a Level2UpdatePool goes back there on release(). Take a copy()
+// before holding on to one that is not yours.
+public class Level2Update {
+    private String symbol;
+    private long sequenceStart = -1L;
+    private long sequenceEnd = -1L;
+    private long time = -1L;
+    private long receivedAtNanos;
+    private SymbolPrecision precision = SymbolPrecision.DEFAULT;
+    private final Changes bids;
+    private final Changes asks;
+    // Where release() returns this holder; null for one that is simply left to the GC
+    private final Level2UpdatePool pool;
+
+    public Level2Update() {
+        this(new Changes(16), new Changes(16), null);
+    }
+
+    Level2Update(Level2UpdatePool pool) {
+        this(new Changes(16), new Changes(16), pool);
+    }
+
+    private Level2Update(Changes bids, Changes asks, Level2UpdatePool pool) {
+        this.bids = bids;
+        this.asks = asks;
+        this.pool = pool;
+    }
+
+    public void reset() {
+        symbol = null;
+        sequenceStart = -1L;
+        sequenceEnd = -1L;
+        time = -1L;
+        receivedAtNanos = 0L;
+        setPrecision(SymbolPrecision.DEFAULT);
+        bids.clear();
+        asks.clear();
+    }
+
+    public Level2Update copy() {
+        Level2Update copy = new Level2Update(bids.copy(), asks.copy(), null);
+        copy.symbol = symbol;
+        copy.sequenceStart = sequenceStart;
+        copy.sequenceEnd = sequenceEnd;
+        copy.time = time;
+        copy.receivedAtNanos = receivedAtNanos;
+        copy.setPrecision(precision);
+        return copy;
+    }
+
+    // Hands the holder back to its pool once nothing refers to it any more; a no-op for one
+    // that did not come from a pool
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public long getSequenceStart() {
+        return sequenceStart;
+    }
+
+    public void setSequenceStart(long sequenceStart) {
+        this.sequenceStart = sequenceStart;
+    }
+
+    public long getSequenceEnd() {
+        return sequenceEnd;
+    }
+
+    public void setSequenceEnd(long sequenceEnd) {
+        this.sequenceEnd = sequenceEnd;
+    }
+
+    // Exchange timestamp of the message in epoch millis, -1 when the frame carried none
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    // System.nanoTime() when the frame came off the socket, 0 when not received live
+    public long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    public void setReceivedAtNanos(long receivedAtNanos) {
+        this.receivedAtNanos = receivedAtNanos;
+    }
+
+    // The scale of every change in this update; set before the first change is added
+    public SymbolPrecision getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(SymbolPrecision precision) {
+        this.precision = precision;
+        bids.precision = precision;
+        asks.precision = precision;
+    }
+
+    public Changes getBids() {
+        return bids;
+    }
+
+    public Changes getAsks() {
+        return asks;
+    }
+
+    // Growable parallel arrays of (price, size, sequence) change triples for one side, with price
+    // and size fixed point at the update's precision
+    public static class Changes {
+        private long[] prices;
+        private long[] sizes;
+        private long[] sequences;
+        private int count;
+        private SymbolPrecision precision = SymbolPrecision.DEFAULT;
+
+        Changes(int capacity) {
+            int initial = Math.max(capacity, 1);
+            prices = new long[initial];
+            sizes = new long[initial];
+            sequences = new long[initial];
+        }
+
+        public void add(double price, double size, long sequence) {
+            addScaled(FixedPoint.fromDouble(price, precision.getPriceDecimals()),
+                    FixedPoint.fromDouble(size, precision.getSizeDecimals()), sequence);
+        }
+
+        public void addScaled(long price, long size, long sequence) {
+            if (count == prices.length) {
+                int capacity = count << 1;
+                prices = Arrays.copyOf(prices, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                sequences = Arrays.copyOf(sequences, capacity);
+            }
+            prices[count] = price;
+            sizes[count] = size;
+            sequences[count] = sequence;
+            count++;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public long scaledPriceAt(int index) {
+            return prices[index];
+        }
+
+        public long scaledSizeAt(int index) {
+            return sizes[index];
+        }
+
+        public double priceAt(int index) {
+            return FixedPoint.toDouble(prices[index], precision.getPriceDecimals());
+        }
+
+        public double sizeAt(int index) {
+            return FixedPoint.toDouble(sizes[index], precision.getSizeDecimals());
+        }
+
+        public long sequenceAt(int index) {
+            return sequences[index];
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        Changes copy() {
+            Changes copy = new Changes(count);
+            System.arraycopy(prices, 0, copy.prices, 0, count);
+            System.arraycopy(sizes, 0, copy.sizes, 0, count);
+            System.arraycopy(sequences, 0, copy.sequences, 0, count);
+            copy.count = count;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.rengen.takehome;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Recycles Level2Update holders between the producer decoding frames into them (a WebSocket
+// session, the journal replay) and the shard applying them, which may be on another event loop.
+// A recycled holder keeps the change arrays it grew to, so a steady feed decodes without
+// allocating. Holders the shard keeps (buffered across a gap) are simply not returned; the pool
+// makes new ones as needed and drops returns beyond its capacity.
+public class Level2UpdatePool {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final ArrayBlockingQueue<Level2Update> free;
+
+    public Level2UpdatePool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Level2UpdatePool(int capacity) {
+        free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public Level2Update acquire() {
+        Level2Update update = free.poll();
+        return update != null ? update : new Level2Update(this);
+    }
+
+    void release(Level2Update update) {
+        update.reset();
+        free.offer(update);
+    }
+
+    int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,57 @@
+package org.rengen.takehome;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+
+// Event bus codec for in-JVM delivery only: the message object is handed to consumers by
+// reference, with no serialization in between. Messages sent this way must not be mutated once
+// they are on the bus.
+public class LocalMessageCodec<T> implements MessageCodec<T, T> {
+    // Every message between the verticles of one node is sent with these and consumed with
+    // localConsumer(), so on a clustered event bus it never looks for (or reaches) another node
+    public static final DeliveryOptions LOCAL_ONLY = new DeliveryOptions().setLocalOnly(true);
+
+    private final Class<T> type;
+
+    public LocalMessageCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    // Registers the codecs for every typed message exchanged between the verticles
+    public static void registerAll(EventBus eventBus) {
+        register(eventBus, Level2Update.class);
+        register(eventBus, OrderBookSnapshot.class);
+        register(eventBus, SnapshotRefreshRequest.class);
+    }
+
+    private static <T> void register(EventBus eventBus, Class<T> type) {
+        eventBus.registerDefaultCodec(type, new LocalMessageCodec<>(type));
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, T message) {
+        throw new UnsupportedOperationException(type.getSimpleName() + " can only be delivered locally");
+    }
+
+    @Override
+    public T decodeFromWire(int pos, Buffer buffer) {
+        throw new UnsupportedOperationException(type.getSimpleName() + " can only be delivered locally");
+    }
+
+    @Override
+    public T transform(T message) {
+        return message;
+    }
+
+    @Override
+    public String name() {
+        return "local-" + type.getSimpleName();
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -1,36 +1,160 @@
 package org.rengen.takehome;
 
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.spi.cluster.hazelcast.ConfigUtil;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Main extends AbstractVerticle {
     public static void main(String[] args) {
-        Vertx vertx = Vertx.vertx();
+        // Several nodes can run from one working directory when each gets its own config file
+        String configPath = args.length > 0 ? args[0] : "config.json";
+        Vertx bootstrap = Vertx.vertx();
 
-        ConfigRetriever retriever = ConfigRetriever.create(vertx, new ConfigRetrieverOptions()
+        ConfigRetriever retriever = ConfigRetriever.create(bootstrap, new ConfigRetrieverOptions()
                 .addStore(new ConfigStoreOptions()
                         .setType("file")
-                        .setConfig(new JsonObject().put("path", "config.json"))));
+                        .setConfig(new JsonObject().put("path", configPath))));
 
         retriever.getConfig(ar -> {
-            if (ar.succeeded()) {
-                JsonObject config = ar.result();
-                DeploymentOptions options = new DeploymentOptions().setConfig(config);
-
-                vertx.deployVerticle(new KucoinOrderBookVerticle(), options);
-                vertx.deployVerticle(new KucoinRestClientVerticle(), options);
-                vertx.deployVerticle(new KucoinWSClientVerticle(), options);
-                vertx.deployVerticle(new AdminRestVerticle());
-            } else {
+            if (ar.failed()) {
                 System.out.println("Failed to load config: " + ar.cause());
+                return;
+            }
+            JsonObject config = ar.result();
+            SymbolPrecision.configure(config);
+            JsonObject cluster = config.getJsonObject("cluster");
+            if (cluster == null) {
+                MarketDataJournal journal = openJournal(config);
+                closeOnShutdown(bootstrap, journal);
+                deploy(bootstrap, config, null, journal);
+                return;
+            }
+            // The cluster manager is fixed when an instance is created, so the config is read
+            // with a plain one first
+            bootstrap.close();
+            Vertx.clusteredVertx(clusterOptions(cluster)).onComplete(clustered -> {
+                if (clustered.failed()) {
+                    System.out.println("Failed to join cluster: " + clustered.cause());
+                    return;
+                }
+                Vertx vertx = clustered.result();
+                MarketDataJournal journal = openJournal(config);
+                closeOnShutdown(vertx, journal);
+                int httpPort = config.getInteger("httpPort", 8080);
+                String host = cluster.getString("host", "localhost");
+                String nodeId = cluster.getString("nodeId", host + ":" + httpPort);
+                deploy(vertx, config, new ClusterMembership(nodeId, cluster.getString("httpHost", host) + ":" + httpPort), journal);
+            });
+        });
+    }
+
+    // Undeploying on SIGTERM runs the verticles' stop(): the shards write their final checkpoint,
+    // and in a cluster the other nodes see a clean leave instead of waiting for a timeout. The
+    // journal is closed only once nothing can append to it any more.
+    private static void closeOnShutdown(Vertx vertx, MarketDataJournal journal) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            vertx.close().toCompletionStage().toCompletableFuture()
+                    .orTimeout(5, TimeUnit.SECONDS).exceptionally(e -> null).join();
+            if (journal != null) {
+                journal.close();
+            }
+        }));
+    }
+
+    private static void deploy(Vertx vertx, JsonObject config, ClusterMembership membership, MarketDataJournal journal) {
+        LocalMessageCodec.registerAll(vertx.eventBus());
+        int shardCount = config.getInteger(OrderBookShards.SHARDS_CONFIG_KEY, defaultShardCount());
+        config.put(OrderBookShards.SHARDS_CONFIG_KEY, shardCount);
+        DeploymentOptions options = new DeploymentOptions().setConfig(config);
+
+        OrderBookShards shards = new OrderBookShards(shardCount, membership);
+        // In a cluster the other nodes have to be known before the shards decide what they hold
+        Future<String> joined = membership == null
+                ? Future.succeededFuture()
+                : vertx.deployVerticle(new ClusterVerticle(shards), options);
+
+        // One deployment per shard: Vert.x hands each deployment the next event loop, so
+        // every shard gets its own loop as long as there are fewer shards than loops
+        joined.compose(id -> {
+            List<Future> shardDeployments = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                shardDeployments.add(vertx.deployVerticle(new KucoinOrderBookVerticle(shards, i), options));
+            }
+            return CompositeFuture.all(shardDeployments);
+        }).onComplete(deployed -> {
+            // The WebSocket sessions run on the shards' event loops, so the shards come up first
+            if (deployed.failed()) {
+                System.out.println("Failed to deploy order book shards: " + deployed.cause());
+                return;
+            }
+            if (config.containsKey("replay")) {
+                // Feed the books from a recorded journal instead of the exchange
+                vertx.deployVerticle(new JournalReplayVerticle(shards), options);
+            } else {
+                vertx.deployVerticle(new KucoinRestClientVerticle(journal), options);
+                vertx.deployVerticle(new KucoinWSClientVerticle(shards, journal), options);
+                vertx.deployVerticle(new OrderBookValidatorVerticle(shards), options);
             }
+            vertx.deployVerticle(new AdminRestVerticle(), options);
         });
+    }
 
+    // Hazelcast finds the other nodes by multicast unless members are listed; listing them (e.g.
+    // "127.0.0.1") is the dependable choice for several JVMs on one machine
+    private static VertxOptions clusterOptions(JsonObject cluster) {
+        Config hazelcast = ConfigUtil.loadConfig();
+        hazelcast.setClusterName(cluster.getString("name", "kucoin-books"));
+        JsonArray members = cluster.getJsonArray("members");
+        if (members != null && !members.isEmpty()) {
+            JoinConfig join = hazelcast.getNetworkConfig().getJoin();
+            join.getMulticastConfig().setEnabled(false);
+            join.getTcpIpConfig().setEnabled(true);
+            for (int i = 0; i < members.size(); i++) {
+                join.getTcpIpConfig().addMember(members.getString(i));
+            }
+        }
+        VertxOptions options = new VertxOptions().setClusterManager(new HazelcastClusterManager(hazelcast));
+        options.getEventBusOptions().setHost(cluster.getString("host", "localhost"));
+        return options;
+    }
+
+    // Null unless recording is enabled; a replay never records
+    private static MarketDataJournal openJournal(JsonObject config) {
+        JsonObject journalConfig = config.getJsonObject("journal");
+        if (config.containsKey("replay") || journalConfig == null || !journalConfig.getBoolean("record", false)) {
+            return null;
+        }
+        String directory = journalConfig.getString("directory", "journal");
+        try {
+            MarketDataJournal journal = new MarketDataJournal(Path.of(directory),
+                    journalConfig.getInteger("segmentSizeBytes", MarketDataJournal.DEFAULT_SEGMENT_SIZE));
+            System.out.println("Recording market data to journal " + directory);
+            return journal;
+        } catch (IOException e) {
+            System.err.println("Failed to open journal " + directory + ", recording disabled: " + e.getMessage());
+            return null;
+        }
+    }
 
+    private static int defaultShardCount() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE);
     }
 }
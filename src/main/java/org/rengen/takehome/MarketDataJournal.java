@@ -0,0 +1,172 @@
+package org.rengen.takehome;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Append-only journal of the raw market data the service received: every WebSocket frame and
+// every REST snapshot body, stamped with its receive time. Records go into fixed-size,
+// memory-mapped segment files (journal-00000.dat, journal-00001.dat, ...):
+//
+//   int length | byte type | long receivedAtNanos | short symbolLength | symbol | payload (UTF-8)
+//
+// where length counts everything after itself. Unused space in a segment is zero, and a zero
+// length marks the end of the data in that segment. MarketDataJournalReader reads it back.
+public class MarketDataJournal implements Closeable {
+    public static final byte FRAME = 1;
+    public static final byte SNAPSHOT = 2;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".dat";
+    static final int LENGTH_BYTES = 4;
+    static final int HEADER_BYTES = 1 + 8 + 2;
+
+    private static final byte[] NO_SYMBOL = new byte[0];
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long baseEpochNanos;
+    private final long baseNanoTime;
+
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    // Set by the first failed record(); the recording stops there rather than go on with a hole
+    private boolean stopped;
+
+    public MarketDataJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= LENGTH_BYTES + HEADER_BYTES) {
+            throw new IllegalArgumentException("Journal segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.baseEpochNanos = System.currentTimeMillis() * 1_000_000L;
+        this.baseNanoTime = System.nanoTime();
+        Files.createDirectories(directory);
+        // Never overwrite an earlier recording; continue after the last existing segment
+        List<Path> existing = segmentFiles(directory);
+        this.segmentIndex = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+        openSegment();
+    }
+
+    // Wall-clock receive timestamp in epoch nanos, monotonic for the lifetime of the journal
+    public long now() {
+        return baseEpochNanos + (System.nanoTime() - baseNanoTime);
+    }
+
+    public void appendFrame(long receivedAtNanos, String frame) {
+        append(FRAME, receivedAtNanos, null, frame);
+    }
+
+    public void appendSnapshot(long receivedAtNanos, String symbol, String responseBody) {
+        append(SNAPSHOT, receivedAtNanos, symbol, responseBody);
+    }
+
+    // Best-effort appends for the live feed, which must reach the books whatever happens to the
+    // recording: the first failure (a closed journal, a segment that could not be opened, a record
+    // larger than a segment) is logged and ends the recording, and later records are ignored
+    public void recordFrame(long receivedAtNanos, String frame) {
+        record(FRAME, receivedAtNanos, null, frame);
+    }
+
+    public void recordSnapshot(long receivedAtNanos, String symbol, String responseBody) {
+        record(SNAPSHOT, receivedAtNanos, symbol, responseBody);
+    }
+
+    private synchronized void record(byte type, long receivedAtNanos, String symbol, String payload) {
+        if (stopped) {
+            return;
+        }
+        try {
+            append(type, receivedAtNanos, symbol, payload);
+        } catch (RuntimeException e) {
+            stopped = true;
+            System.err.println("Journal recording to " + directory + " stopped: " + e.getMessage());
+        }
+    }
+
+    public synchronized boolean isRecording() {
+        return !stopped && segment != null;
+    }
+
+    // Called from the socket reader threads and the REST client's event loop
+    private synchronized void append(byte type, long receivedAtNanos, String symbol, String payload) {
+        if (segment == null) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        byte[] symbolBytes = symbol == null ? NO_SYMBOL : symbol.getBytes(StandardCharsets.US_ASCII);
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + symbolBytes.length + payloadBytes.length;
+        if (LENGTH_BYTES + length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit in a journal segment");
+        }
+        if (segment.remaining() < LENGTH_BYTES + length) {
+            rollSegment();
+        }
+        segment.putInt(length)
+                .put(type)
+                .putLong(receivedAtNanos)
+                .putShort((short) symbolBytes.length)
+                .put(symbolBytes)
+                .put(payloadBytes);
+    }
+
+    private void rollSegment() {
+        segment.force();
+        segmentIndex++;
+        try {
+            openSegment();
+        } catch (IOException e) {
+            segment = null;
+            throw new UncheckedIOException("Failed to open journal segment " + segmentIndex, e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path file = directory.resolve(segmentName(segmentIndex));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    static String segmentName(int index) {
+        return String.format("%s%05d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Segment files of a journal directory in append order
+    static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(f -> f.getFileName().toString().matches(SEGMENT_PREFIX + "\\d+" + SEGMENT_SUFFIX.replace(".", "\\.")))
+                    .sorted((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)))
+                    .forEach(segments::add);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,88 @@
+package org.rengen.takehome;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Sequential reader over the segments written by MarketDataJournal
+public class MarketDataJournalReader {
+    private final List<Path> segments;
+    private int nextSegment;
+    private MappedByteBuffer current;
+
+    public MarketDataJournalReader(Path directory) throws IOException {
+        this.segments = MarketDataJournal.segmentFiles(directory);
+        if (segments.isEmpty()) {
+            throw new IOException("No journal segments found in " + directory);
+        }
+    }
+
+    // Fills the record with the next entry; returns false once every segment has been read
+    public boolean next(JournalRecord record) {
+        while (true) {
+            if (current == null || !hasRecord(current)) {
+                if (nextSegment == segments.size()) {
+                    return false;
+                }
+                current = map(segments.get(nextSegment++));
+                continue;
+            }
+            int length = current.getInt();
+            int payloadEnd = current.position() + length;
+            record.type = current.get();
+            record.receivedAtNanos = current.getLong();
+            int symbolLength = current.getShort();
+            record.symbol = symbolLength == 0 ? null : readString(symbolLength, StandardCharsets.US_ASCII);
+            record.payload = readString(payloadEnd - current.position(), StandardCharsets.UTF_8);
+            return true;
+        }
+    }
+
+    private static boolean hasRecord(MappedByteBuffer segment) {
+        return segment.remaining() >= MarketDataJournal.LENGTH_BYTES && segment.getInt(segment.position()) > 0;
+    }
+
+    private String readString(int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        current.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    private static MappedByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map journal segment " + file, e);
+        }
+    }
+
+    public static class JournalRecord {
+        private byte type;
+        private long receivedAtNanos;
+        private String symbol;
+        private String payload;
+
+        public byte getType() {
+            return type;
+        }
+
+        public long getReceivedAtNanos() {
+            return receivedAtNanos;
+        }
+
+        // Only set for snapshot records
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.rengen.takehome;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide counters, gauges and latency histograms, rendered in the Prometheus text format
+// by GET /metrics on the admin port. Everything here is updated from the socket threads and
+// the shard event loops without locks.
+public final class Metrics {
+    private static final Metrics INSTANCE = new Metrics();
+
+    public final LatencyHistogram exchangeToReceive = new LatencyHistogram("kucoin_exchange_to_receive_seconds",
+            "Exchange message timestamp to WebSocket receive (includes clock offset)");
+    public final LatencyHistogram receiveToApply = new LatencyHistogram("orderbook_receive_to_apply_seconds",
+            "WebSocket receive to the update being applied to the book");
+    public final LatencyHistogram exchangeToApply = new LatencyHistogram("orderbook_exchange_to_apply_seconds",
+            "Exchange message timestamp to the update being applied to the book");
+    public final LatencyHistogram receiveToResponse = new LatencyHistogram("orderbook_receive_to_response_seconds",
+            "WebSocket receive of the newest update in a served book to the HTTP response");
+    public final LatencyHistogram snapshotResync = new LatencyHistogram("orderbook_snapshot_resync_seconds",
+            "Snapshot requested to delivered, including time queued for the REST budget");
+    public final LatencyHistogram gapRecovery = new LatencyHistogram("orderbook_gap_recovery_seconds",
+            "Sequence gap detected to the book being continuous again");
+
+    private final ConcurrentMap<String, LongAdder> messagesBySymbol = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> lastResyncNanosBySymbol = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, IngestQueue> ingestQueuesByShard = new ConcurrentHashMap<>();
+    private final LongAdder gaps = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder bufferedUpdates = new LongAdder();
+    private final LongAdder droppedUpdates = new LongAdder();
+    private final LongAdder appliedMessages = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    private Metrics() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    public void messageReceived(String symbol) {
+        messagesBySymbol.computeIfAbsent(symbol, k -> new LongAdder()).increment();
+    }
+
+    // Each shard's ingest queue, read for depth and lag when the metrics are rendered
+    public void registerIngestQueue(int shard, IngestQueue queue) {
+        ingestQueuesByShard.put(shard, queue);
+    }
+
+    public void snapshotDelivered(String symbol, long resyncNanos) {
+        snapshotResync.recordNanos(resyncNanos);
+        lastResyncNanosBySymbol.put(symbol, resyncNanos);
+    }
+
+    public void gapDetected() {
+        gaps.increment();
+    }
+
+    public void refreshRequested() {
+        refreshes.increment();
+    }
+
+    public void updateBuffered() {
+        bufferedUpdates.increment();
+    }
+
+    public void updatesDropped(long count) {
+        droppedUpdates.add(count);
+    }
+
+    // Bytes allocated so far by the calling thread, or -1 if the JVM cannot tell
+    public long threadAllocatedBytes() {
+        return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    // Pair with threadAllocatedBytes() taken before handling one message on the same thread
+    public void messageHandled(long allocatedBefore) {
+        messagesHandled(1, allocatedBefore);
+    }
+
+    // Same, for a batch of messages handled together
+    public void messagesHandled(int count, long allocatedBefore) {
+        appliedMessages.add(count);
+        if (allocatedBefore >= 0) {
+            allocatedBytes.add(threads.getCurrentThreadAllocatedBytes() - allocatedBefore);
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(8192);
+
+        out.append("# HELP kucoin_messages_total Level2 messages received per symbol\n");
+        out.append("# TYPE kucoin_messages_total counter\n");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(messagesBySymbol).entrySet()) {
+            out.append("kucoin_messages_total{symbol=\"").append(e.getKey()).append("\"} ").append(e.getValue().sum()).append('\n');
+        }
+
+        StringBuilder depth = new StringBuilder(1024);
+        StringBuilder sequenceLag = new StringBuilder(1024);
+        StringBuilder lag = new StringBuilder(1024);
+        StringBuilder dropped = new StringBuilder(1024);
+        StringBuilder blocked = new StringBuilder(1024);
+        for (Map.Entry<Integer, IngestQueue> e : new TreeMap<>(ingestQueuesByShard).entrySet()) {
+            String shard = String.valueOf(e.getKey());
+            e.getValue().forEachSymbol((symbol, queued, behind, lagMs, droppedCount, blockedCount) -> {
+                String labels = "{shard=\"" + shard + "\",symbol=\"" + symbol + "\"} ";
+                depth.append("orderbook_ingest_queue_depth").append(labels).append(queued).append('\n');
+                sequenceLag.append("orderbook_ingest_lag_sequences").append(labels).append(behind).append('\n');
+                lag.append("orderbook_ingest_lag_seconds").append(labels).append(lagMs / 1e3).append('\n');
+                dropped.append("orderbook_ingest_dropped_total").append(labels).append(droppedCount).append('\n');
+                blocked.append("orderbook_ingest_blocked_total").append(labels).append(blockedCount).append('\n');
+            });
+        }
+        out.append("# HELP orderbook_ingest_queue_depth Updates queued for a shard and not yet applied\n");
+        out.append("# TYPE orderbook_ingest_queue_depth gauge\n").append(depth);
+        out.append("# HELP orderbook_ingest_lag_sequences Last sequence queued minus last sequence applied\n");
+        out.append("# TYPE orderbook_ingest_lag_sequences gauge\n").append(sequenceLag);
+        out.append("# HELP orderbook_ingest_lag_seconds Time the oldest queued update has waited since it was received\n");
+        out.append("# TYPE orderbook_ingest_lag_seconds gauge\n").append(lag);
+        out.append("# HELP orderbook_ingest_dropped_total Updates thrown away by a full ingest queue (overflow policy drop)\n");
+        out.append("# TYPE orderbook_ingest_dropped_total counter\n").append(dropped);
+        out.append("# HELP orderbook_ingest_blocked_total Times a producer was paused by a full ingest queue (overflow policy block)\n");
+        out.append("# TYPE orderbook_ingest_blocked_total counter\n").append(blocked);
+
+        out.append("# HELP orderbook_last_resync_seconds Time to resync of the last snapshot delivered per symbol\n");
+        out.append("# TYPE orderbook_last_resync_seconds gauge\n");
+        for (Map.Entry<String, Long> e : new TreeMap<>(lastResyncNanosBySymbol).entrySet()) {
+            out.append("orderbook_last_resync_seconds{symbol=\"").append(e.getKey()).append("\"} ").append(e.getValue() / 1e9).append('\n');
+        }
+
+        counter(out, "orderbook_gaps_total", "Sequence gaps detected", gaps);
+        counter(out, "orderbook_snapshot_refreshes_total", "Snapshot refreshes requested to recover from gaps", refreshes);
+        counter(out, "orderbook_buffered_updates_total", "Updates held in a gap buffer", bufferedUpdates);
+        counter(out, "orderbook_gap_buffer_dropped_total", "Buffered updates lost to gap buffer overflow", droppedUpdates);
+        counter(out, "orderbook_handled_messages_total", "Level2 messages handled by the order book shards", appliedMessages);
+        counter(out, "orderbook_handled_allocated_bytes_total",
+                "Bytes allocated while handling those messages; divide by the message count for bytes per message", allocatedBytes);
+
+        exchangeToReceive.writePrometheus(out);
+        receiveToApply.writePrometheus(out);
+        exchangeToApply.writePrometheus(out);
+        receiveToResponse.writePrometheus(out);
+        snapshotResync.writePrometheus(out);
+        gapRecovery.writePrometheus(out);
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, LongAdder value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value.sum()).append('\n');
+    }
+}
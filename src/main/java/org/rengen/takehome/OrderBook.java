@@ -3,103 +3,135 @@ package org.rengen.takehome;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
-import java.util.Comparator;
-import java.util.Map;
-import java.util.TreeMap;
-
+// Prices and sizes are fixed point at the symbol's precision: a level is removed when its size
+// is exactly zero, and input at another precision is rescaled on the way in.
 public class OrderBook {
-    private static final double SIZE_THRESHOLD = 1e-4;
     private static final int MAX_DEPTH = 100;
 
+    private final SymbolPrecision precision;
     private long lastSequence = -1L;
-    private final Map<Double, Double> bids = new TreeMap<>(Comparator.reverseOrder());
-    private final Map<Double, Double> asks = new TreeMap<>();
+    // Bumped on every mutation so publishView() can tell whether anything changed
+    private long version;
+    private final PriceLevels bids;
+    private final PriceLevels asks;
+    // Receive time of the newest live update applied, carried into published views
+    private long lastReceivedNanos;
+    // Restored from a checkpoint; cleared by a snapshot or by a live update that continues it
+    private boolean stale;
+    private volatile TopOfBook top = TopOfBook.EMPTY;
+    private volatile BookView view = BookView.EMPTY;
+
+    public OrderBook() {
+        this(SymbolPrecision.DEFAULT);
+    }
+
+    public OrderBook(SymbolPrecision precision) {
+        this.precision = precision;
+        this.bids = new PriceLevels(true, MAX_DEPTH * 2, precision);
+        this.asks = new PriceLevels(false, MAX_DEPTH * 2, precision);
+    }
+
+    public SymbolPrecision getPrecision() {
+        return precision;
+    }
 
     public void applySnapshot(JsonObject snapshot) {
-        bids.clear();
-        asks.clear();
-        lastSequence = -1L;
-
-        JsonArray bidsArr = snapshot.getJsonArray("bids");
-        if (bidsArr != null) {
-            for (int i = 0; i < bidsArr.size(); i++) {
-                JsonArray bid = bidsArr.getJsonArray(i);
-                if (bid != null && bid.size() == 2) {
-                    double price = Double.parseDouble(bid.getString(0));
-                    double size = Double.parseDouble(bid.getString(1));
-                    if (size >= SIZE_THRESHOLD) bids.put(price, size);
-                }
-            }
-            pruneDepth(bids);
-        }
+        applySnapshot(OrderBookSnapshot.fromJson(null, snapshot));
+    }
 
-        JsonArray asksArr = snapshot.getJsonArray("asks");
-        if (asksArr != null) {
-            for (int i = 0; i < asksArr.size(); i++) {
-                JsonArray ask = asksArr.getJsonArray(i);
-                if (ask != null && ask.size() == 2) {
-                    double price = Double.parseDouble(ask.getString(0));
-                    double size = Double.parseDouble(ask.getString(1));
-                    if (size >= SIZE_THRESHOLD) asks.put(price, size);
-                }
-            }
-            pruneDepth(asks);
-        }
+    public void applySnapshot(OrderBookSnapshot snapshot) {
+        copyLevels(snapshot.getBids(), bids);
+        copyLevels(snapshot.getAsks(), asks);
+        lastSequence = snapshot.getSequence();
+        stale = false;
+        version++;
+        refreshTop(lastSequence);
+    }
 
-        String seqStr = snapshot.getString("sequence");
-        if (seqStr != null) {
-            try {
-                lastSequence = Long.parseLong(seqStr);
-            } catch (NumberFormatException ignored) {}
+    // Loads a checkpointed book; it is served as stale until the feed confirms its sequence
+    public void restore(OrderBookSnapshot checkpoint) {
+        applySnapshot(checkpoint);
+        stale = true;
+        refreshTop(lastSequence);
+    }
+
+    private void copyLevels(PriceLevels from, PriceLevels to) {
+        from = from.withPrecision(precision);
+        to.clear();
+        for (int i = 0; i < from.size(); i++) {
+            long size = from.scaledSizeAt(i);
+            if (size > 0) to.setScaled(from.scaledPriceAt(i), size);
         }
+        pruneDepth(to);
     }
 
     public void applyIncremental(JsonObject changes) {
         if (changes == null) return;
 
-        JsonArray bidsArr = changes.getJsonArray("bids");
-        if (bidsArr != null) {
-            for (int i = 0; i < bidsArr.size(); i++) {
-                JsonArray bid = bidsArr.getJsonArray(i);
-                if (bid != null && bid.size() == 3) {
-                    double price = Double.parseDouble(bid.getString(0));
-                    double size = Double.parseDouble(bid.getString(1));
-                    long seq = Long.parseLong(bid.getString(2));
-                    if (seq <= lastSequence) continue;
-                    if (size < SIZE_THRESHOLD) bids.remove(price);
-                    else bids.put(price, size);
-                }
+        Level2Update update = new Level2Update();
+        update.setPrecision(precision);
+        readChanges(changes.getJsonArray("bids"), update.getBids());
+        readChanges(changes.getJsonArray("asks"), update.getAsks());
+        applyIncremental(update);
+    }
+
+    private void readChanges(JsonArray sideArr, Level2Update.Changes changes) {
+        if (sideArr == null) return;
+        for (int i = 0; i < sideArr.size(); i++) {
+            JsonArray change = sideArr.getJsonArray(i);
+            if (change != null && change.size() == 3) {
+                changes.addScaled(FixedPoint.parse(change.getString(0), precision.getPriceDecimals()),
+                        FixedPoint.parse(change.getString(1), precision.getSizeDecimals()),
+                        Long.parseLong(change.getString(2)));
             }
-            pruneDepth(bids);
         }
+    }
 
-        JsonArray asksArr = changes.getJsonArray("asks");
-        if (asksArr != null) {
-            for (int i = 0; i < asksArr.size(); i++) {
-                JsonArray ask = asksArr.getJsonArray(i);
-                if (ask != null && ask.size() == 3) {
-                    double price = Double.parseDouble(ask.getString(0));
-                    double size = Double.parseDouble(ask.getString(1));
-                    long seq = Long.parseLong(ask.getString(2));
-                    if (seq <= lastSequence) continue;
-                    if (size < SIZE_THRESHOLD) asks.remove(price);
-                    else asks.put(price, size);
-                }
-            }
-            pruneDepth(asks);
+    // Applies a decoded level2 message; changes at or below lastSequence are skipped
+    public void applyIncremental(Level2Update update) {
+        if (stale && update.getSequenceStart() <= lastSequence + 1 && update.getSequenceEnd() > lastSequence) {
+            stale = false;
+        }
+        applyChanges(bids, update.getBids(), update.getPrecision());
+        applyChanges(asks, update.getAsks(), update.getPrecision());
+        version++;
+        if (update.getReceivedAtNanos() != 0) {
+            lastReceivedNanos = update.getReceivedAtNanos();
         }
+        refreshTop(Math.max(update.getSequenceEnd(), lastSequence));
     }
 
-    // Prune the map to a maximum depth by removing lowest priority entries
-    private void pruneDepth(Map<Double, Double> map) {
-        while (map.size() > MAX_DEPTH) {
-            Double lastKey = ((TreeMap<Double, Double>) map).lastKey();
-            if (lastKey != null) {
-                map.remove(lastKey);
-            } else {
-                break;
+    // Publishes a new L1 only when the best levels actually moved
+    private void refreshTop(long sequence) {
+        long bidPrice = bids.isEmpty() ? TopOfBook.NONE : bids.scaledPriceAt(0);
+        long bidSize = bids.isEmpty() ? 0 : bids.scaledSizeAt(0);
+        long askPrice = asks.isEmpty() ? TopOfBook.NONE : asks.scaledPriceAt(0);
+        long askSize = asks.isEmpty() ? 0 : asks.scaledSizeAt(0);
+        if (!top.sameTouch(bidPrice, bidSize, askPrice, askSize) || top.isStale() != stale) {
+            top = new TopOfBook(bidPrice, bidSize, askPrice, askSize, precision, sequence, stale);
+        }
+    }
+
+    private void applyChanges(PriceLevels side, Level2Update.Changes changes, SymbolPrecision from) {
+        if (changes.size() == 0) return;
+        boolean rescale = !from.sameAs(precision);
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.sequenceAt(i) <= lastSequence) continue;
+            long price = changes.scaledPriceAt(i);
+            long size = changes.scaledSizeAt(i);
+            if (rescale) {
+                price = FixedPoint.rescale(price, from.getPriceDecimals(), precision.getPriceDecimals());
+                size = FixedPoint.rescale(size, from.getSizeDecimals(), precision.getSizeDecimals());
             }
+            if (size <= 0) side.removeScaled(price);
+            else side.setScaled(price, size);
         }
+        pruneDepth(side);
+    }
+
+    // Prune the side to a maximum depth by dropping its lowest priority levels
+    private void pruneDepth(PriceLevels side) {
+        side.truncate(MAX_DEPTH);
     }
 
     public long getLastSequence() {
@@ -108,28 +140,125 @@ public class OrderBook {
 
     public void setLastSequence(long sequence) {
         this.lastSequence = sequence;
+        version++;
     }
 
+    // Safe to call from any thread
+    public TopOfBook getTop() {
+        return top;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    // Called by the writer once a batch of changes is applied and lastSequence is set. Copies
+    // the ladders into a new immutable view only if the book changed since the last one.
+    public BookView publishView() {
+        BookView current = view;
+        if (current.getVersion() != version) {
+            // Running totals are refreshed on the live ladders, from the first changed level only,
+            // and travel into the copies so readers never write to a view
+            bids.updatePrefixSums();
+            asks.updatePrefixSums();
+            current = new BookView(lastSequence, version, lastReceivedNanos, bids.copy(), asks.copy(), stale);
+            view = current;
+        }
+        return current;
+    }
+
+    // The last published view; consistent and safe to read from any thread
+    public BookView getView() {
+        return view;
+    }
+
+    // Written straight from the ladders in the same layout encodePrettily() produced, without
+    // building an intermediate JsonArray per level
     public String toJson() {
-        JsonObject obj = new JsonObject();
-        obj.put("sequence", lastSequence);
+        return toJson(MAX_DEPTH, true);
+    }
 
-        JsonArray bidsArr = new JsonArray();
-        bids.forEach((price, size) -> bidsArr.add(new JsonArray().add(price).add(size)));
-        obj.put("bids", bidsArr);
+    // The best depth levels per side, pretty-printed or compact
+    public String toJson(int depth, boolean pretty) {
+        return toJson(lastSequence, bids, asks, depth, pretty, stale);
+    }
 
-        JsonArray asksArr = new JsonArray();
-        asks.forEach((price, size) -> asksArr.add(new JsonArray().add(price).add(size)));
-        obj.put("asks", asksArr);
+    // A stale book carries "stale": true; live books keep the original layout
+    static String toJson(long sequence, PriceLevels bids, PriceLevels asks, int depth, boolean pretty, boolean stale) {
+        int bidCount = Math.min(depth, bids.size());
+        int askCount = Math.min(depth, asks.size());
+        StringBuilder sb = new StringBuilder(64 + (bidCount + askCount) * 32);
+        if (pretty) {
+            sb.append("{\n  \"sequence\" : ").append(sequence);
+            if (stale) {
+                sb.append(",\n  \"stale\" : true");
+            }
+            sb.append(",\n  \"bids\" : ");
+            appendLevels(sb, bids, bidCount);
+            sb.append(",\n  \"asks\" : ");
+            appendLevels(sb, asks, askCount);
+            sb.append("\n}");
+        } else {
+            appendCompactJson(sb, sequence, bids, asks, depth, stale);
+        }
+        return sb.toString();
+    }
+
+    // The compact encoding, appended to a caller's builder (batch responses write many books into one)
+    static StringBuilder appendCompactJson(StringBuilder sb, long sequence, PriceLevels bids, PriceLevels asks, int depth, boolean stale) {
+        sb.append("{\"sequence\":").append(sequence);
+        if (stale) {
+            sb.append(",\"stale\":true");
+        }
+        sb.append(",\"bids\":");
+        appendCompactLevels(sb, bids, Math.min(depth, bids.size()));
+        sb.append(",\"asks\":");
+        appendCompactLevels(sb, asks, Math.min(depth, asks.size()));
+        return sb.append('}');
+    }
+
+    private static void appendLevels(StringBuilder sb, PriceLevels side, int count) {
+        if (count == 0) {
+            sb.append("[ ]");
+            return;
+        }
+        sb.append("[ ");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("[ ");
+            appendLevel(sb, side, i, ", ");
+            sb.append(" ]");
+        }
+        sb.append(" ]");
+    }
+
+    private static void appendCompactLevels(StringBuilder sb, PriceLevels side, int count) {
+        sb.append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('[');
+            appendLevel(sb, side, i, ",");
+            sb.append(']');
+        }
+        sb.append(']');
+    }
 
-        return obj.encodePrettily();
+    private static void appendLevel(StringBuilder sb, PriceLevels side, int index, String separator) {
+        SymbolPrecision precision = side.getPrecision();
+        FixedPoint.format(sb, side.scaledPriceAt(index), precision.getPriceDecimals()).append(separator);
+        FixedPoint.format(sb, side.scaledSizeAt(index), precision.getSizeDecimals());
     }
 
-    public Map<Double, Double> getBids() {
+    // The live ladders; only for the writer's thread. Other readers use getView().
+    public PriceLevels getBids() {
         return bids;
     }
 
-    public Map<Double, Double> getAsks() {
+    public PriceLevels getAsks() {
         return asks;
     }
 
@@ -0,0 +1,154 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+// Diffs the in-memory book against an official exchange snapshot. Both inputs are sorted the
+// same way, so every comparison is a single linear merge over the two sides. Prices and sizes are
+// compared exactly as fixed point, with the official side brought to our side's precision first.
+public final class OrderBookComparator {
+
+    private OrderBookComparator() {
+    }
+
+    // Reads the live ladders, so only from the book's own event loop
+    public static JsonObject compareOrderBooks(OrderBook myBook, OrderBookSnapshot officialSnapshot) {
+        return compareOrderBooks(myBook.getBids(), myBook.getAsks(), officialSnapshot);
+    }
+
+    // Safe from any thread
+    public static JsonObject compareOrderBooks(BookView myBook, OrderBookSnapshot officialSnapshot) {
+        return compareOrderBooks(myBook.getBids(), myBook.getAsks(), officialSnapshot);
+    }
+
+    private static JsonObject compareOrderBooks(PriceLevels myBids, PriceLevels myAsks, OrderBookSnapshot officialSnapshot) {
+        JsonObject diff = new JsonObject();
+
+        PriceLevels officialBids = officialSnapshot.getBids();
+        PriceLevels officialAsks = officialSnapshot.getAsks();
+
+        JsonArray bidsDiff = new JsonArray();
+        compareSideDiff(myBids, officialBids, bidsDiff);
+
+        JsonArray asksDiff = new JsonArray();
+        compareSideDiff(myAsks, officialAsks, asksDiff);
+
+        diff.put("bids_diff", bidsDiff);
+        diff.put("asks_diff", asksDiff);
+
+        double bidsMatchPercent = calculateMatchPercentage(myBids, officialBids);
+        double asksMatchPercent = calculateMatchPercentage(myAsks, officialAsks);
+        diff.put("bids_match_percentage", bidsMatchPercent);
+        diff.put("asks_match_percentage", asksMatchPercent);
+
+        diff.put("booksMatch", bidsDiff.isEmpty() && asksDiff.isEmpty());
+
+        return diff;
+    }
+
+    // Both sides are sorted the same way, so the union of prices is walked with a single merge
+    public static void compareSideDiff(PriceLevels mySide, PriceLevels officialSide, JsonArray diffArray) {
+        officialSide = officialSide.withPrecision(mySide.getPrecision());
+        int priceDecimals = mySide.getPrecision().getPriceDecimals();
+        int sizeDecimals = mySide.getPrecision().getSizeDecimals();
+        int i = 0;
+        int j = 0;
+        while (i < mySide.size() || j < officialSide.size()) {
+            int cmp = compareHeads(mySide, i, officialSide, j);
+            long price;
+            long mySize = 0;
+            long officialSize = 0;
+            if (cmp < 0) {
+                price = mySide.scaledPriceAt(i);
+                mySize = mySide.scaledSizeAt(i++);
+            } else if (cmp > 0) {
+                price = officialSide.scaledPriceAt(j);
+                officialSize = officialSide.scaledSizeAt(j++);
+            } else {
+                price = mySide.scaledPriceAt(i);
+                mySize = mySide.scaledSizeAt(i++);
+                officialSize = officialSide.scaledSizeAt(j++);
+            }
+            if (mySize != officialSize) {
+                diffArray.add(new JsonObject()
+                        .put("price", FixedPoint.toDouble(price, priceDecimals))
+                        .put("mySize", FixedPoint.toDouble(mySize, sizeDecimals))
+                        .put("officialSize", FixedPoint.toDouble(officialSize, sizeDecimals)));
+            }
+        }
+    }
+
+    // Number of differing levels within the official side's depth: our levels beyond its worst
+    // price are not counted, since a level2_20 snapshot simply does not show them
+    public static int countSideDiffs(PriceLevels mySide, PriceLevels officialSide) {
+        if (officialSide.isEmpty()) {
+            return mySide.isEmpty() ? 0 : 1;
+        }
+        officialSide = officialSide.withPrecision(mySide.getPrecision());
+        long worstOfficial = officialSide.scaledPriceAt(officialSide.size() - 1);
+        int myCount = 0;
+        while (myCount < mySide.size() && mySide.compareScaled(mySide.scaledPriceAt(myCount), worstOfficial) <= 0) {
+            myCount++;
+        }
+        int diffs = 0;
+        int i = 0;
+        int j = 0;
+        while (i < myCount || j < officialSide.size()) {
+            int cmp;
+            if (i >= myCount) {
+                cmp = 1;
+            } else if (j >= officialSide.size()) {
+                cmp = -1;
+            } else {
+                cmp = mySide.compareScaled(mySide.scaledPriceAt(i), officialSide.scaledPriceAt(j));
+            }
+            if (cmp < 0) {
+                diffs++;
+                i++;
+            } else if (cmp > 0) {
+                diffs++;
+                j++;
+            } else {
+                if (mySide.scaledSizeAt(i++) != officialSide.scaledSizeAt(j++)) {
+                    diffs++;
+                }
+            }
+        }
+        return diffs;
+    }
+
+    public static double calculateMatchPercentage(PriceLevels mySide, PriceLevels officialSide) {
+        officialSide = officialSide.withPrecision(mySide.getPrecision());
+        double matchedVolume = 0.0;
+        double totalVolume = 0.0;
+
+        for (int j = 0; j < officialSide.size(); j++) {
+            totalVolume += officialSide.sizeAt(j);
+        }
+
+        if (totalVolume == 0) return 100.0;
+
+        // Only prices present on both sides contribute to the matched volume
+        int i = 0;
+        int j = 0;
+        while (i < mySide.size() && j < officialSide.size()) {
+            int cmp = mySide.compareScaled(mySide.scaledPriceAt(i), officialSide.scaledPriceAt(j));
+            if (cmp < 0) {
+                i++;
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                matchedVolume += Math.min(mySide.sizeAt(i++), officialSide.sizeAt(j++));
+            }
+        }
+
+        return (matchedVolume / totalVolume) * 100.0;
+    }
+
+    // Orders the next unconsumed level of each side; an exhausted side always sorts last
+    private static int compareHeads(PriceLevels a, int i, PriceLevels b, int j) {
+        if (i >= a.size()) return 1;
+        if (j >= b.size()) return -1;
+        return a.compareScaled(a.scaledPriceAt(i), b.scaledPriceAt(j));
+    }
+}
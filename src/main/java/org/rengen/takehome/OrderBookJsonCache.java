@@ -0,0 +1,54 @@
+package org.rengen.takehome;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+// Pre-encoded GET /orderbook responses for one published BookView. Each variant (depth, pretty
+// or compact, plain or gzip) is serialized once, on first request, and the same Buffer is then
+// written to every reader; Vert.x writes a duplicate of it, so sharing is safe. Views are
+// immutable, so readers on any event loop can share the cache; two racing on a new variant at
+// worst both encode it.
+public class OrderBookJsonCache {
+    private final BookView view;
+    private final Map<Integer, Buffer> variants = new ConcurrentHashMap<>();
+
+    public OrderBookJsonCache(BookView view) {
+        this.view = view;
+    }
+
+    // Changes whenever the book does; includes the sequence so clients can read it
+    public String etag() {
+        return "W/\"" + view.getSequence() + "-" + view.getVersion() + "\"";
+    }
+
+    public Buffer get(int depth, boolean pretty, boolean gzip) {
+        // Depths beyond the deeper side all encode the same, so they share one variant
+        int deepest = Math.max(view.getBids().size(), view.getAsks().size());
+        int clamped = Math.max(1, Math.min(depth, deepest));
+        int key = clamped << 2 | (pretty ? 2 : 0) | (gzip ? 1 : 0);
+        Buffer cached = variants.get(key);
+        if (cached == null) {
+            // The gzip variant is compressed from the plain one, which is then cached too
+            cached = gzip ? gzip(get(clamped, pretty, false)) : Buffer.buffer(view.toJson(clamped, pretty).getBytes(StandardCharsets.UTF_8));
+            variants.putIfAbsent(key, cached);
+        }
+        return cached;
+    }
+
+    private static Buffer gzip(Buffer plain) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length() / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(plain.getBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Buffer.buffer(out.toByteArray());
+    }
+}
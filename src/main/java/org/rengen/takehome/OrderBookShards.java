@@ -0,0 +1,94 @@
+package org.rengen.takehome;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Partitions symbols across the KucoinOrderBookVerticle instances. Every symbol is owned by
+// exactly one shard, picked deterministically from the symbol name, and only that shard's event
+// loop ever touches its book. Snapshots address a shard through shardAddress(), live updates go
+// onto the owner's ingest queue; readers hop onto the owner through owner().
+//
+// In a clustered deployment the symbols are first partitioned across nodes (see
+// ClusterMembership); the shards of a node only hold books for the symbols the node owns or
+// stands by for, and roleOf() tells which.
+public class OrderBookShards {
+    public static final String SNAPSHOT_ADDRESS = "orderbook.snapshot";
+    // The symbol whose snapshot could not be fetched
+    public static final String SNAPSHOT_FAILED_ADDRESS = "orderbook.snapshot.failed";
+    public static final String SHARDS_CONFIG_KEY = "orderBookShards";
+
+    // What this node does with a symbol's book
+    public enum Role { OWNER, STANDBY, NONE }
+
+    private final AtomicReferenceArray<KucoinOrderBookVerticle> shards;
+    // Null outside a cluster, where this node owns every symbol
+    private final ClusterMembership membership;
+
+    public OrderBookShards(int count) {
+        this(count, null);
+    }
+
+    public OrderBookShards(int count, ClusterMembership membership) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + count);
+        }
+        this.shards = new AtomicReferenceArray<>(count);
+        this.membership = membership;
+    }
+
+    public ClusterMembership getMembership() {
+        return membership;
+    }
+
+    // Follows the live membership; safe from any thread
+    public Role roleOf(String symbol) {
+        if (membership == null) {
+            return Role.OWNER;
+        }
+        String local = membership.getLocalNode();
+        if (local.equals(membership.ownerOf(symbol))) {
+            return Role.OWNER;
+        }
+        return local.equals(membership.standbyOf(symbol)) ? Role.STANDBY : Role.NONE;
+    }
+
+    public boolean ownsLocally(String symbol) {
+        return roleOf(symbol) == Role.OWNER;
+    }
+
+    // Owned or kept as a standby replica
+    public boolean holdsLocally(String symbol) {
+        return roleOf(symbol) != Role.NONE;
+    }
+
+    public int count() {
+        return shards.length();
+    }
+
+    // String.hashCode is specified by the JLS, so the mapping is stable across runs and JVMs
+    public static int shardOf(String symbol, int count) {
+        int h = symbol.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), count);
+    }
+
+    public static String shardAddress(String base, int shard) {
+        return base + "." + shard;
+    }
+
+    public static String shardAddress(String base, String symbol, int count) {
+        return shardAddress(base, shardOf(symbol, count));
+    }
+
+    void register(int shard, KucoinOrderBookVerticle verticle) {
+        shards.set(shard, verticle);
+    }
+
+    // The started shard with this index, or null while it is still deploying or out of range
+    public KucoinOrderBookVerticle get(int shard) {
+        return shard >= 0 && shard < count() ? shards.get(shard) : null;
+    }
+
+    // The started shard owning the symbol, or null while it is still deploying
+    public KucoinOrderBookVerticle owner(String symbol) {
+        return shards.get(shardOf(symbol, count()));
+    }
+}
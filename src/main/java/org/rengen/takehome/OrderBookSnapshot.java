@@ -0,0 +1,71 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+// A full book image as returned by the REST snapshot endpoint, parsed once where it is fetched
+// and then handed between verticles by reference. Treat the levels as read-only once built.
+// Levels are fixed point at the symbol's precision.
+public class OrderBookSnapshot {
+    private final String symbol;
+    private final long sequence;
+    private final PriceLevels bids;
+    private final PriceLevels asks;
+
+    public OrderBookSnapshot(String symbol, long sequence, PriceLevels bids, PriceLevels asks) {
+        this.symbol = symbol;
+        this.sequence = sequence;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    // Parses the "data" object of a level2 snapshot response
+    public static OrderBookSnapshot fromJson(String symbol, JsonObject data) {
+        long sequence = -1L;
+        Object seqObj = data.getValue("sequence");
+        try {
+            if (seqObj instanceof String) {
+                sequence = Long.parseLong((String) seqObj);
+            } else if (seqObj instanceof Number) {
+                sequence = ((Number) seqObj).longValue();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error parsing sequence in snapshot for " + symbol + ": " + e.getMessage());
+        }
+        SymbolPrecision precision = SymbolPrecision.of(symbol);
+        return new OrderBookSnapshot(symbol, sequence,
+                toLevels(data.getJsonArray("bids"), true, precision),
+                toLevels(data.getJsonArray("asks"), false, precision));
+    }
+
+    private static PriceLevels toLevels(JsonArray sideArray, boolean descending, SymbolPrecision precision) {
+        PriceLevels levels = new PriceLevels(descending, sideArray == null ? 1 : sideArray.size(), precision);
+        if (sideArray == null) return levels;
+
+        for (int i = 0; i < sideArray.size(); i++) {
+            JsonArray level = sideArray.getJsonArray(i);
+            if (level != null && level.size() >= 2) {
+                long price = FixedPoint.parse(level.getString(0), precision.getPriceDecimals());
+                long size = FixedPoint.parse(level.getString(1), precision.getSizeDecimals());
+                levels.setScaled(price, size);
+            }
+        }
+        return levels;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public PriceLevels getBids() {
+        return bids;
+    }
+
+    public PriceLevels getAsks() {
+        return asks;
+    }
+}
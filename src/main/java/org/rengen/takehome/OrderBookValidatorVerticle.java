@@ -0,0 +1,106 @@
+package org.rengen.takehome;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Validates every configured book against the exchange in the background. Symbols are visited
+// round robin, one snapshot request per tick, so the REST cost is fixed by maxRequestsPerSecond
+// however many symbols there are. Results go into a bounded per-symbol history that the
+// /validation endpoints read over the event bus.
+public class OrderBookValidatorVerticle extends AbstractVerticle {
+    public static final String HISTORY_ADDRESS = "orderbook.validation.history";
+    private static final long CATCH_UP_POLL_MS = 20;
+    private static final long CATCH_UP_LIMIT_MS = 1000;
+
+    private final OrderBookShards shards;
+    private final Map<String, ValidationHistory> histories = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private int historySize;
+    private int nextSymbol;
+    private boolean inFlight;
+
+    public OrderBookValidatorVerticle(OrderBookShards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void start() {
+        JsonObject validation = config().getJsonObject("validation", new JsonObject());
+        double maxRequestsPerSecond = validation.getDouble("maxRequestsPerSecond", 1.0);
+        historySize = validation.getInteger("historySize", 120);
+        JsonArray configured = config().getJsonArray("symbols", new JsonArray());
+        for (int i = 0; i < configured.size(); i++) {
+            symbols.add(configured.getString(i).toUpperCase());
+        }
+
+        // Reply: the history of one symbol, or the latest result of every symbol for ""
+        vertx.eventBus().<String>localConsumer(HISTORY_ADDRESS, message -> {
+            String symbol = message.body();
+            if (symbol == null || symbol.isEmpty()) {
+                JsonObject latest = new JsonObject();
+                histories.forEach((s, history) -> latest.put(s, history.latest().toJson()));
+                message.reply(latest);
+            } else {
+                ValidationHistory history = histories.get(symbol.toUpperCase());
+                message.reply(history == null ? new JsonArray() : history.toJson());
+            }
+        });
+
+        if (maxRequestsPerSecond <= 0 || symbols.isEmpty()) {
+            System.out.println("Background validation disabled");
+            return;
+        }
+        long intervalMs = Math.max(1, (long) (1000 / maxRequestsPerSecond));
+        vertx.setPeriodic(intervalMs, id -> validateNext());
+        System.out.println("Background validation of " + symbols.size() + " symbols every " + intervalMs + "ms");
+    }
+
+    private void validateNext() {
+        // A slow REST call delays the round instead of letting requests pile up past the budget
+        if (inFlight) {
+            return;
+        }
+        String symbol = symbols.get(nextSymbol);
+        nextSymbol = (nextSymbol + 1) % symbols.size();
+        KucoinOrderBookVerticle owner = shards.owner(symbol);
+        // In a cluster each node validates the books it owns
+        if (owner == null || !shards.ownsLocally(symbol) || owner.getBookView(symbol) == null) {
+            return;
+        }
+
+        inFlight = true;
+        vertx.eventBus().<OrderBookSnapshot>request("orderbook.getSnapshot", symbol, LocalMessageCodec.LOCAL_ONLY, reply -> {
+            if (reply.succeeded()) {
+                compareWhenCaughtUp(owner, symbol, reply.result().body(), System.currentTimeMillis());
+            } else {
+                inFlight = false;
+                System.err.println("Background validation of " + symbol + " failed: " + reply.cause().getMessage());
+            }
+        });
+    }
+
+    // The snapshot may be ahead of the stream we have applied; give the book a moment to reach
+    // the snapshot's sequence so the comparison is like for like
+    private void compareWhenCaughtUp(KucoinOrderBookVerticle owner, String symbol, OrderBookSnapshot official, long receivedAt) {
+        BookView view = owner.getBookView(symbol);
+        long waited = System.currentTimeMillis() - receivedAt;
+        if (view.getSequence() < official.getSequence() && waited < CATCH_UP_LIMIT_MS) {
+            vertx.setTimer(CATCH_UP_POLL_MS, id -> compareWhenCaughtUp(owner, symbol, official, receivedAt));
+            return;
+        }
+        inFlight = false;
+        ValidationResult result = ValidationResult.compare(view, official, System.currentTimeMillis());
+        histories.computeIfAbsent(symbol, k -> new ValidationHistory(historySize)).add(result);
+        if (!result.booksMatch()) {
+            System.out.println("Validation drift on " + symbol + ": bids " + result.getBidsMatchPercentage()
+                    + "%, asks " + result.getAsksMatchPercentage() + "%, " + (result.getBidDiffs() + result.getAskDiffs())
+                    + " differing levels");
+        }
+    }
+}
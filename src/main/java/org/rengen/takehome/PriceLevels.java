@@ -0,0 +1,281 @@
+package org.rengen.takehome;
+
+import java.util.Arrays;
+
+// One side of an order book kept as sorted parallel primitive arrays. Index 0 is always the
+// best price (highest bid / lowest ask). Updates shift entries in place and never box, so once
+// the arrays have grown to the working depth no garbage is created per level.
+//
+// Prices and sizes are fixed point, scaled by the ladder's SymbolPrecision, so price keys match
+// exactly and a size of 0 means the level is gone. The *Scaled methods work on those longs; the
+// double ones convert, rounding to the precision on the way in, for analytics and tests.
+//
+// Running totals of size and notional (price * size) from the best level down are kept
+// alongside, so depth and cost-to-fill questions are answered with a binary search instead of a
+// walk. They are brought up to date lazily, and only from the first level that changed.
+public class PriceLevels {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final boolean descending;
+    private final SymbolPrecision precision;
+    private final int priceDecimals;
+    private final int sizeDecimals;
+    private long[] prices;
+    private long[] sizes;
+    private int size;
+    private long[] cumulativeSizes;
+    private double[] cumulativeNotionals;
+    // Number of leading levels whose running totals are current
+    private int prefixValid;
+
+    public PriceLevels(boolean descending) {
+        this(descending, INITIAL_CAPACITY);
+    }
+
+    public PriceLevels(boolean descending, int initialCapacity) {
+        this(descending, initialCapacity, SymbolPrecision.DEFAULT);
+    }
+
+    public PriceLevels(boolean descending, int initialCapacity, SymbolPrecision precision) {
+        this.descending = descending;
+        this.precision = precision;
+        this.priceDecimals = precision.getPriceDecimals();
+        this.sizeDecimals = precision.getSizeDecimals();
+        int capacity = Math.max(initialCapacity, 1);
+        this.prices = new long[capacity];
+        this.sizes = new long[capacity];
+        this.cumulativeSizes = new long[capacity];
+        this.cumulativeNotionals = new double[capacity];
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public SymbolPrecision getPrecision() {
+        return precision;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long scaledPriceAt(int index) {
+        return prices[index];
+    }
+
+    public long scaledSizeAt(int index) {
+        return sizes[index];
+    }
+
+    public double priceAt(int index) {
+        return FixedPoint.toDouble(prices[index], priceDecimals);
+    }
+
+    public double sizeAt(int index) {
+        return FixedPoint.toDouble(sizes[index], sizeDecimals);
+    }
+
+    // Returns the size resting at the given price, or 0 if there is no such level
+    public double sizeOf(double price) {
+        int idx = indexOf(price);
+        return idx >= 0 ? sizeAt(idx) : 0.0;
+    }
+
+    // Negative when price a sorts ahead of (is better than) price b on this side
+    public int compare(double a, double b) {
+        return descending ? Double.compare(b, a) : Double.compare(a, b);
+    }
+
+    public int compareScaled(long a, long b) {
+        return descending ? Long.compare(b, a) : Long.compare(a, b);
+    }
+
+    public int indexOf(double price) {
+        return indexOfScaled(FixedPoint.fromDouble(price, priceDecimals));
+    }
+
+    // Binary search; same contract as Arrays.binarySearch (-(insertionPoint) - 1 when missing)
+    public int indexOfScaled(long price) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareScaled(prices[mid], price);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    public void set(double price, double levelSize) {
+        setScaled(FixedPoint.fromDouble(price, priceDecimals), FixedPoint.fromDouble(levelSize, sizeDecimals));
+    }
+
+    // Inserts a new level or overwrites the size of an existing one
+    public void setScaled(long price, long levelSize) {
+        int idx = indexOfScaled(price);
+        if (idx >= 0) {
+            sizes[idx] = levelSize;
+            prefixValid = Math.min(prefixValid, idx);
+            return;
+        }
+        int insertAt = -idx - 1;
+        prefixValid = Math.min(prefixValid, insertAt);
+        if (size == prices.length) {
+            grow();
+        }
+        if (insertAt < size) {
+            System.arraycopy(prices, insertAt, prices, insertAt + 1, size - insertAt);
+            System.arraycopy(sizes, insertAt, sizes, insertAt + 1, size - insertAt);
+        }
+        prices[insertAt] = price;
+        sizes[insertAt] = levelSize;
+        size++;
+    }
+
+    public boolean remove(double price) {
+        return removeScaled(FixedPoint.fromDouble(price, priceDecimals));
+    }
+
+    public boolean removeScaled(long price) {
+        int idx = indexOfScaled(price);
+        if (idx < 0) {
+            return false;
+        }
+        prefixValid = Math.min(prefixValid, idx);
+        int tail = size - idx - 1;
+        if (tail > 0) {
+            System.arraycopy(prices, idx + 1, prices, idx, tail);
+            System.arraycopy(sizes, idx + 1, sizes, idx, tail);
+        }
+        size--;
+        return true;
+    }
+
+    // Drops every level beyond the given depth; the worst levels sit at the end so this is O(1)
+    public void truncate(int depth) {
+        if (size > depth) {
+            size = Math.max(depth, 0);
+            prefixValid = Math.min(prefixValid, size);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        prefixValid = 0;
+    }
+
+    // Independent copy sized to the current levels
+    public PriceLevels copy() {
+        PriceLevels copy = new PriceLevels(descending, size, precision);
+        System.arraycopy(prices, 0, copy.prices, 0, size);
+        System.arraycopy(sizes, 0, copy.sizes, 0, size);
+        System.arraycopy(cumulativeSizes, 0, copy.cumulativeSizes, 0, prefixValid);
+        System.arraycopy(cumulativeNotionals, 0, copy.cumulativeNotionals, 0, prefixValid);
+        copy.size = size;
+        copy.prefixValid = prefixValid;
+        return copy;
+    }
+
+    // The same levels at another precision; this ladder itself when it already has that one
+    public PriceLevels withPrecision(SymbolPrecision target) {
+        if (precision.sameAs(target)) {
+            return this;
+        }
+        PriceLevels copy = new PriceLevels(descending, size, target);
+        for (int i = 0; i < size; i++) {
+            copy.setScaled(FixedPoint.rescale(prices[i], priceDecimals, target.getPriceDecimals()),
+                    FixedPoint.rescale(sizes[i], sizeDecimals, target.getSizeDecimals()));
+        }
+        return copy;
+    }
+
+    // Recomputes the running totals from the first changed level on. Mutates, so on a shared
+    // ladder it must run before publication (OrderBook.publishView does); the queries below call
+    // it too but then find nothing to do. Sizes add up exactly; notionals are floating point.
+    public void updatePrefixSums() {
+        long cumulativeSize = prefixValid > 0 ? cumulativeSizes[prefixValid - 1] : 0;
+        double cumulativeNotional = prefixValid > 0 ? cumulativeNotionals[prefixValid - 1] : 0;
+        for (int i = prefixValid; i < size; i++) {
+            cumulativeSize += sizes[i];
+            cumulativeNotional += priceAt(i) * sizeAt(i);
+            cumulativeSizes[i] = cumulativeSize;
+            cumulativeNotionals[i] = cumulativeNotional;
+        }
+        prefixValid = size;
+    }
+
+    // Total size of the best `levels` levels
+    public double cumulativeSize(int levels) {
+        updatePrefixSums();
+        int count = Math.min(levels, size);
+        return count > 0 ? FixedPoint.toDouble(cumulativeSizes[count - 1], sizeDecimals) : 0;
+    }
+
+    // Total price * size of the best `levels` levels
+    public double cumulativeNotional(int levels) {
+        updatePrefixSums();
+        int count = Math.min(levels, size);
+        return count > 0 ? cumulativeNotionals[count - 1] : 0;
+    }
+
+    // How many levels are priced at or better than the limit
+    public int countWithin(double limitPrice) {
+        // A limit between two ticks admits the same levels as the tick just better than it
+        long limit = FixedPoint.fromDouble(limitPrice, priceDecimals);
+        if (compare(FixedPoint.toDouble(limit, priceDecimals), limitPrice) > 0) {
+            limit += descending ? 1 : -1;
+        }
+        int idx = indexOfScaled(limit);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    // Index of the level at which taking `quantity` from the best price down completes, or -1
+    // if the whole side is not enough
+    public int fillIndex(double quantity) {
+        updatePrefixSums();
+        long target = FixedPoint.fromDouble(quantity, sizeDecimals);
+        int lo = 0;
+        int hi = size - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulativeSizes[mid] >= target) {
+                found = mid;
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return found;
+    }
+
+    public void forEach(LevelConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(priceAt(i), sizeAt(i));
+        }
+    }
+
+    private void grow() {
+        int capacity = prices.length << 1;
+        prices = Arrays.copyOf(prices, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        cumulativeSizes = Arrays.copyOf(cumulativeSizes, capacity);
+        cumulativeNotionals = Arrays.copyOf(cumulativeNotionals, capacity);
+    }
+
+    @FunctionalInterface
+    public interface LevelConsumer {
+        void accept(double price, double size);
+    }
+}
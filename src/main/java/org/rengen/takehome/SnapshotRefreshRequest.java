@@ -0,0 +1,35 @@
+package org.rengen.takehome;
+
+// Body of an orderbook.refresh message: asks the REST client for a fresh snapshot of one
+// symbol, or of every configured symbol when no symbol is given. The priority orders queued
+// fetches when the snapshot budget is short: the size of the sequence gap for gap recovery,
+// the recent message count for a resubscribe.
+public class SnapshotRefreshRequest {
+    private final String symbol;
+    private final long priority;
+
+    public SnapshotRefreshRequest(String symbol) {
+        this(symbol, 0);
+    }
+
+    public SnapshotRefreshRequest(String symbol, long priority) {
+        this.symbol = symbol;
+        this.priority = priority;
+    }
+
+    public static SnapshotRefreshRequest allSymbols() {
+        return new SnapshotRefreshRequest(null);
+    }
+
+    public long getPriority() {
+        return priority;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public boolean isAllSymbols() {
+        return symbol == null;
+    }
+}
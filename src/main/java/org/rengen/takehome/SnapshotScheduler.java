@@ -0,0 +1,176 @@
+package org.rengen.takehome;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Queues REST snapshot fetches so a reconnect or a burst of gaps cannot stampede the exchange.
+// Requests for a symbol that is already queued or in flight join that fetch instead of starting
+// another; fetches are paced by a token bucket and capped in concurrency; and when tokens are
+// scarce the queued symbol with the highest priority (largest gap or busiest feed) goes first.
+// A fetch holds its slot until the fetcher completes its handler, so the fetcher must always do
+// so (with a timeout on the request); a fetcher that throws instead fails the fetch.
+// Used from the REST client's event loop only.
+public class SnapshotScheduler {
+
+    @FunctionalInterface
+    public interface Fetcher {
+        void fetch(String symbol, boolean record, Handler<AsyncResult<OrderBookSnapshot>> handler);
+    }
+
+    // Thrown back by the fetcher when the exchange answers 429; the fetch is queued again
+    public static class RateLimitedException extends RuntimeException {
+        public RateLimitedException(String message) {
+            super(message);
+        }
+    }
+
+    private final Vertx vertx;
+    private final Fetcher fetcher;
+    private final double tokensPerNano;
+    private final double burst;
+    private final int maxConcurrent;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, Pending> queued = new LinkedHashMap<>();
+    private final Map<String, Pending> running = new HashMap<>();
+    private double tokens;
+    private long lastRefill;
+    private boolean timerPending;
+
+    public SnapshotScheduler(Vertx vertx, Fetcher fetcher, double requestsPerSecond, int burst, int maxConcurrent) {
+        this(vertx, fetcher, requestsPerSecond, burst, maxConcurrent, System::nanoTime);
+    }
+
+    SnapshotScheduler(Vertx vertx, Fetcher fetcher, double requestsPerSecond, int burst, int maxConcurrent, LongSupplier nanoClock) {
+        if (requestsPerSecond <= 0 || burst < 1 || maxConcurrent < 1) {
+            throw new IllegalArgumentException("Snapshot budget must be positive");
+        }
+        this.vertx = vertx;
+        this.fetcher = fetcher;
+        this.tokensPerNano = requestsPerSecond / 1e9;
+        this.burst = burst;
+        this.maxConcurrent = maxConcurrent;
+        this.nanoClock = nanoClock;
+        this.tokens = burst;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    public int queuedCount() {
+        return queued.size();
+    }
+
+    public int runningCount() {
+        return running.size();
+    }
+
+    // Higher priority is fetched first; record asks for the response to be journaled
+    public void request(String symbol, long priority, boolean record, Handler<AsyncResult<OrderBookSnapshot>> handler) {
+        Pending pending = running.get(symbol);
+        if (pending == null) {
+            pending = queued.get(symbol);
+        }
+        if (pending == null) {
+            pending = new Pending(symbol, nanoClock.getAsLong());
+            queued.put(symbol, pending);
+        }
+        pending.priority = Math.max(pending.priority, priority);
+        pending.record |= record;
+        pending.handlers.add(handler);
+        pump();
+    }
+
+    private void pump() {
+        refill();
+        while (!queued.isEmpty() && running.size() < maxConcurrent && tokens >= 1) {
+            Pending next = takeHighestPriority();
+            tokens -= 1;
+            running.put(next.symbol, next);
+            try {
+                fetcher.fetch(next.symbol, next.record, ar -> complete(next, ar));
+            } catch (RuntimeException e) {
+                complete(next, Future.failedFuture(e));
+            }
+        }
+        if (!queued.isEmpty() && tokens < 1 && !timerPending) {
+            long waitMs = Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano / 1_000_000));
+            timerPending = true;
+            vertx.setTimer(waitMs, id -> {
+                timerPending = false;
+                pump();
+            });
+        }
+    }
+
+    private void complete(Pending pending, AsyncResult<OrderBookSnapshot> result) {
+        if (running.get(pending.symbol) != pending) {
+            // Completed already
+            return;
+        }
+        running.remove(pending.symbol);
+        if (result.failed() && result.cause() instanceof RateLimitedException) {
+            // Back off: spend the bucket and queue the same waiters again
+            System.err.println("Snapshot fetch for " + pending.symbol + " rate limited; requeueing");
+            tokens = Math.min(tokens, 0);
+            Pending merged = queued.remove(pending.symbol);
+            if (merged != null) {
+                pending.priority = Math.max(pending.priority, merged.priority);
+                pending.record |= merged.record;
+                pending.handlers.addAll(merged.handlers);
+            }
+            queued.put(pending.symbol, pending);
+        } else {
+            if (result.succeeded()) {
+                long resyncNanos = nanoClock.getAsLong() - pending.requestedAt;
+                Metrics.get().snapshotDelivered(pending.symbol, resyncNanos);
+                if (pending.handlers.size() > 1) {
+                    System.out.println("Snapshot for " + pending.symbol + " served " + pending.handlers.size()
+                            + " merged requests after " + resyncNanos / 1_000_000 + "ms");
+                }
+            }
+            for (Handler<AsyncResult<OrderBookSnapshot>> handler : pending.handlers) {
+                handler.handle(result);
+            }
+        }
+        pump();
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+
+    // Linear scan; ties go to the longest waiting, which is the first in insertion order
+    private Pending takeHighestPriority() {
+        Pending best = null;
+        for (Pending pending : queued.values()) {
+            if (best == null || pending.priority > best.priority) {
+                best = pending;
+            }
+        }
+        queued.remove(best.symbol);
+        return best;
+    }
+
+    private static class Pending {
+        final String symbol;
+        final long requestedAt;
+        final List<Handler<AsyncResult<OrderBookSnapshot>>> handlers = new ArrayList<>(2);
+        long priority = Long.MIN_VALUE;
+        boolean record;
+
+        Pending(String symbol, long requestedAt) {
+            this.symbol = symbol;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
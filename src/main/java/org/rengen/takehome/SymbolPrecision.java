@@ -0,0 +1,63 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// How many decimals the prices (tick) and sizes (lot) of a symbol are kept to as fixed point.
+// The default covers the finest Kucoin tick, 1e-12, for prices up to about 9.2 million, and sizes
+// to 1e-8 up to about 92 billion; symbols outside that range are given their own precision in
+// the "precision" config block.
+//
+// Configured once at startup, before any book exists, and only read after that.
+public final class SymbolPrecision {
+    public static final SymbolPrecision DEFAULT = new SymbolPrecision(12, 8);
+
+    private static final Map<String, SymbolPrecision> BY_SYMBOL = new ConcurrentHashMap<>();
+
+    private final int priceDecimals;
+    private final int sizeDecimals;
+
+    public SymbolPrecision(int priceDecimals, int sizeDecimals) {
+        if (priceDecimals < 0 || priceDecimals > FixedPoint.MAX_DECIMALS
+                || sizeDecimals < 0 || sizeDecimals > FixedPoint.MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals must be between 0 and " + FixedPoint.MAX_DECIMALS
+                    + ": price " + priceDecimals + ", size " + sizeDecimals);
+        }
+        this.priceDecimals = priceDecimals;
+        this.sizeDecimals = sizeDecimals;
+    }
+
+    public static SymbolPrecision of(String symbol) {
+        return symbol == null ? DEFAULT : BY_SYMBOL.getOrDefault(symbol, DEFAULT);
+    }
+
+    // "precision": {"BTC-USDT": {"price": 1, "size": 8}, ...}; either key may be left out
+    public static void configure(JsonObject config) {
+        JsonObject precision = config.getJsonObject("precision", new JsonObject());
+        for (String symbol : precision.fieldNames()) {
+            JsonObject entry = precision.getJsonObject(symbol);
+            BY_SYMBOL.put(symbol.toUpperCase(), new SymbolPrecision(
+                    entry.getInteger("price", DEFAULT.priceDecimals),
+                    entry.getInteger("size", DEFAULT.sizeDecimals)));
+        }
+    }
+
+    public int getPriceDecimals() {
+        return priceDecimals;
+    }
+
+    public int getSizeDecimals() {
+        return sizeDecimals;
+    }
+
+    public boolean sameAs(SymbolPrecision other) {
+        return priceDecimals == other.priceDecimals && sizeDecimals == other.sizeDecimals;
+    }
+
+    @Override
+    public String toString() {
+        return "price " + priceDecimals + " / size " + sizeDecimals + " decimals";
+    }
+}
@@ -0,0 +1,131 @@
+package org.rengen.takehome;
+
+import java.util.Random;
+
+// The simulator's source of truth for one symbol. Prices are whole ticks, sizes whole lots, so
+// the decimal strings served in snapshots and in level2 messages always agree exactly. Every
+// change gets its own sequence number, like on the exchange, so a snapshot taken at sequence N
+// plus every message after N reproduces the book.
+public class SyntheticBook {
+    private static final int SIZE_SCALE = 4;
+    private static final int MAX_LOTS = 500_000;
+
+    private final String symbol;
+    private final int depth;
+    private final int priceScale;
+    private final Random random;
+    private final PriceLevels bids;
+    private final PriceLevels asks;
+    private long sequence;
+
+    public SyntheticBook(String symbol, int depth, int priceScale) {
+        this.symbol = symbol;
+        this.depth = Math.max(depth, 2);
+        this.priceScale = priceScale;
+        // Ladders in whole ticks and lots
+        SymbolPrecision units = new SymbolPrecision(0, 0);
+        this.bids = new PriceLevels(true, this.depth * 2, units);
+        this.asks = new PriceLevels(false, this.depth * 2, units);
+        // Seeded from the symbol so that every run builds the same books
+        this.random = new Random(symbol.hashCode());
+        this.sequence = 1_000_000L + random.nextInt(1_000_000);
+
+        long midTicks = 10_000 + Math.floorMod(symbol.hashCode(), 90_000);
+        for (int k = 1; k <= this.depth; k++) {
+            bids.setScaled(midTicks - k, randomLots());
+            asks.setScaled(midTicks + k, randomLots());
+        }
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Mutates the book with changeCount changes and returns them as a /market/level2 frame
+    public String nextMessage(int changeCount, long timeMs) {
+        StringBuilder bidChanges = new StringBuilder();
+        StringBuilder askChanges = new StringBuilder();
+        long sequenceStart = sequence + 1;
+        for (int i = 0; i < changeCount; i++) {
+            nextChange(bidChanges, askChanges);
+        }
+        return "{\"type\":\"message\",\"topic\":\"/market/level2:" + symbol + "\",\"subject\":\"trade.l2update\","
+                + "\"data\":{\"changes\":{\"asks\":[" + askChanges + "],\"bids\":[" + bidChanges + "]},"
+                + "\"sequenceEnd\":" + sequence + ",\"sequenceStart\":" + sequenceStart
+                + ",\"symbol\":\"" + symbol + "\",\"time\":" + timeMs + "}}";
+    }
+
+    // Same shape as the level2_20 REST response
+    public String snapshotJson(int levels, long timeMs) {
+        StringBuilder sb = new StringBuilder(128 + levels * 64);
+        sb.append("{\"code\":\"200000\",\"data\":{\"time\":").append(timeMs)
+                .append(",\"sequence\":\"").append(sequence).append("\",\"bids\":[");
+        appendLevels(sb, bids, levels);
+        sb.append("],\"asks\":[");
+        appendLevels(sb, asks, levels);
+        sb.append("]}}");
+        return sb.toString();
+    }
+
+    private void nextChange(StringBuilder bidChanges, StringBuilder askChanges) {
+        boolean bidSide = random.nextBoolean();
+        PriceLevels side = bidSide ? bids : asks;
+        PriceLevels other = bidSide ? asks : bids;
+        int roll = random.nextInt(10);
+
+        long tick;
+        long lots;
+        if (side.size() > depth || (roll < 3 && side.size() > depth / 2)) {
+            // Delete: trim the worst level when over depth, otherwise take out one near the touch
+            int index = side.size() > depth ? side.size() - 1 : nearTouchIndex(side.size());
+            tick = side.scaledPriceAt(index);
+            lots = 0;
+            side.removeScaled(tick);
+        } else if (roll < 6 || side.size() <= depth / 2) {
+            // Insert relative to the opposite touch so the spread stays tight and the sides never cross
+            long otherBest = other.scaledPriceAt(0);
+            long offset = 1 + nearTouchIndex(depth);
+            tick = bidSide ? otherBest - offset : otherBest + offset;
+            lots = randomLots();
+            side.setScaled(tick, lots);
+        } else {
+            tick = side.scaledPriceAt(nearTouchIndex(side.size()));
+            lots = randomLots();
+            side.setScaled(tick, lots);
+        }
+
+        sequence++;
+        StringBuilder out = bidSide ? bidChanges : askChanges;
+        if (out.length() > 0) {
+            out.append(',');
+        }
+        out.append("[\"");
+        FixedPoint.format(out, tick, priceScale).append("\",\"");
+        FixedPoint.format(out, lots, SIZE_SCALE).append("\",\"").append(sequence).append("\"]");
+    }
+
+    // Activity concentrates at the top of the book
+    private int nearTouchIndex(int size) {
+        return Math.min(size - 1, (int) Math.abs(random.nextGaussian() * 5));
+    }
+
+    private long randomLots() {
+        return 1 + random.nextInt(MAX_LOTS);
+    }
+
+    private void appendLevels(StringBuilder sb, PriceLevels side, int levels) {
+        int count = Math.min(levels, side.size());
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("[\"");
+            FixedPoint.format(sb, side.scaledPriceAt(i), priceScale).append("\",\"");
+            FixedPoint.format(sb, side.scaledSizeAt(i), SIZE_SCALE).append("\"]");
+        }
+    }
+}
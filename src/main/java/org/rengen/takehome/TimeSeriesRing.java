@@ -0,0 +1,99 @@
+package org.rengen.takehome;
+
+import java.nio.ByteBuffer;
+
+// Fixed-capacity ring of time-stamped entries stored column by column in one direct buffer, so
+// history costs no heap objects and no GC work however much of it is kept. Entries are addressed
+// by their absolute index (0 for the first ever appended); the oldest are overwritten once the
+// ring is full. Times never go backwards, which makes floor/ceiling lookups a binary search.
+// Not thread safe: written and read on the owning shard's event loop.
+public abstract class TimeSeriesRing {
+    protected final ByteBuffer data;
+    protected final int capacity;
+    private long written;
+    private long lastTime = Long.MIN_VALUE;
+
+    // entryBytes excludes the 8-byte time column, which always comes first
+    protected TimeSeriesRing(int capacity, int entryBytes) {
+        long total = (long) capacity * (8 + entryBytes);
+        if (capacity < 1 || total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Time series capacity out of range: " + capacity + " x " + (8 + entryBytes) + " bytes");
+        }
+        this.capacity = capacity;
+        this.data = ByteBuffer.allocateDirect((int) total);
+    }
+
+    // Offset of a column that starts after `preceding` bytes per entry (the time column included)
+    protected int columnBase(int preceding) {
+        return capacity * preceding;
+    }
+
+    // Claims the next slot and stamps it; a clock step backwards is clamped to the last time
+    protected int append(long time) {
+        lastTime = Math.max(lastTime, time);
+        int slot = (int) (written % capacity);
+        data.putLong(slot * 8, lastTime);
+        written++;
+        return slot;
+    }
+
+    protected int slot(long index) {
+        return (int) (index % capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Absolute index of the oldest entry still held
+    public long oldest() {
+        return Math.max(0, written - capacity);
+    }
+
+    // One past the newest entry
+    public long end() {
+        return written;
+    }
+
+    public boolean contains(long index) {
+        return index >= oldest() && index < written;
+    }
+
+    public long timeAt(long index) {
+        return data.getLong(slot(index) * 8);
+    }
+
+    // Newest entry at or before time, or -1 if every held entry is later
+    public long floor(long time) {
+        long lo = oldest();
+        long hi = written - 1;
+        long found = -1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timeAt(mid) <= time) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // Oldest entry at or after time, or end() if there is none
+    public long ceiling(long time) {
+        long lo = oldest();
+        long hi = written - 1;
+        long found = written;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timeAt(mid) >= time) {
+                found = mid;
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return found;
+    }
+}
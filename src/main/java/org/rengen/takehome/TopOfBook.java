@@ -0,0 +1,154 @@
+package org.rengen.takehome;
+
+// Immutable best bid/ask of one book. OrderBook republishes a new instance through a volatile
+// field only when the touch changes, so readers on any thread get a consistent L1 without
+// hopping onto the owning shard or looking at the ladders.
+//
+// Prices and sizes are the book's fixed-point values at its precision, compared and written
+// exactly; the spread is their exact difference and the mid is exact to one extra decimal.
+public final class TopOfBook {
+    // Price of an empty side
+    public static final long NONE = Long.MIN_VALUE;
+    public static final TopOfBook EMPTY = new TopOfBook(NONE, 0, NONE, 0, SymbolPrecision.DEFAULT, -1, false);
+
+    private final long bidPrice;
+    private final long bidSize;
+    private final long askPrice;
+    private final long askSize;
+    private final SymbolPrecision precision;
+    private final long sequence;
+    private final boolean stale;
+    private String json;
+
+    public TopOfBook(long bidPrice, long bidSize, long askPrice, long askSize, SymbolPrecision precision, long sequence) {
+        this(bidPrice, bidSize, askPrice, askSize, precision, sequence, false);
+    }
+
+    public TopOfBook(long bidPrice, long bidSize, long askPrice, long askSize, SymbolPrecision precision, long sequence, boolean stale) {
+        this.bidPrice = bidPrice;
+        this.bidSize = bidSize;
+        this.askPrice = askPrice;
+        this.askSize = askSize;
+        this.precision = precision;
+        this.sequence = sequence;
+        this.stale = stale;
+    }
+
+    public long getScaledBidPrice() {
+        return bidPrice;
+    }
+
+    public long getScaledBidSize() {
+        return bidSize;
+    }
+
+    public long getScaledAskPrice() {
+        return askPrice;
+    }
+
+    public long getScaledAskSize() {
+        return askSize;
+    }
+
+    public SymbolPrecision getPrecision() {
+        return precision;
+    }
+
+    // NaN while that side is empty
+    public double getBidPrice() {
+        return bidPrice == NONE ? Double.NaN : FixedPoint.toDouble(bidPrice, precision.getPriceDecimals());
+    }
+
+    public double getBidSize() {
+        return FixedPoint.toDouble(bidSize, precision.getSizeDecimals());
+    }
+
+    public double getAskPrice() {
+        return askPrice == NONE ? Double.NaN : FixedPoint.toDouble(askPrice, precision.getPriceDecimals());
+    }
+
+    public double getAskSize() {
+        return FixedPoint.toDouble(askSize, precision.getSizeDecimals());
+    }
+
+    // Sequence of the update that last moved the touch
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Restored from a checkpoint and not yet confirmed by the live feed or a snapshot
+    public boolean isStale() {
+        return stale;
+    }
+
+    private boolean twoSided() {
+        return bidPrice != NONE && askPrice != NONE;
+    }
+
+    // NaN while either side is empty
+    public double getMid() {
+        return twoSided() ? (getBidPrice() + getAskPrice()) / 2 : Double.NaN;
+    }
+
+    public double getSpread() {
+        return twoSided() ? FixedPoint.toDouble(askPrice - bidPrice, precision.getPriceDecimals()) : Double.NaN;
+    }
+
+    public boolean sameTouch(long bidPrice, long bidSize, long askPrice, long askSize) {
+        return this.bidPrice == bidPrice && this.bidSize == bidSize && this.askPrice == askPrice && this.askSize == askSize;
+    }
+
+    // Encoded once per instance; the racy lazy init is safe because String is immutable
+    public String toJson() {
+        String encoded = json;
+        if (encoded == null) {
+            int priceDecimals = precision.getPriceDecimals();
+            int sizeDecimals = precision.getSizeDecimals();
+            StringBuilder sb = new StringBuilder(160);
+            sb.append("{\"sequence\":").append(sequence);
+            appendPrice(sb, "bidPrice", bidPrice, priceDecimals);
+            sb.append(",\"bidSize\":");
+            FixedPoint.format(sb, bidSize, sizeDecimals);
+            appendPrice(sb, "askPrice", askPrice, priceDecimals);
+            sb.append(",\"askSize\":");
+            FixedPoint.format(sb, askSize, sizeDecimals);
+            sb.append(",\"mid\":");
+            if (twoSided()) {
+                appendMid(sb, priceDecimals);
+            } else {
+                sb.append("null");
+            }
+            appendPrice(sb, "spread", twoSided() ? askPrice - bidPrice : NONE, priceDecimals);
+            if (stale) {
+                sb.append(",\"stale\":true");
+            }
+            sb.append('}');
+            encoded = sb.toString();
+            json = encoded;
+        }
+        return encoded;
+    }
+
+    private static void appendPrice(StringBuilder sb, String name, long value, int decimals) {
+        sb.append(",\"").append(name).append("\":");
+        if (value == NONE) {
+            sb.append("null");
+        } else {
+            FixedPoint.format(sb, value, decimals);
+        }
+    }
+
+    // Half the sum without overflowing; an odd sum ends in a 5 one decimal further out, unless
+    // that would not fit, where it is rounded half up instead
+    private void appendMid(StringBuilder sb, int decimals) {
+        long half = (bidPrice >> 1) + (askPrice >> 1) + (bidPrice & askPrice & 1);
+        boolean odd = ((bidPrice ^ askPrice) & 1) != 0;
+        if (!odd) {
+            FixedPoint.format(sb, half, decimals);
+        } else if (decimals < FixedPoint.MAX_DECIMALS && Math.abs(half) < (Long.MAX_VALUE - 5) / 10) {
+            FixedPoint.format(sb, half * 10 + 5, decimals + 1);
+        } else {
+            FixedPoint.format(sb, half + 1, decimals);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.rengen.takehome;
+
+// Bounded per-symbol buffer for level2 updates that arrive while the book cannot take them
+// (before the first snapshot or across a sequence gap). Entries are kept ordered by
+// sequenceStart in a fixed ring: updates normally arrive in order and are appended at the
+// tail, a late one is slotted in by shifting a few entries, and nothing is ever re-sorted.
+// When the ring is full the overflow policy decides what gives.
+//
+// The buffer owns what it holds: an update it drops, evicts or clears goes back to its pool.
+public class UpdateRingBuffer {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public enum OverflowPolicy {
+        // Evict the oldest buffered update; replay then stops at the hole and a resnapshot follows
+        DROP_OLDEST,
+        // Throw away everything buffered and rely on the next snapshot alone
+        CLEAR;
+
+        public static OverflowPolicy fromConfig(String value) {
+            if (value == null) {
+                return DROP_OLDEST;
+            }
+            switch (value) {
+                case "dropOldest":
+                    return DROP_OLDEST;
+                case "clear":
+                    return CLEAR;
+                default:
+                    throw new IllegalArgumentException("Unknown gap buffer overflow policy: " + value);
+            }
+        }
+    }
+
+    private final Level2Update[] ring;
+    private final OverflowPolicy overflowPolicy;
+    private int head;
+    private int size;
+    private long dropped;
+
+    public UpdateRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Gap buffer capacity must be positive: " + capacity);
+        }
+        this.ring = new Level2Update[capacity];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    // Updates lost to overflow since the buffer was last empty
+    public long getDropped() {
+        return dropped;
+    }
+
+    // Returns true if the update is now buffered, false if it is not kept: it duplicates one
+    // already buffered, or the ring is full under DROP_OLDEST and it is older than everything in it.
+    // The caller still owns an update that was not kept.
+    public boolean add(Level2Update update) {
+        long start = update.getSequenceStart();
+        int pos = size;
+        while (pos > 0) {
+            long previous = at(pos - 1).getSequenceStart();
+            if (previous == start) {
+                return false;
+            }
+            if (previous < start) {
+                break;
+            }
+            pos--;
+        }
+        if (size == ring.length) {
+            if (overflowPolicy == OverflowPolicy.CLEAR) {
+                dropped += size;
+                clearSlots();
+                pos = 0;
+            } else {
+                if (pos == 0) {
+                    // Older than everything buffered; this one is the oldest and goes
+                    dropped++;
+                    return false;
+                }
+                ring[head].release();
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                pos--;
+                dropped++;
+            }
+        }
+        for (int i = size; i > pos; i--) {
+            ring[index(i)] = ring[index(i - 1)];
+        }
+        ring[index(pos)] = update;
+        size++;
+        return true;
+    }
+
+    public Level2Update peek() {
+        return size == 0 ? null : ring[head];
+    }
+
+    public Level2Update poll() {
+        if (size == 0) {
+            return null;
+        }
+        Level2Update update = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        if (--size == 0) {
+            dropped = 0;
+        }
+        return update;
+    }
+
+    public void clear() {
+        clearSlots();
+        dropped = 0;
+    }
+
+    private void clearSlots() {
+        for (int i = 0; i < size; i++) {
+            ring[index(i)].release();
+            ring[index(i)] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+
+    private Level2Update at(int offset) {
+        return ring[index(offset)];
+    }
+
+    private int index(int offset) {
+        return (head + offset) % ring.length;
+    }
+}
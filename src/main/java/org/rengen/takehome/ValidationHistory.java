@@ -0,0 +1,44 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonArray;
+
+// Rolling window of the most recent validation results for one symbol; the oldest entry is
+// overwritten once the window is full
+public class ValidationHistory {
+    private final ValidationResult[] results;
+    private int next;
+    private int size;
+
+    public ValidationHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Validation history size must be positive: " + capacity);
+        }
+        this.results = new ValidationResult[capacity];
+    }
+
+    public void add(ValidationResult result) {
+        results[next] = result;
+        next = (next + 1) % results.length;
+        if (size < results.length) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ValidationResult latest() {
+        return size == 0 ? null : results[(next - 1 + results.length) % results.length];
+    }
+
+    // Oldest first
+    public JsonArray toJson() {
+        JsonArray array = new JsonArray();
+        int start = (next - size + results.length) % results.length;
+        for (int i = 0; i < size; i++) {
+            array.add(results[(start + i) % results.length].toJson());
+        }
+        return array;
+    }
+}
@@ -0,0 +1,69 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonObject;
+
+// One background validation of a book against the exchange's level2_20 snapshot
+public final class ValidationResult {
+    private final long timestamp;
+    private final long snapshotSequence;
+    private final long bookSequence;
+    private final double bidsMatchPercentage;
+    private final double asksMatchPercentage;
+    private final int bidDiffs;
+    private final int askDiffs;
+
+    public ValidationResult(long timestamp, long snapshotSequence, long bookSequence,
+                            double bidsMatchPercentage, double asksMatchPercentage, int bidDiffs, int askDiffs) {
+        this.timestamp = timestamp;
+        this.snapshotSequence = snapshotSequence;
+        this.bookSequence = bookSequence;
+        this.bidsMatchPercentage = bidsMatchPercentage;
+        this.asksMatchPercentage = asksMatchPercentage;
+        this.bidDiffs = bidDiffs;
+        this.askDiffs = askDiffs;
+    }
+
+    public static ValidationResult compare(BookView book, OrderBookSnapshot official, long timestamp) {
+        return new ValidationResult(timestamp, official.getSequence(), book.getSequence(),
+                OrderBookComparator.calculateMatchPercentage(book.getBids(), official.getBids()),
+                OrderBookComparator.calculateMatchPercentage(book.getAsks(), official.getAsks()),
+                OrderBookComparator.countSideDiffs(book.getBids(), official.getBids()),
+                OrderBookComparator.countSideDiffs(book.getAsks(), official.getAsks()));
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getBidsMatchPercentage() {
+        return bidsMatchPercentage;
+    }
+
+    public double getAsksMatchPercentage() {
+        return asksMatchPercentage;
+    }
+
+    public int getBidDiffs() {
+        return bidDiffs;
+    }
+
+    public int getAskDiffs() {
+        return askDiffs;
+    }
+
+    public boolean booksMatch() {
+        return bidDiffs == 0 && askDiffs == 0;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("timestamp", timestamp)
+                .put("snapshotSequence", snapshotSequence)
+                .put("bookSequence", bookSequence)
+                .put("bids_match_percentage", bidsMatchPercentage)
+                .put("asks_match_percentage", asksMatchPercentage)
+                .put("bidDiffs", bidDiffs)
+                .put("askDiffs", askDiffs)
+                .put("booksMatch", booksMatch());
+    }
+}
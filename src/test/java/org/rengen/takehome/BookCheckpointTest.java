@@ -0,0 +1,107 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookCheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testBooksRoundTrip() throws Exception {
+        Map<String, BookView> views = new TreeMap<>();
+        views.put("BTC-USDT", book(100, 100.0, 1.5, 101.0, 2.0).publishView());
+        views.put("ETH-USDT", book(7, 10.0, 3.0, 11.0, 4.0).publishView());
+        Path file = BookCheckpoint.file(directory, 0);
+
+        BookCheckpoint.write(file, views);
+
+        assertEquals(List.of(file), BookCheckpoint.files(directory));
+        List<OrderBookSnapshot> restored = BookCheckpoint.read(file);
+        assertEquals(2, restored.size());
+        OrderBookSnapshot btc = restored.get(0);
+        assertEquals("BTC-USDT", btc.getSymbol());
+        assertEquals(100, btc.getSequence());
+        assertEquals(1, btc.getBids().size());
+        assertEquals(100.0, btc.getBids().priceAt(0));
+        assertEquals(1.5, btc.getBids().sizeAt(0));
+        assertEquals(101.0, btc.getAsks().priceAt(0));
+        assertEquals("ETH-USDT", restored.get(1).getSymbol());
+        assertEquals(7, restored.get(1).getSequence());
+    }
+
+    @Test
+    void testRewriteReplacesPreviousCheckpoint() throws Exception {
+        Path file = BookCheckpoint.file(directory, 1);
+        BookCheckpoint.write(file, Map.of("BTC-USDT", book(100, 100.0, 1.5, 101.0, 2.0).publishView()));
+        BookCheckpoint.write(file, Map.of("BTC-USDT", book(200, 99.0, 1.0, 100.0, 1.0).publishView()));
+
+        List<OrderBookSnapshot> restored = BookCheckpoint.read(file);
+        assertEquals(1, restored.size());
+        assertEquals(200, restored.get(0).getSequence());
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+    }
+
+    @Test
+    void testRejectsForeignFile() throws Exception {
+        Path file = BookCheckpoint.file(directory, 0);
+        Files.write(file, new byte[64]);
+        assertThrows(java.io.IOException.class, () -> BookCheckpoint.read(file));
+    }
+
+    @Test
+    void testRestoredBookIsStaleUntilContinued() {
+        OrderBook book = new OrderBook();
+        book.restore(new OrderBookSnapshot("BTC-USDT", 100, side(true, 100.0, 1.5), side(false, 101.0, 2.0)));
+        assertTrue(book.publishView().isStale());
+        assertTrue(book.getTop().isStale());
+        assertTrue(book.getView().toJson(10, false).contains("\"stale\":true"));
+
+        Level2Update gapped = new Level2Update();
+        gapped.setSequenceStart(150);
+        gapped.setSequenceEnd(150);
+        gapped.getBids().add(100.0, 3.0, 150);
+        book.applyIncremental(gapped);
+        assertTrue(book.isStale());
+
+        Level2Update next = new Level2Update();
+        next.setSequenceStart(101);
+        next.setSequenceEnd(101);
+        next.getBids().add(100.0, 2.0, 101);
+        book.applyIncremental(next);
+        book.setLastSequence(101);
+        assertFalse(book.publishView().isStale());
+        assertFalse(book.getTop().isStale());
+        assertFalse(book.getView().toJson(10, false).contains("stale"));
+    }
+
+    @Test
+    void testSnapshotClearsStale() {
+        OrderBook book = new OrderBook();
+        book.restore(new OrderBookSnapshot("BTC-USDT", 100, new PriceLevels(true), new PriceLevels(false)));
+        assertTrue(book.isStale());
+        book.applySnapshot(new OrderBookSnapshot("BTC-USDT", 500, new PriceLevels(true), new PriceLevels(false)));
+        assertFalse(book.isStale());
+    }
+
+    private static OrderBook book(long sequence, double bid, double bidSize, double ask, double askSize) {
+        OrderBook book = new OrderBook();
+        book.applySnapshot(new OrderBookSnapshot("BTC-USDT", sequence, side(true, bid, bidSize), side(false, ask, askSize)));
+        return book;
+    }
+
+    private static PriceLevels side(boolean descending, double price, double size) {
+        PriceLevels levels = new PriceLevels(descending);
+        levels.set(price, size);
+        return levels;
+    }
+}
@@ -0,0 +1,139 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookHistoryTest {
+
+    private OrderBook book;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrderBook();
+        PriceLevels bids = new PriceLevels(true);
+        bids.set(100.0, 1.0);
+        bids.set(99.0, 2.0);
+        PriceLevels asks = new PriceLevels(false);
+        asks.set(101.0, 3.0);
+        book.applySnapshot(new OrderBookSnapshot("BTC-USDT", 10, bids, asks));
+    }
+
+    @Test
+    void testSampleAtReturnsStateInEffect() {
+        BookHistory history = new BookHistory(16, 1, 0);
+        history.sample(1000, book);
+        apply(11, 100.0, 5.0);
+        history.sample(2000, book);
+
+        assertNull(history.sampleAt(999));
+        assertEquals("{\"type\":\"sample\",\"ts\":1000,\"sequence\":10,\"bids\":[[100.0,1.0]],\"asks\":[[101.0,3.0]]}",
+                history.sampleAt(1500));
+        assertTrue(history.sampleAt(5000).contains("\"sequence\":11"));
+    }
+
+    @Test
+    void testUnchangedBookIsNotSampledAgain() {
+        BookHistory history = new BookHistory(16, 5, 0);
+        history.sample(1000, book);
+        history.sample(2000, book);
+        history.sample(3000, book);
+        assertEquals(1, history.getSamples().end());
+        assertTrue(history.sampleAt(2500).contains("\"ts\":1000"));
+    }
+
+    @Test
+    void testOldestSamplesAreOverwritten() {
+        BookHistory history = new BookHistory(4, 5, 0);
+        for (int i = 0; i < 10; i++) {
+            apply(11 + i, 100.0, 1.0 + i);
+            history.sample(1000L * i, book);
+        }
+        BookSampleRing samples = history.getSamples();
+        assertEquals(6, samples.oldest());
+        assertEquals(10, samples.end());
+        assertNull(history.sampleAt(5999));
+        assertTrue(history.sampleAt(7500).contains("\"sequence\":18"));
+        assertEquals(9, samples.floor(Long.MAX_VALUE));
+        assertEquals(6, samples.ceiling(0));
+    }
+
+    @Test
+    void testClockStepBackIsClamped() {
+        BookHistory history = new BookHistory(8, 5, 0);
+        history.sample(2000, book);
+        apply(11, 100.0, 5.0);
+        history.sample(1000, book);
+        assertEquals(2000, history.getSamples().timeAt(1));
+    }
+
+    @Test
+    void testRangeMergesDeltasInTimeOrder() {
+        BookHistory history = new BookHistory(16, 5, 64);
+        history.sample(1000, book);
+        Level2Update update = update(11, 100.0, 0.0);
+        history.recordChanges(1500, book.getLastSequence(), update);
+        book.applyIncremental(update);
+        book.setLastSequence(11);
+        history.sample(2000, book);
+        Level2Update overlapping = update(11, 99.0, 7.0);
+        history.recordChanges(2500, book.getLastSequence(), overlapping);
+
+        List<String> lines = drain(history.range(0, Long.MAX_VALUE, true));
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"type\":\"sample\",\"ts\":1000"));
+        assertEquals("{\"type\":\"delta\",\"ts\":1500,\"sequence\":11,\"side\":\"bid\",\"price\":100.0,\"size\":0.0}", lines.get(1));
+        assertTrue(lines.get(2).startsWith("{\"type\":\"sample\",\"ts\":2000"));
+
+        assertEquals(2, drain(history.range(0, Long.MAX_VALUE, false)).size());
+        assertEquals(1, drain(history.range(1200, 1800, true)).size());
+    }
+
+    @Test
+    void testSamplesAndDeltasAreWrittenInExactDecimals() {
+        PriceLevels bids = new PriceLevels(true);
+        bids.setScaled(FixedPoint.parse("0.000012", 12), FixedPoint.parse("30000000.1", 8));
+        PriceLevels asks = new PriceLevels(false);
+        asks.setScaled(FixedPoint.parse("0.000013", 12), FixedPoint.parse("0.3", 8));
+        book.applySnapshot(new OrderBookSnapshot("SHIB-USDT", 20, bids, asks));
+        BookHistory history = new BookHistory(16, 1, 16);
+        history.sample(1000, book);
+        assertEquals("{\"type\":\"sample\",\"ts\":1000,\"sequence\":20,\"bids\":[[0.000012,30000000.1]],\"asks\":[[0.000013,0.3]]}",
+                history.sampleAt(1000));
+
+        Level2Update update = new Level2Update();
+        update.setSequenceStart(21);
+        update.setSequenceEnd(21);
+        update.getAsks().addScaled(FixedPoint.parse("0.0000125", 12), FixedPoint.parse("0.1", 8), 21);
+        history.recordChanges(1500, 20, update);
+        List<String> lines = drain(history.range(1500, 1500, true));
+        assertEquals(List.of("{\"type\":\"delta\",\"ts\":1500,\"sequence\":21,\"side\":\"ask\",\"price\":0.0000125,\"size\":0.1}"), lines);
+    }
+
+    private void apply(long sequence, double bidPrice, double bidSize) {
+        book.applyIncremental(update(sequence, bidPrice, bidSize));
+        book.setLastSequence(sequence);
+    }
+
+    private static Level2Update update(long sequence, double bidPrice, double bidSize) {
+        Level2Update update = new Level2Update();
+        update.setSymbol("BTC-USDT");
+        update.setSequenceStart(sequence);
+        update.setSequenceEnd(sequence);
+        update.getBids().add(bidPrice, bidSize, sequence);
+        return update;
+    }
+
+    private static List<String> drain(BookHistory.Cursor cursor) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        while (cursor.appendNext(sb)) {
+            lines.add(sb.toString());
+            sb.setLength(0);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,90 @@
+package org.rengen.takehome;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookReplicationTest {
+
+    @Test
+    void testRecordsRoundTripInOrder() {
+        PriceLevels bids = new PriceLevels(true);
+        bids.set(100.0, 1.5);
+        bids.set(99.5, 2.0);
+        PriceLevels asks = new PriceLevels(false);
+        asks.set(100.5, 3.0);
+        Level2Update update = new Level2Update();
+        update.setSymbol("BTC-USDT");
+        update.setSequenceStart(11);
+        update.setSequenceEnd(12);
+        update.setTime(1700000000000L);
+        update.getBids().add(100.0, 0.0, 11);
+        update.getAsks().add(100.25, 4.0, 12);
+
+        Buffer buffer = Buffer.buffer(64);
+        BookReplication.appendSnapshot(buffer, "BTC-USDT", 10, bids, asks);
+        BookReplication.appendUpdate(buffer, update);
+        List<Object> records = BookReplication.decode(buffer);
+
+        assertEquals(2, records.size());
+        OrderBookSnapshot snapshot = (OrderBookSnapshot) records.get(0);
+        assertEquals("BTC-USDT", snapshot.getSymbol());
+        assertEquals(10, snapshot.getSequence());
+        assertEquals(2, snapshot.getBids().size());
+        assertEquals(99.5, snapshot.getBids().priceAt(1));
+        assertEquals(3.0, snapshot.getAsks().sizeAt(0));
+
+        Level2Update decoded = (Level2Update) records.get(1);
+        assertEquals("BTC-USDT", decoded.getSymbol());
+        assertEquals(11, decoded.getSequenceStart());
+        assertEquals(12, decoded.getSequenceEnd());
+        assertEquals(1700000000000L, decoded.getTime());
+        assertEquals(1, decoded.getBids().size());
+        assertEquals(0.0, decoded.getBids().sizeAt(0));
+        assertEquals(100.25, decoded.getAsks().priceAt(0));
+        assertEquals(12, decoded.getAsks().sequenceAt(0));
+    }
+
+    @Test
+    void testReplayingRecordsTwiceLeavesTheSameBook() {
+        PriceLevels bids = new PriceLevels(true);
+        bids.set(100.0, 1.0);
+        PriceLevels asks = new PriceLevels(false);
+        asks.set(101.0, 1.0);
+        Level2Update update = new Level2Update();
+        update.setSymbol("ETH-USDT");
+        update.setSequenceStart(6);
+        update.setSequenceEnd(6);
+        update.getBids().add(100.5, 2.0, 6);
+        Buffer buffer = Buffer.buffer(64);
+        BookReplication.appendSnapshot(buffer, "ETH-USDT", 5, bids, asks);
+        BookReplication.appendUpdate(buffer, update);
+
+        OrderBook book = new OrderBook();
+        for (int pass = 0; pass < 2; pass++) {
+            for (Object record : BookReplication.decode(buffer)) {
+                if (record instanceof Level2Update) {
+                    Level2Update decoded = (Level2Update) record;
+                    if (decoded.getSequenceEnd() > book.getLastSequence()) {
+                        book.applyIncremental(decoded);
+                        book.setLastSequence(decoded.getSequenceEnd());
+                    }
+                } else if (((OrderBookSnapshot) record).getSequence() > book.getLastSequence()) {
+                    book.applySnapshot((OrderBookSnapshot) record);
+                }
+            }
+        }
+        assertEquals(6, book.getLastSequence());
+        assertEquals(2, book.getBids().size());
+        assertEquals(100.5, book.getBids().priceAt(0));
+    }
+
+    @Test
+    void testRejectsUnknownRecordType() {
+        Buffer buffer = Buffer.buffer(8).appendByte((byte) 9).appendShort((short) 1).appendBytes(new byte[]{'X'});
+        assertThrows(IllegalArgumentException.class, () -> BookReplication.decode(buffer));
+    }
+}
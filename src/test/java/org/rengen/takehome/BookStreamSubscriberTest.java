@@ -0,0 +1,91 @@
+package org.rengen.takehome;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.*;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BookStreamSubscriberTest {
+
+    private ServerWebSocket socket;
+    private OrderBook book;
+    private BookStreamSubscriber subscriber;
+
+    @BeforeEach
+    void setUp() {
+        socket = mock(ServerWebSocket.class);
+        book = new OrderBook();
+        book.applySnapshot(new JsonObject()
+                .put("sequence", "100")
+                .put("bids", new JsonArray()
+                        .add(new JsonArray().add("100.0").add("1.0"))
+                        .add(new JsonArray().add("99.0").add("2.0")))
+                .put("asks", new JsonArray()
+                        .add(new JsonArray().add("101.0").add("3.0"))));
+        subscriber = new BookStreamSubscriber("BTC-USDT", socket, 20, 0, mock(Vertx.class), mock(Context.class));
+    }
+
+    private void update(long sequence, String side, String price, String size) {
+        book.applyIncremental(new JsonObject()
+                .put(side, new JsonArray().add(new JsonArray().add(price).add(size).add(String.valueOf(sequence)))));
+        book.setLastSequence(sequence);
+    }
+
+    private List<String> sent() {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(socket, atLeastOnce()).writeTextMessage(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    void testSnapshotThenDeltas() {
+        subscriber.onBookChanged(book);
+        update(101, "bids", "100.0", "0");
+        update(102, "asks", "101.0", "4.0");
+        subscriber.onBookChanged(book);
+
+        List<String> messages = sent();
+        assertEquals(2, messages.size());
+
+        JsonObject snapshot = new JsonObject(messages.get(0));
+        assertEquals("snapshot", snapshot.getString("type"));
+        assertEquals(2, snapshot.getJsonArray("bids").size());
+
+        JsonObject delta = new JsonObject(messages.get(1));
+        assertEquals("delta", delta.getString("type"));
+        assertEquals(102L, delta.getLong("sequence"));
+        assertEquals(new JsonArray().add(new JsonArray().add(100.0).add(0.0)), delta.getJsonArray("bids"));
+        assertEquals(new JsonArray().add(new JsonArray().add(101.0).add(4.0)), delta.getJsonArray("asks"));
+    }
+
+    @Test
+    void testSlowConsumerGetsConflatedState() {
+        subscriber.onBookChanged(book);
+
+        when(socket.writeQueueFull()).thenReturn(true);
+        update(101, "bids", "99.5", "1.0");
+        subscriber.onBookChanged(book);
+        update(102, "bids", "99.5", "0");
+        update(103, "bids", "98.0", "5.0");
+        subscriber.onBookChanged(book);
+        assertEquals(1, sent().size());
+
+        // Once the queue drains the next change carries the net result only
+        when(socket.writeQueueFull()).thenReturn(false);
+        subscriber.onBookChanged(book);
+        List<String> messages = sent();
+        assertEquals(2, messages.size());
+        JsonObject delta = new JsonObject(messages.get(1));
+        assertEquals(103L, delta.getLong("sequence"));
+        assertEquals(new JsonArray().add(new JsonArray().add(98.0).add(5.0)), delta.getJsonArray("bids"));
+        assertTrue(delta.getJsonArray("asks").isEmpty());
+    }
+}
@@ -0,0 +1,103 @@
+package org.rengen.takehome;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedJsonWriterTest {
+
+    @Test
+    void testTakeEmptiesTheBuilderForTheNextChunk() {
+        ChunkedJsonWriter writer = new ChunkedJsonWriter();
+        writer.builder().append("{\"a\":1");
+        assertEquals("{\"a\":1", writer.take().toString());
+        assertEquals(0, writer.builder().length());
+
+        writer.builder().append(",\"b\":2}");
+        assertEquals(",\"b\":2}", writer.take().toString());
+    }
+
+    @Test
+    void testChunkFullOnceAChunkHasBeenWritten() {
+        ChunkedJsonWriter writer = new ChunkedJsonWriter();
+        StringBuilder sb = writer.builder();
+        while (sb.length() < ChunkedJsonWriter.CHUNK_SIZE - 1) {
+            sb.append('0');
+        }
+        assertFalse(writer.chunkFull());
+        // Chunks may run past CHUNK_SIZE; the builder grows and take() copies it all
+        sb.append("01".repeat(ChunkedJsonWriter.CHUNK_SIZE));
+        assertTrue(writer.chunkFull());
+        assertEquals(ChunkedJsonWriter.CHUNK_SIZE * 3 - 1, writer.take().length());
+        assertFalse(writer.chunkFull());
+    }
+
+    @Test
+    void testStringsAreEscapedToAscii() {
+        StringBuilder sb = new StringBuilder();
+        ChunkedJsonWriter.appendString(sb, "BTC-USDT");
+        sb.append(',');
+        ChunkedJsonWriter.appendString(sb, "a\"b\\c\n\u00e9");
+        assertEquals("\"BTC-USDT\",\"a\\\"b\\\\c\\u000a\\u00e9\"", sb.toString());
+    }
+
+    @Test
+    void testBookViewWritesTheCompactEncoding() {
+        OrderBook book = new OrderBook();
+        book.applySnapshot(new JsonObject()
+                .put("sequence", "42")
+                .put("bids", new JsonArray().add(new JsonArray().add("100.5").add("2.0")).add(new JsonArray().add("100.0").add("1.25")))
+                .put("asks", new JsonArray().add(new JsonArray().add("101.0").add("0.5"))));
+        BookView view = book.publishView();
+
+        assertEquals(view.toJson(1, false), view.appendJson(new StringBuilder(), 1).toString());
+        JsonObject json = new JsonObject(view.appendJson(new StringBuilder(), Integer.MAX_VALUE).toString());
+        assertEquals(42L, json.getLong("sequence"));
+        assertEquals(2, json.getJsonArray("bids").size());
+        assertEquals(100.5, json.getJsonArray("bids").getJsonArray(0).getDouble(0));
+    }
+
+    @Test
+    void testSplicedBytesAreCopiedVerbatimIntoTheChunk() {
+        ChunkedJsonWriter writer = new ChunkedJsonWriter();
+        writer.builder().append("{\"a\":");
+        // Not re-encoded: a double written as the remote node wrote it stays as it was
+        writer.splice(Buffer.buffer("0.000012"));
+        writer.builder().append(",\"b\":");
+        writer.splice(Buffer.buffer("null"));
+        writer.builder().append('}');
+        assertEquals("{\"a\":0.000012,\"b\":null}", writer.take().toString());
+
+        // The next chunk starts empty
+        writer.builder().append("{}");
+        assertEquals("{}", writer.take().toString());
+    }
+
+    @Test
+    void testSplicedBytesCountTowardsTheChunk() {
+        ChunkedJsonWriter writer = new ChunkedJsonWriter();
+        writer.splice(Buffer.buffer(new byte[ChunkedJsonWriter.CHUNK_SIZE]));
+        assertTrue(writer.chunkFull());
+        assertEquals(ChunkedJsonWriter.CHUNK_SIZE, writer.take().length());
+        assertFalse(writer.chunkFull());
+    }
+
+    @Test
+    void testLinesAreSplitPerSymbolInOrder() {
+        Map<String, Buffer> values = new HashMap<>();
+        values.put("SOL-USDT", Buffer.buffer("null"));
+        ChunkedJsonWriter.splitLines(Buffer.buffer("{\"sequence\":1}\nnull\n{\"sequence\":3}"),
+                List.of("BTC-USDT", "ETH-USDT", "SOL-USDT"), values);
+        assertEquals("{\"sequence\":1}", values.get("BTC-USDT").toString());
+        assertEquals("null", values.get("ETH-USDT").toString());
+        // The last line was cut short, so the symbol keeps the value it had
+        assertEquals("null", values.get("SOL-USDT").toString());
+    }
+}
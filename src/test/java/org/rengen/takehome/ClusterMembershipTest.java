@@ -0,0 +1,87 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterMembershipTest {
+
+    private static final List<String> SYMBOLS = List.of("BTC-USDT", "ETH-USDT", "SOL-USDT", "XRP-USDT", "ADA-USDT",
+            "DOGE-USDT", "TRX-USDT", "DOT-USDT", "LTC-USDT", "LINK-USDT", "AVAX-USDT", "ATOM-USDT");
+
+    @Test
+    void testAloneOwnsEverythingWithoutStandby() {
+        ClusterMembership membership = new ClusterMembership("a", "localhost:8080");
+        assertEquals("a", membership.ownerOf("BTC-USDT"));
+        assertNull(membership.standbyOf("BTC-USDT"));
+        assertEquals(List.of("a"), membership.liveNodes());
+    }
+
+    @Test
+    void testEveryNodeAgreesOnOwnerAndStandby() {
+        ClusterMembership a = membership("a", "b", "c");
+        ClusterMembership c = membership("c", "a", "b");
+        for (String symbol : SYMBOLS) {
+            assertEquals(a.ownerOf(symbol), c.ownerOf(symbol));
+            assertEquals(a.standbyOf(symbol), c.standbyOf(symbol));
+            assertNotEquals(a.ownerOf(symbol), a.standbyOf(symbol));
+        }
+        assertEquals(List.of("a", "b", "c"), a.liveNodes());
+        assertEquals("localhost:8081", a.httpAddress("b"));
+    }
+
+    @Test
+    void testStandbyTakesOverWhenOwnerExpires() {
+        ClusterMembership membership = new ClusterMembership("a", "localhost:8080");
+        membership.heartbeat("b", "localhost:8081", 1000);
+        membership.heartbeat("c", "localhost:8082", 1000);
+        String symbol = SYMBOLS.stream().filter(s -> !membership.ownerOf(s).equals("a")).findFirst().orElseThrow();
+        String owner = membership.ownerOf(symbol);
+        String standby = membership.standbyOf(symbol);
+
+        // The local node never expires and a node heard from recently stays
+        String survivor = owner.equals("b") ? "c" : "b";
+        assertFalse(membership.heartbeat(survivor, null, 2500));
+        assertTrue(membership.expire(3500, 2000));
+        assertFalse(membership.liveNodes().contains(owner));
+        assertEquals(standby, membership.ownerOf(symbol));
+        assertFalse(membership.expire(3600, 2000));
+    }
+
+    @Test
+    void testJoinOnlyMovesSymbolsToTheNewNode() {
+        ClusterMembership membership = membership("a", "b", "c");
+        String[] before = new String[SYMBOLS.size()];
+        for (int i = 0; i < SYMBOLS.size(); i++) {
+            before[i] = membership.ownerOf(SYMBOLS.get(i));
+        }
+        assertTrue(membership.heartbeat("d", "localhost:8083", 0));
+        int moved = 0;
+        for (int i = 0; i < SYMBOLS.size(); i++) {
+            String after = membership.ownerOf(SYMBOLS.get(i));
+            if (!after.equals(before[i])) {
+                assertEquals("d", after);
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < SYMBOLS.size());
+    }
+
+    @Test
+    void testLeaveDropsNodeImmediately() {
+        ClusterMembership membership = membership("a", "b");
+        assertTrue(membership.leave("b"));
+        assertFalse(membership.leave("b"));
+        assertEquals(List.of("a"), membership.liveNodes());
+    }
+
+    private static ClusterMembership membership(String local, String... others) {
+        ClusterMembership membership = new ClusterMembership(local, "localhost:" + (8080 + local.charAt(0) - 'a'));
+        for (String other : others) {
+            membership.heartbeat(other, "localhost:" + (8080 + other.charAt(0) - 'a'), 0);
+        }
+        return membership;
+    }
+}
@@ -0,0 +1,88 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrossRateBookTest {
+
+    private OrderBook eth;
+    private OrderBook btc;
+
+    @BeforeEach
+    void setUp() {
+        eth = book(levels(true, 2000, 1, 1990, 2), levels(false, 2010, 1, 2020, 5));
+        btc = book(levels(true, 39900, 0.1, 39800, 1), levels(false, 40000, 0.03, 40100, 1));
+    }
+
+    @Test
+    void testImpliedLevelsPairLegsOnCommonCurrency() {
+        CrossRateBook cross = new CrossRateBook("ETH-BTC", "ETH-USDT", "BTC-USDT", 20);
+        OrderBook implied = new OrderBook();
+
+        assertTrue(cross.update(eth.publishView(), btc.publishView(), implied));
+
+        // 1200 USDT of the first BTC ask pairs with part of the first ETH bid, then the rest of it
+        PriceLevels bids = implied.getBids();
+        assertEquals(3, bids.size());
+        assertEquals(0.05, bids.priceAt(0), 1e-12);
+        assertEquals(0.6, bids.sizeAt(0), 1e-12);
+        assertEquals(2000.0 / 40100, bids.priceAt(1), 1e-12);
+        assertEquals(0.4, bids.sizeAt(1), 1e-12);
+        assertEquals(1990.0 / 40100, bids.priceAt(2), 1e-12);
+        assertEquals(2.0, bids.sizeAt(2), 1e-12);
+
+        PriceLevels asks = implied.getAsks();
+        assertEquals(2010.0 / 39900, asks.priceAt(0), 1e-12);
+        assertEquals(1.0, asks.sizeAt(0), 1e-12);
+        assertEquals(2020.0 / 39900, asks.priceAt(1), 1e-12);
+        assertTrue(bids.priceAt(0) < asks.priceAt(0));
+        assertEquals(1, implied.getLastSequence());
+    }
+
+    @Test
+    void testRebuildsOnlyWhenUsedLevelsChange() {
+        CrossRateBook cross = new CrossRateBook("ETH-BTC", "ETH-USDT", "BTC-USDT", 1);
+        OrderBook implied = new OrderBook();
+        assertTrue(cross.update(eth.publishView(), btc.publishView(), implied));
+        assertFalse(cross.update(eth.publishView(), btc.publishView(), implied));
+
+        // Deeper than the one level the build read
+        eth.applySnapshot(new OrderBookSnapshot("ETH-USDT", 2, levels(true, 2000, 1, 1980, 7), levels(false, 2010, 1, 2020, 5)));
+        assertFalse(cross.update(eth.publishView(), btc.publishView(), implied));
+        assertEquals(1, implied.getLastSequence());
+
+        eth.applySnapshot(new OrderBookSnapshot("ETH-USDT", 3, levels(true, 2001, 1, 1980, 7), levels(false, 2010, 1, 2020, 9)));
+        assertTrue(cross.update(eth.publishView(), btc.publishView(), implied));
+        assertEquals(2001.0 / 40000, implied.getBids().priceAt(0), 1e-12);
+        assertEquals(2, implied.getLastSequence());
+    }
+
+    @Test
+    void testStaleLegMakesImpliedBookStale() {
+        CrossRateBook cross = new CrossRateBook("ETH-BTC", "ETH-USDT", "BTC-USDT", 5);
+        OrderBook implied = new OrderBook();
+        btc.restore(new OrderBookSnapshot("BTC-USDT", 9, levels(true, 39900, 1), levels(false, 40000, 1)));
+
+        cross.update(eth.publishView(), btc.publishView(), implied);
+        assertTrue(implied.isStale());
+
+        btc.applySnapshot(new OrderBookSnapshot("BTC-USDT", 10, levels(true, 39900, 1), levels(false, 40000, 1)));
+        cross.update(eth.publishView(), btc.publishView(), implied);
+        assertFalse(implied.isStale());
+    }
+
+    private static OrderBook book(PriceLevels bids, PriceLevels asks) {
+        OrderBook book = new OrderBook();
+        book.applySnapshot(new OrderBookSnapshot(null, 1, bids, asks));
+        return book;
+    }
+
+    private static PriceLevels levels(boolean descending, double... priceSizePairs) {
+        PriceLevels levels = new PriceLevels(descending);
+        for (int i = 0; i < priceSizePairs.length; i += 2) {
+            levels.set(priceSizePairs[i], priceSizePairs[i + 1]);
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,101 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DepthAnalyticsTest {
+
+    private BookView view;
+
+    @BeforeEach
+    void setUp() {
+        PriceLevels bids = new PriceLevels(true);
+        bids.set(100.0, 1.0);
+        bids.set(99.0, 2.0);
+        bids.set(95.0, 4.0);
+        PriceLevels asks = new PriceLevels(false);
+        asks.set(101.0, 1.0);
+        asks.set(102.0, 3.0);
+        view = new BookView(42, 1, 0, bids, asks);
+    }
+
+    @Test
+    void testCostToFillAcrossLevels() {
+        // 1 @ 101 + 2 @ 102 = 305
+        assertEquals("{\"sequence\":42,\"side\":\"buy\",\"quantity\":3.0,\"filled\":3.0,\"notional\":305.0,"
+                + "\"vwap\":101.66666666666667,\"bestPrice\":101.0,\"worstPrice\":102.0,"
+                + "\"slippageBps\":66.00660066006648,\"complete\":true}", run(DepthAnalytics.costToFill(true, 3)));
+    }
+
+    @Test
+    void testCostToFillBeyondDepthIsPartial() {
+        String json = run(DepthAnalytics.costToFill(false, 10));
+        assertTrue(json.contains("\"filled\":7.0"));
+        assertTrue(json.contains("\"notional\":678.0"));
+        assertTrue(json.contains("\"worstPrice\":95.0"));
+        assertTrue(json.endsWith("\"complete\":false}"));
+    }
+
+    @Test
+    void testDepthWithinBpsOfMid() {
+        // mid 100.5; 150bps is 98.9925 .. 102.0075
+        assertEquals("{\"sequence\":42,\"mid\":100.5,\"bps\":150.0,\"bidSize\":3.0,\"bidNotional\":298.0,"
+                + "\"askSize\":4.0,\"askNotional\":407.0}", run(DepthAnalytics.depthWithin(150)));
+    }
+
+    @Test
+    void testImbalanceByLevels() {
+        assertEquals("{\"sequence\":42,\"levels\":2,\"bidSize\":3.0,\"askSize\":4.0,\"imbalance\":-0.14285714285714285}",
+                run(DepthAnalytics.imbalance(10, 2)));
+    }
+
+    @Test
+    void testEmptySideGivesNulls() {
+        BookView oneSided = new BookView(1, 1, 0, new PriceLevels(true), view.getAsks());
+        assertTrue(run(DepthAnalytics.depthWithin(10)).contains("\"mid\":100.5"));
+        assertTrue(run(oneSided, DepthAnalytics.depthWithin(10)).contains("\"mid\":null"));
+        assertTrue(run(oneSided, DepthAnalytics.costToFill(false, 1)).contains("\"vwap\":null"));
+    }
+
+    @Test
+    void testPrefixSumsFollowIncrementalChanges() {
+        Random random = new Random(7);
+        PriceLevels side = new PriceLevels(true, 4);
+        for (int i = 0; i < 5000; i++) {
+            double price = 100 + random.nextInt(60);
+            if (random.nextInt(4) == 0) {
+                side.remove(price);
+            } else {
+                side.set(price, 1 + random.nextInt(20));
+            }
+            if (random.nextInt(50) == 0) {
+                side.truncate(30);
+            }
+            if (random.nextInt(7) == 0) {
+                int levels = random.nextInt(side.size() + 2);
+                double size = 0;
+                double notional = 0;
+                for (int l = 0; l < Math.min(levels, side.size()); l++) {
+                    size += side.sizeAt(l);
+                    notional += side.priceAt(l) * side.sizeAt(l);
+                }
+                assertEquals(size, side.cumulativeSize(levels), 1e-9);
+                assertEquals(notional, side.cumulativeNotional(levels), 1e-6);
+                assertEquals(size, side.copy().cumulativeSize(levels), 1e-9);
+            }
+        }
+    }
+
+    private String run(DepthAnalytics.Query query) {
+        return run(view, query);
+    }
+
+    private static String run(BookView target, DepthAnalytics.Query query) {
+        StringBuilder sb = new StringBuilder();
+        query.appendJson(sb, target);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedPointTest {
+
+    @Test
+    void testParsesDecimalStrings() {
+        assertEquals(189073L, FixedPoint.parse("18907.3", 1));
+        assertEquals(18907_30000000L, FixedPoint.parse("18907.3", 8));
+        assertEquals(331000L, FixedPoint.parse("0.00331", 8));
+        assertEquals(5_000_000_000L, FixedPoint.parse("50", 8));
+        assertEquals(0L, FixedPoint.parse("0", 8));
+        assertEquals(0L, FixedPoint.parse("0.000", 8));
+        assertEquals(-125L, FixedPoint.parse("-1.25", 2));
+        assertEquals(500L, FixedPoint.parse(".5", 3));
+        assertEquals(12L, FixedPoint.parse("[\"0.000000000012\"]", 2, 16, 12));
+    }
+
+    @Test
+    void testRoundsExtraDecimalsHalfUp() {
+        assertEquals(123L, FixedPoint.parse("1.2345", 2));
+        assertEquals(124L, FixedPoint.parse("1.2350", 2));
+        assertEquals(-124L, FixedPoint.parse("-1.235", 2));
+        assertEquals(100L, FixedPoint.parse("0.999", 2));
+    }
+
+    @Test
+    void testFallsBackForExponentsAndRejectsGarbage() {
+        assertEquals(12L, FixedPoint.parse("1.2E-7", 8));
+        assertEquals(1_000_000_000_000L, FixedPoint.parse("1.0e4", 8));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("", 8));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("-", 8));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("1.2.3", 8));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("12a", 8));
+        // 1e11 at 8 decimals is 1e19, past Long.MAX_VALUE
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("100000000000", 8));
+    }
+
+    @Test
+    void testFormatsPlainDecimals() {
+        assertEquals("18907.3", FixedPoint.toString(189073L, 1));
+        assertEquals("18907.3", FixedPoint.toString(18907_30000000L, 8));
+        assertEquals("100.0", FixedPoint.toString(10_000L, 2));
+        assertEquals("0.0", FixedPoint.toString(0L, 8));
+        assertEquals("0.00001234", FixedPoint.toString(1234L, 8));
+        assertEquals("-0.05", FixedPoint.toString(-5L, 2));
+        assertEquals("42.0", FixedPoint.toString(42L, 0));
+    }
+
+    @Test
+    void testFormatParseRoundTrip() {
+        String[] values = {"0.0", "0.000000000001", "1.5", "67123.4", "9000000.123456789012", "0.00331"};
+        for (String value : values) {
+            assertEquals(value, FixedPoint.toString(FixedPoint.parse(value, 12), 12));
+        }
+    }
+
+    @Test
+    void testRescaleAndDoubles() {
+        assertEquals(18907_30000000L, FixedPoint.rescale(189073L, 1, 8));
+        assertEquals(189073L, FixedPoint.rescale(18907_30000000L, 8, 1));
+        assertEquals(13L, FixedPoint.rescale(1250L, 3, 1));
+        assertEquals(-13L, FixedPoint.rescale(-1250L, 3, 1));
+        assertEquals(18907.3, FixedPoint.toDouble(189073L, 1));
+        assertEquals(0.00331, FixedPoint.toDouble(331000L, 8));
+        assertEquals(30L, FixedPoint.fromDouble(0.1 + 0.2, 2));
+    }
+}
@@ -0,0 +1,154 @@
+package org.rengen.takehome;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class IngestQueueTest {
+
+    // Tasks handed to the shard's context, run when the test says so
+    private final Queue<Handler<Void>> tasks = new ArrayDeque<>();
+    private final List<String> batches = new ArrayList<>();
+    private final List<String> dropped = new ArrayList<>();
+    private final IngestQueue.Sink sink = new IngestQueue.Sink() {
+        @Override
+        public void onBatch(String symbol, List<Level2Update> batch) {
+            batches.add(symbol + " " + batch.get(0).getSequenceStart() + "-" + batch.get(batch.size() - 1).getSequenceEnd()
+                    + " x" + batch.size());
+        }
+
+        @Override
+        public void onDropped(String symbol, int count) {
+            dropped.add(symbol + " " + count);
+        }
+    };
+
+    private IngestQueue queue(int capacity, int maxBatch, IngestQueue.OverflowPolicy policy) {
+        Context context = mock(Context.class);
+        doAnswer(invocation -> tasks.add(invocation.getArgument(0))).when(context).runOnContext(any());
+        return new IngestQueue(context, sink, capacity, maxBatch, policy);
+    }
+
+    private void runTasks() {
+        Handler<Void> task;
+        while ((task = tasks.poll()) != null) {
+            task.handle(null);
+        }
+    }
+
+    private static Level2Update update(String symbol, long sequence) {
+        Level2Update update = new Level2Update();
+        update.setSymbol(symbol);
+        update.setSequenceStart(sequence);
+        update.setSequenceEnd(sequence);
+        return update;
+    }
+
+    @Test
+    void testConsecutiveUpdatesOfASymbolAreAppliedAsOneBatch() {
+        IngestQueue queue = queue(16, 4, IngestQueue.OverflowPolicy.BLOCK);
+        for (long seq = 1; seq <= 6; seq++) {
+            assertTrue(queue.offer(update("BTC-USDT", seq), () -> fail("not full")));
+        }
+        queue.offer(update("ETH-USDT", 100), () -> fail("not full"));
+        // One drain is scheduled however many updates arrive before it runs
+        assertEquals(1, tasks.size());
+
+        runTasks();
+        // Symbols take turns, at most maxBatch updates each
+        assertEquals(List.of("BTC-USDT 1-4 x4", "ETH-USDT 100-100 x1", "BTC-USDT 5-6 x2"), batches);
+        assertEquals(0, queue.depth("BTC-USDT"));
+    }
+
+    @Test
+    void testBlockPolicyPausesTheProducerUntilTheQueueDrainsToHalf() {
+        IngestQueue queue = queue(4, 2, IngestQueue.OverflowPolicy.BLOCK);
+        int[] resumed = {0};
+        for (long seq = 1; seq <= 4; seq++) {
+            assertTrue(queue.offer(update("BTC-USDT", seq), () -> resumed[0]++));
+        }
+        // The fifth is still queued, never lost, but the producer has to stop
+        assertFalse(queue.offer(update("BTC-USDT", 5), () -> resumed[0]++));
+        assertEquals(5, queue.depth("BTC-USDT"));
+
+        // First batch leaves 3 of 4: still above half
+        tasks.poll().handle(null);
+        assertEquals(0, resumed[0]);
+        runTasks();
+        assertEquals(1, resumed[0]);
+        assertEquals(List.of("BTC-USDT 1-2 x2", "BTC-USDT 3-4 x2", "BTC-USDT 5-5 x1"), batches);
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    void testDropPolicyClearsTheSymbolAndLeavesOthersAlone() {
+        IngestQueue queue = queue(3, 8, IngestQueue.OverflowPolicy.DROP);
+        for (long seq = 1; seq <= 3; seq++) {
+            queue.offer(update("BTC-USDT", seq), () -> fail("drop never pauses"));
+        }
+        queue.offer(update("ETH-USDT", 1), () -> fail("drop never pauses"));
+        assertTrue(queue.offer(update("BTC-USDT", 4), () -> fail("drop never pauses")));
+        assertEquals(0, queue.depth("BTC-USDT"));
+
+        runTasks();
+        assertEquals(List.of("BTC-USDT 4"), dropped);
+        assertEquals(List.of("ETH-USDT 1-1 x1"), batches);
+
+        // Replay never drops, whatever the policy
+        for (long seq = 5; seq <= 7; seq++) {
+            queue.offerOrWait(update("BTC-USDT", seq), () -> { });
+        }
+        assertFalse(queue.offerOrWait(update("BTC-USDT", 8), () -> { }));
+        assertEquals(4, queue.depth("BTC-USDT"));
+    }
+
+    @Test
+    void testLagIsReportedInSequencesAndTime() {
+        IngestQueue queue = queue(16, 2, IngestQueue.OverflowPolicy.BLOCK);
+        Level2Update first = update("BTC-USDT", 10);
+        first.setReceivedAtNanos(System.nanoTime() - 50_000_000L);
+        queue.offer(first, () -> { });
+        queue.offer(update("BTC-USDT", 11), () -> { });
+        queue.offer(update("BTC-USDT", 15), () -> { });
+        tasks.poll().handle(null);
+
+        List<String> lags = new ArrayList<>();
+        queue.forEachSymbol((symbol, depth, sequenceLag, lagMs, droppedCount, blocked) ->
+                lags.add(symbol + " " + depth + " " + sequenceLag));
+        assertEquals(List.of("BTC-USDT 1 4"), lags);
+
+        IngestQueue fresh = queue(16, 2, IngestQueue.OverflowPolicy.BLOCK);
+        fresh.offer(first, () -> { });
+        long[] lagMs = {0};
+        fresh.forEachSymbol((symbol, depth, sequenceLag, ms, droppedCount, blocked) -> lagMs[0] = ms);
+        assertTrue(lagMs[0] >= 50, "waited " + lagMs[0] + "ms");
+    }
+
+    @Test
+    void testQueuedTaskRunsBetweenTheUpdatesAroundIt() {
+        IngestQueue queue = queue(16, 8, IngestQueue.OverflowPolicy.BLOCK);
+        queue.offer(update("BTC-USDT", 1), () -> { });
+        queue.offer(update("BTC-USDT", 2), () -> { });
+        queue.afterQueued("BTC-USDT", () -> batches.add("snapshot"));
+        queue.offer(update("BTC-USDT", 3), () -> { });
+        queue.afterQueued("ETH-USDT", () -> batches.add("ETH snapshot"));
+
+        runTasks();
+        assertEquals(List.of("BTC-USDT 1-2 x2", "snapshot", "ETH snapshot", "BTC-USDT 3-3 x1"), batches);
+    }
+
+    @Test
+    void testRejectsUnknownOverflowPolicy() {
+        assertEquals(IngestQueue.OverflowPolicy.BLOCK, IngestQueue.OverflowPolicy.fromConfig(null));
+        assertEquals(IngestQueue.OverflowPolicy.DROP, IngestQueue.OverflowPolicy.fromConfig("drop"));
+        assertThrows(IllegalArgumentException.class, () -> IngestQueue.OverflowPolicy.fromConfig("spill"));
+    }
+}
@@ -0,0 +1,81 @@
+package org.rengen.takehome;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalReplayVerticleTest {
+
+    @TempDir
+    Path directory;
+
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        LocalMessageCodec.registerAll(vertx.eventBus());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    private static String snapshot(long sequence, String bids, String asks) {
+        return "{\"code\":\"200000\",\"data\":{\"sequence\":\"" + sequence + "\",\"bids\":[" + bids + "],\"asks\":[" + asks + "]}}";
+    }
+
+    private static String frame(long sequence, String bids, String asks) {
+        return "{\"type\":\"message\",\"topic\":\"/market/level2:BTC-USDT\",\"subject\":\"trade.l2update\","
+                + "\"data\":{\"changes\":{\"asks\":[" + asks + "],\"bids\":[" + bids + "]},"
+                + "\"sequenceEnd\":" + sequence + ",\"sequenceStart\":" + sequence + ",\"symbol\":\"BTC-USDT\",\"time\":1663747970273}}";
+    }
+
+    @Test
+    void testSnapshotsAreAppliedBetweenTheFramesTheyWereRecordedBetween() throws Exception {
+        try (MarketDataJournal journal = new MarketDataJournal(directory, 1 << 16)) {
+            journal.appendSnapshot(1L, "BTC-USDT", snapshot(100, "[\"100\",\"1\"]", "[\"101\",\"1\"]"));
+            journal.appendFrame(2L, frame(101, "[\"100\",\"2\",\"101\"]", ""));
+            journal.appendFrame(3L, frame(102, "", "[\"102\",\"1\",\"102\"]"));
+            // Fetched before frame 102 but recorded after it: the feed has overtaken it
+            journal.appendSnapshot(4L, "BTC-USDT", snapshot(101, "[\"100\",\"2\"]", "[\"101\",\"1\"]"));
+            journal.appendFrame(5L, frame(103, "[\"99\",\"3\",\"103\"]", ""));
+        }
+
+        OrderBookShards shards = new OrderBookShards(1);
+        JsonObject config = new JsonObject()
+                .put("httpPort", 0)
+                .put("symbols", new JsonArray().add("BTC-USDT"));
+        vertx.deployVerticle(new KucoinOrderBookVerticle(shards, 0), new DeploymentOptions().setConfig(config))
+                .toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        vertx.deployVerticle(new JournalReplayVerticle(shards), new DeploymentOptions().setConfig(
+                        new JsonObject().put("replay", new JsonObject().put("directory", directory.toString()))))
+                .toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        BookView view = shards.get(0).getBookView("BTC-USDT");
+        while ((view == null || view.getSequence() < 103) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            view = shards.get(0).getBookView("BTC-USDT");
+        }
+
+        assertNotNull(view);
+        assertEquals(103, view.getSequence());
+        assertFalse(view.isStale());
+        // Frame 102's ask survived the older snapshot
+        assertEquals(2, view.getAsks().size());
+        assertEquals(102.0, view.getAsks().priceAt(1));
+        assertEquals(2, view.getBids().size());
+        assertEquals(2.0, view.getBids().sizeAt(0));
+        assertEquals(3.0, view.getBids().sizeAt(1));
+    }
+}
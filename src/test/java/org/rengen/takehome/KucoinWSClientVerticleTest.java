@@ -0,0 +1,106 @@
+package org.rengen.takehome;
+
+import io.vertx.core.http.WebSocketConnectOptions;
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KucoinWSClientVerticleTest {
+
+    @Test
+    void testBulletForSecureEndpoint() {
+        KucoinWSClientVerticle.Bullet bullet = new KucoinWSClientVerticle.Bullet("wss://ws-api-spot.kucoin.com/", "abc", 18000);
+        WebSocketConnectOptions options = bullet.connectOptions();
+
+        assertEquals("wss://ws-api-spot.kucoin.com/endpoint?token=abc", bullet.getUrl());
+        assertEquals("ws-api-spot.kucoin.com", options.getHost());
+        assertEquals(443, options.getPort());
+        assertTrue(options.isSsl());
+        assertEquals("/endpoint?token=abc", options.getURI());
+        assertEquals(18000, bullet.getPingIntervalMs());
+    }
+
+    @Test
+    void testBulletForPlainEndpointWithPort() {
+        WebSocketConnectOptions options = new KucoinWSClientVerticle.Bullet("ws://localhost:8090", "t", 0).connectOptions();
+
+        assertEquals("localhost", options.getHost());
+        assertEquals(8090, options.getPort());
+        assertFalse(options.isSsl());
+        assertEquals("/endpoint?token=t", options.getURI());
+    }
+
+    private static KucoinWSSession session(int id, int shard, String... symbols) {
+        KucoinWSSession session = new KucoinWSSession(id, shard, null, null);
+        session.getSymbols().addAll(List.of(symbols));
+        return session;
+    }
+
+    @Test
+    void testSymbolsAreDealtOverAsFewSessionsAsTheLimitAllows() {
+        Map<Integer, List<List<String>>> assignment = KucoinWSClientVerticle.assignSessions(
+                List.of("A", "B", "C", "D", "E"), 1, 2);
+        assertEquals(Map.of(0, List.of(List.of("A", "D"), List.of("B", "E"), List.of("C"))), assignment);
+
+        assertEquals(Map.of(0, List.of(List.of("A", "B", "C", "D", "E"))),
+                KucoinWSClientVerticle.assignSessions(List.of("A", "B", "C", "D", "E"), 1, 50));
+    }
+
+    @Test
+    void testSessionsNeverMixShards() {
+        // BTC-USDT and ETH-USDT are on shard 1 of 4, SOL-USDT on shard 3
+        Map<Integer, List<List<String>>> assignment = KucoinWSClientVerticle.assignSessions(
+                List.of("BTC-USDT", "SOL-USDT", "ETH-USDT"), 4, 1);
+        assertEquals(Map.of(1, List.of(List.of("BTC-USDT"), List.of("ETH-USDT")), 3, List.of(List.of("SOL-USDT"))), assignment);
+    }
+
+    @Test
+    void testRebalanceMovesTheSymbolClosestToHalfTheDifference() {
+        KucoinWSSession busy = session(0, 0, "X", "Y", "Z");
+        KucoinWSSession quiet = session(1, 0, "W");
+        Map<String, Long> window = Map.of("X", 100L, "Y", 40L, "Z", 10L, "W", 20L);
+
+        KucoinWSClientVerticle.Move move = KucoinWSClientVerticle.planRebalance(List.of(busy, quiet), window, 50);
+        assertNotNull(move);
+        // Loads 150 and 20: Y (40) comes closest to the 65 that would even them out
+        assertEquals("Y", move.symbol);
+        assertSame(busy, move.from);
+        assertSame(quiet, move.to);
+        assertEquals(150, move.fromLoad);
+        assertEquals(20, move.toLoad);
+    }
+
+    @Test
+    void testRebalanceLeavesSessionsWithinTheThresholdAlone() {
+        Map<String, Long> window = new HashMap<>(Map.of("X", 60L, "Y", 20L, "W", 70L));
+        // 80 against 70 is within 1.25x
+        assertNull(KucoinWSClientVerticle.planRebalance(List.of(session(0, 0, "X", "Y"), session(1, 0, "W")), window, 50));
+
+        window.put("W", 40L);
+        KucoinWSClientVerticle.Move move = KucoinWSClientVerticle.planRebalance(
+                List.of(session(0, 0, "X", "Y"), session(1, 0, "W")), window, 50);
+        // X would only make the other session the hot one
+        assertEquals("Y", move.symbol);
+        // A full quiet session cannot take anything, and a lone hot symbol has nowhere better to go
+        assertNull(KucoinWSClientVerticle.planRebalance(List.of(session(0, 0, "X", "Y"), session(1, 0, "W")), window, 1));
+        assertNull(KucoinWSClientVerticle.planRebalance(List.of(session(0, 0, "X"), session(1, 0)), Map.of("X", 500L), 50));
+    }
+
+    @Test
+    void testRebalanceNeverMovesASymbolToAnotherShard() {
+        KucoinWSSession busy = session(0, 0, "X", "Y");
+        KucoinWSSession otherShard = session(1, 1);
+        Map<String, Long> window = Map.of("X", 100L, "Y", 80L);
+        assertNull(KucoinWSClientVerticle.planRebalance(List.of(busy, otherShard), window, 50));
+
+        KucoinWSSession sameShard = session(2, 0);
+        KucoinWSClientVerticle.Move move = KucoinWSClientVerticle.planRebalance(List.of(busy, otherShard, sameShard), window, 50);
+        assertNotNull(move);
+        assertSame(sameShard, move.to);
+        assertEquals(move.from.getShard(), move.to.getShard());
+    }
+}
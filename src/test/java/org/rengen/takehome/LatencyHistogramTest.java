@@ -0,0 +1,38 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsArePowersOfTwoMicros() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(0, LatencyHistogram.bucketOf(1_000));
+        assertEquals(1, LatencyHistogram.bucketOf(1_001));
+        assertEquals(1, LatencyHistogram.bucketOf(2_000));
+        assertEquals(12, LatencyHistogram.bucketOf(3_000_000));
+        assertEquals(27, LatencyHistogram.bucketOf(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void testPrometheusBucketsAreCumulative() {
+        LatencyHistogram histogram = new LatencyHistogram("test_seconds", "Test latency");
+        histogram.recordNanos(500);
+        histogram.recordNanos(1_500);
+        histogram.recordNanos(3_000_000);
+        histogram.recordNanos(-10);
+
+        StringBuilder out = new StringBuilder();
+        histogram.writePrometheus(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"1.0E-6\"} 2\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"2.0E-6\"} 3\n"));
+        assertTrue(text.contains("test_seconds_bucket{le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("test_seconds_count 4\n"));
+        assertEquals(4, histogram.count());
+    }
+}
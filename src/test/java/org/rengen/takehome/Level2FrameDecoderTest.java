@@ -0,0 +1,81 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Level2FrameDecoderTest {
+
+    private static final String FRAME = "{\"type\":\"message\",\"topic\":\"/market/level2:BTC-USDT\","
+            + "\"subject\":\"trade.l2update\",\"data\":{\"changes\":{\"asks\":[[\"18906\",\"0.00331\",\"14103845\"],"
+            + "[\"18907.3\",\"0\",\"14103846\"]],\"bids\":[[\"18905.9\",\"1.5\",\"14103847\"]]},"
+            + "\"sequenceEnd\":14103847,\"sequenceStart\":14103845,\"symbol\":\"BTC-USDT\",\"time\":1663747970273}}";
+
+    private Level2FrameDecoder decoder;
+    private Level2Update update;
+
+    @BeforeEach
+    void setUp() {
+        decoder = new Level2FrameDecoder();
+        update = new Level2Update();
+    }
+
+    @Test
+    void testDecodeLevel2Frame() {
+        assertTrue(decoder.decode(FRAME, update));
+
+        assertEquals("BTC-USDT", update.getSymbol());
+        assertEquals(14103845L, update.getSequenceStart());
+        assertEquals(14103847L, update.getSequenceEnd());
+        assertEquals(1663747970273L, update.getTime());
+
+        assertEquals(2, update.getAsks().size());
+        assertEquals(18906.0, update.getAsks().priceAt(0));
+        assertEquals(0.00331, update.getAsks().sizeAt(0));
+        assertEquals(18907.3, update.getAsks().priceAt(1));
+        assertEquals(0.0, update.getAsks().sizeAt(1));
+        assertEquals(14103846L, update.getAsks().sequenceAt(1));
+
+        assertEquals(1, update.getBids().size());
+        assertEquals(18905.9, update.getBids().priceAt(0));
+        assertEquals(1.5, update.getBids().sizeAt(0));
+    }
+
+    @Test
+    void testDecoderReusesSymbolAndResetsChanges() {
+        decoder.decode(FRAME, update);
+        String first = update.getSymbol();
+        decoder.decode(FRAME, update);
+
+        assertSame(first, update.getSymbol());
+        assertEquals(2, update.getAsks().size());
+    }
+
+    @Test
+    void testReleasedUpdatesAreHandedOutAgainReset() {
+        Level2UpdatePool pool = new Level2UpdatePool(2);
+        Level2Update pooled = pool.acquire();
+        decoder.decode(FRAME, pooled);
+        pooled.release();
+        assertEquals(1, pool.available());
+
+        Level2Update again = pool.acquire();
+        assertSame(pooled, again);
+        assertNull(again.getSymbol());
+        assertEquals(0, again.getAsks().size());
+        assertTrue(decoder.decode(FRAME, again));
+        assertEquals(2, again.getAsks().size());
+
+        // Copies and plain updates are not the pool's to take back
+        again.copy().release();
+        update.release();
+        assertEquals(0, pool.available());
+    }
+
+    @Test
+    void testNonLevel2FramesAreRejected() {
+        assertFalse(decoder.decode("{\"id\":\"hQvf8jkno\",\"type\":\"welcome\"}", update));
+        assertFalse(decoder.decode("{\"id\":\"1234\",\"type\":\"ack\"}", update));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("{\"topic\":", update));
+    }
+}
@@ -0,0 +1,87 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarketDataJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecordsRoundTripAcrossSegments() throws Exception {
+        try (MarketDataJournal journal = new MarketDataJournal(directory, 256)) {
+            journal.appendSnapshot(10L, "BTC-USDT", "{\"code\":\"200000\",\"data\":{\"sequence\":\"100\"}}");
+            for (int i = 0; i < 20; i++) {
+                journal.appendFrame(11L + i, "{\"topic\":\"/market/level2:BTC-USDT\",\"n\":" + i + "}");
+            }
+        }
+        assertTrue(MarketDataJournal.segmentFiles(directory).size() > 1, "Expected the journal to roll segments");
+
+        MarketDataJournalReader reader = new MarketDataJournalReader(directory);
+        MarketDataJournalReader.JournalRecord record = new MarketDataJournalReader.JournalRecord();
+
+        assertTrue(reader.next(record));
+        assertEquals(MarketDataJournal.SNAPSHOT, record.getType());
+        assertEquals("BTC-USDT", record.getSymbol());
+        assertEquals(10L, record.getReceivedAtNanos());
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(reader.next(record));
+            assertEquals(MarketDataJournal.FRAME, record.getType());
+            assertNull(record.getSymbol());
+            assertEquals(11L + i, record.getReceivedAtNanos());
+            assertTrue(record.getPayload().endsWith("\"n\":" + i + "}"));
+        }
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    void testReopeningContinuesAfterExistingSegments() throws Exception {
+        try (MarketDataJournal journal = new MarketDataJournal(directory, 1024)) {
+            journal.appendFrame(1L, "first");
+        }
+        try (MarketDataJournal journal = new MarketDataJournal(directory, 1024)) {
+            journal.appendFrame(2L, "second");
+        }
+
+        MarketDataJournalReader reader = new MarketDataJournalReader(directory);
+        MarketDataJournalReader.JournalRecord record = new MarketDataJournalReader.JournalRecord();
+        assertTrue(reader.next(record));
+        assertEquals("first", record.getPayload());
+        assertTrue(reader.next(record));
+        assertEquals("second", record.getPayload());
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    void testRecordingStopsAtTheFirstFailureWithoutThrowing() throws Exception {
+        try (MarketDataJournal journal = new MarketDataJournal(directory, 256)) {
+            journal.recordFrame(1L, "first");
+            // Larger than a segment: append() would throw
+            journal.recordFrame(2L, "x".repeat(512));
+            assertFalse(journal.isRecording());
+            journal.recordFrame(3L, "after");
+            journal.recordSnapshot(4L, "BTC-USDT", "{}");
+        }
+
+        MarketDataJournalReader reader = new MarketDataJournalReader(directory);
+        MarketDataJournalReader.JournalRecord record = new MarketDataJournalReader.JournalRecord();
+        assertTrue(reader.next(record));
+        assertEquals("first", record.getPayload());
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    void testRecordingIntoAClosedJournalIsIgnored() throws Exception {
+        MarketDataJournal journal = new MarketDataJournal(directory, 1024);
+        journal.close();
+        journal.recordFrame(1L, "late");
+        assertFalse(journal.isRecording());
+        assertThrows(IllegalStateException.class, () -> journal.appendFrame(2L, "late"));
+    }
+}
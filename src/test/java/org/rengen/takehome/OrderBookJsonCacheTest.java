@@ -0,0 +1,68 @@
+package org.rengen.takehome;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderBookJsonCacheTest {
+
+    private OrderBook orderBook;
+
+    @BeforeEach
+    void setUp() {
+        orderBook = new OrderBook();
+        orderBook.applySnapshot(new JsonObject()
+                .put("sequence", "100")
+                .put("bids", new JsonArray()
+                        .add(new JsonArray().add("100.0").add("1.5"))
+                        .add(new JsonArray().add("99.0").add("2.5")))
+                .put("asks", new JsonArray()
+                        .add(new JsonArray().add("101.0").add("2.0"))));
+    }
+
+    @Test
+    void testSameBufferUntilNextPublishedView() {
+        OrderBookJsonCache cache = orderBook.publishView().getJsonCache();
+        Buffer first = cache.get(100, true, false);
+        assertSame(first, cache.get(100, true, false));
+        assertSame(cache, orderBook.publishView().getJsonCache());
+
+        orderBook.applyIncremental(new JsonObject()
+                .put("bids", new JsonArray().add(new JsonArray().add("99.5").add("1.0").add("101"))));
+        orderBook.setLastSequence(101);
+
+        OrderBookJsonCache next = orderBook.publishView().getJsonCache();
+        Buffer second = next.get(100, true, false);
+        assertNotSame(first, second);
+        assertNotEquals(cache.etag(), next.etag());
+        assertTrue(second.toString().contains("99.5"));
+        assertEquals(orderBook.toJson(), second.toString());
+    }
+
+    @Test
+    void testCompactWithDepth() {
+        JsonObject json = new JsonObject(orderBook.publishView().getJsonCache().get(1, false, false));
+        assertEquals(100L, json.getLong("sequence"));
+        assertEquals(1, json.getJsonArray("bids").size());
+        assertEquals(100.0, json.getJsonArray("bids").getJsonArray(0).getDouble(0));
+        assertFalse(orderBook.publishView().getJsonCache().get(1, false, false).toString().contains("\n"));
+    }
+
+    @Test
+    void testGzipVariantDecompressesToPlain() throws IOException {
+        OrderBookJsonCache cache = orderBook.publishView().getJsonCache();
+        Buffer gzipped = cache.get(100, false, true);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getBytes()))) {
+            String plain = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(cache.get(100, false, false).toString(), plain);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderBookShardsTest {
+
+    @Test
+    void testRoutingIsPinnedToTheSymbolName() {
+        // Fixed values: every node and every restart has to agree on them
+        assertEquals(1, OrderBookShards.shardOf("BTC-USDT", 4));
+        assertEquals(1, OrderBookShards.shardOf("ETH-USDT", 4));
+        assertEquals(3, OrderBookShards.shardOf("SOL-USDT", 4));
+        assertEquals(5, OrderBookShards.shardOf("BTC-USDT", 7));
+        assertEquals(OrderBookShards.shardOf("BTC-USDT", 4), OrderBookShards.shardOf(new String("BTC-USDT"), 4));
+        assertEquals("orderbook.snapshot.1", OrderBookShards.shardAddress(OrderBookShards.SNAPSHOT_ADDRESS, "BTC-USDT", 4));
+    }
+
+    @Test
+    void testNegativeHashesStayInRange() {
+        // All three hash to negative values; this one to Integer.MIN_VALUE
+        assertEquals(Integer.MIN_VALUE, "polygenelubricants".hashCode());
+        for (String symbol : new String[]{"polygenelubricants", "BTC-USDT", "SOL-USDT"}) {
+            assertTrue(symbol.hashCode() < 0, symbol);
+            for (int count = 1; count <= 16; count++) {
+                int shard = OrderBookShards.shardOf(symbol, count);
+                assertTrue(shard >= 0 && shard < count, symbol + " -> " + shard + " of " + count);
+            }
+        }
+        assertEquals(6, OrderBookShards.shardOf("polygenelubricants", 7));
+    }
+
+    @Test
+    void testOwnerIsTheRegisteredShard() {
+        OrderBookShards shards = new OrderBookShards(4);
+        assertNull(shards.owner("BTC-USDT"));
+        KucoinOrderBookVerticle shard = new KucoinOrderBookVerticle(shards, 1);
+        shards.register(1, shard);
+        assertSame(shard, shards.owner("BTC-USDT"));
+        assertSame(shard, shards.get(1));
+        assertNull(shards.owner("SOL-USDT"));
+        assertNull(shards.get(4));
+        assertNull(shards.get(-1));
+        // Outside a cluster this node owns everything
+        assertEquals(OrderBookShards.Role.OWNER, shards.roleOf("SOL-USDT"));
+    }
+
+    @Test
+    void testRejectsNoShards() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderBookShards(0));
+    }
+}
@@ -56,4 +56,142 @@ class OrderBookTest {
         assertTrue(json.contains("99.5"));
         assertFalse(json.contains("101.5")); // removed because size < threshold
     }
+
+    @Test
+    void testLevelsStaySortedBestFirst() {
+        orderBook.setLastSequence(100);
+
+        JsonObject changes = new JsonObject()
+                .put("bids", new JsonArray()
+                        .add(new JsonArray().add("99.0").add("1.0").add("101"))
+                        .add(new JsonArray().add("99.5").add("2.0").add("102"))
+                        .add(new JsonArray().add("98.5").add("3.0").add("103")))
+                .put("asks", new JsonArray()
+                        .add(new JsonArray().add("101.0").add("1.0").add("104"))
+                        .add(new JsonArray().add("100.5").add("2.0").add("105")));
+
+        orderBook.applyIncremental(changes);
+
+        PriceLevels bids = orderBook.getBids();
+        assertEquals(3, bids.size());
+        assertEquals(99.5, bids.priceAt(0));
+        assertEquals(98.5, bids.priceAt(2));
+        assertEquals(2.0, bids.sizeOf(99.5));
+
+        PriceLevels asks = orderBook.getAsks();
+        assertEquals(100.5, asks.priceAt(0));
+        assertEquals(101.0, asks.priceAt(1));
+        assertEquals(0.0, asks.sizeOf(99.0));
+    }
+
+    @Test
+    void testDepthIsTruncatedToWorstLevels() {
+        orderBook.setLastSequence(100);
+
+        JsonArray bids = new JsonArray();
+        for (int i = 0; i < 150; i++) {
+            bids.add(new JsonArray().add(String.valueOf(1000 - i)).add("1.0").add(String.valueOf(101 + i)));
+        }
+        orderBook.applyIncremental(new JsonObject().put("bids", bids));
+
+        PriceLevels levels = orderBook.getBids();
+        assertEquals(100, levels.size());
+        assertEquals(1000.0, levels.priceAt(0));
+        assertEquals(901.0, levels.priceAt(99));
+    }
+
+    @Test
+    void testTopOfBookRepublishedOnlyWhenTouchMoves() {
+        assertSame(TopOfBook.EMPTY, orderBook.getTop());
+
+        orderBook.applySnapshot(new JsonObject()
+                .put("sequence", "100")
+                .put("bids", new JsonArray().add(new JsonArray().add("100.0").add("1.5")))
+                .put("asks", new JsonArray().add(new JsonArray().add("101.0").add("2.0"))));
+        TopOfBook top = orderBook.getTop();
+        assertEquals(100.0, top.getBidPrice());
+        assertEquals(2.0, top.getAskSize());
+        assertEquals(100.5, top.getMid());
+        assertEquals(1.0, top.getSpread());
+        assertEquals(100L, top.getSequence());
+
+        // A change behind the touch leaves the published L1 alone
+        orderBook.applyIncremental(new JsonObject()
+                .put("bids", new JsonArray().add(new JsonArray().add("99.0").add("1.0").add("101"))));
+        assertSame(top, orderBook.getTop());
+
+        orderBook.applyIncremental(new JsonObject()
+                .put("asks", new JsonArray().add(new JsonArray().add("101.0").add("0").add("102"))));
+        assertTrue(Double.isNaN(orderBook.getTop().getAskPrice()));
+        assertTrue(new JsonObject(orderBook.getTop().toJson()).containsKey("mid"));
+        assertNull(new JsonObject(orderBook.getTop().toJson()).getValue("mid"));
+    }
+
+    @Test
+    void testPublishedViewIsUnaffectedByLaterWrites() {
+        assertSame(BookView.EMPTY, orderBook.getView());
+
+        orderBook.applySnapshot(new JsonObject()
+                .put("sequence", "100")
+                .put("bids", new JsonArray().add(new JsonArray().add("100.0").add("1.5")))
+                .put("asks", new JsonArray().add(new JsonArray().add("101.0").add("2.0"))));
+        BookView view = orderBook.publishView();
+        assertSame(view, orderBook.getView());
+        assertSame(view, orderBook.publishView());
+
+        orderBook.applyIncremental(new JsonObject()
+                .put("bids", new JsonArray()
+                        .add(new JsonArray().add("100.0").add("0").add("101"))
+                        .add(new JsonArray().add("100.5").add("3.0").add("102"))));
+        orderBook.setLastSequence(102);
+
+        assertEquals(100L, view.getSequence());
+        assertEquals(1, view.getBids().size());
+        assertEquals(100.0, view.getBids().priceAt(0));
+        assertEquals(1.5, view.getBids().sizeAt(0));
+
+        BookView next = orderBook.publishView();
+        assertEquals(102L, next.getSequence());
+        assertEquals(100.5, next.getBids().priceAt(0));
+        assertEquals(orderBook.toJson(), next.toJson(100, true));
+    }
+
+    @Test
+    void testLowPricedLevelsAndTinySizesAreKeptExactly() {
+        orderBook.setLastSequence(100);
+
+        orderBook.applyIncremental(new JsonObject()
+                .put("bids", new JsonArray()
+                        .add(new JsonArray().add("0.000012345").add("0.00005").add("101"))
+                        .add(new JsonArray().add("0.000012344").add("3").add("102")))
+                .put("asks", new JsonArray().add(new JsonArray().add("0.000012346").add("12000000000").add("103"))));
+
+        assertEquals(2, orderBook.getBids().size());
+        assertEquals(0.00005, orderBook.getBids().sizeAt(0));
+        assertEquals("{\"sequence\":100,\"bids\":[[0.000012345,0.00005],[0.000012344,3.0]],"
+                + "\"asks\":[[0.000012346,12000000000.0]]}", orderBook.toJson(2, false));
+
+        orderBook.applyIncremental(new JsonObject()
+                .put("bids", new JsonArray().add(new JsonArray().add("0.000012345").add("0.00000000").add("104"))));
+        assertEquals(1, orderBook.getBids().size());
+        assertEquals(0.000012344, orderBook.getBids().priceAt(0));
+    }
+
+    @Test
+    void testTopOfBookIsWrittenInExactDecimals() {
+        orderBook.applySnapshot(new JsonObject()
+                .put("sequence", "100")
+                .put("bids", new JsonArray().add(new JsonArray().add("100.0").add("1.5")))
+                .put("asks", new JsonArray().add(new JsonArray().add("100.01").add("0.00002"))));
+        assertEquals("{\"sequence\":100,\"bidPrice\":100.0,\"bidSize\":1.5,\"askPrice\":100.01,\"askSize\":0.00002,"
+                + "\"mid\":100.005,\"spread\":0.01}", orderBook.getTop().toJson());
+
+        OrderBook lowPriced = new OrderBook();
+        lowPriced.applySnapshot(new JsonObject()
+                .put("sequence", "7")
+                .put("bids", new JsonArray().add(new JsonArray().add("0.000012").add("3")))
+                .put("asks", new JsonArray().add(new JsonArray().add("0.000013").add("4"))));
+        assertEquals("{\"sequence\":7,\"bidPrice\":0.000012,\"bidSize\":3.0,\"askPrice\":0.000013,\"askSize\":4.0,"
+                + "\"mid\":0.0000125,\"spread\":0.000001}", lowPriced.getTop().toJson());
+    }
 }
@@ -0,0 +1,115 @@
+package org.rengen.takehome;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SnapshotSchedulerTest {
+
+    private final Map<String, Handler<AsyncResult<OrderBookSnapshot>>> inFlight = new LinkedHashMap<>();
+    private final List<String> fetched = new ArrayList<>();
+    private long now;
+    private SnapshotScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        SnapshotScheduler.Fetcher fetcher = (symbol, record, handler) -> {
+            fetched.add(symbol);
+            inFlight.put(symbol, handler);
+        };
+        // 1 request per second, burst of 1, one at a time
+        scheduler = new SnapshotScheduler(mock(Vertx.class), fetcher, 1.0, 1, 1, () -> now);
+    }
+
+    private void completeFetch(String symbol) {
+        OrderBookSnapshot snapshot = new OrderBookSnapshot(symbol, 1, new PriceLevels(true), new PriceLevels(false));
+        inFlight.remove(symbol).handle(Future.succeededFuture(snapshot));
+    }
+
+    @Test
+    void testRequestsForTheSameSymbolShareOneFetch() {
+        List<OrderBookSnapshot> delivered = new ArrayList<>();
+        scheduler.request("BTC-USDT", 0, true, ar -> delivered.add(ar.result()));
+        scheduler.request("BTC-USDT", 5, false, ar -> delivered.add(ar.result()));
+
+        assertEquals(List.of("BTC-USDT"), fetched);
+        completeFetch("BTC-USDT");
+        assertEquals(2, delivered.size());
+        assertSame(delivered.get(0), delivered.get(1));
+    }
+
+    @Test
+    void testBudgetIsEnforcedAndHighestPriorityGoesFirst() {
+        scheduler.request("A", 0, true, ar -> { });
+        scheduler.request("B", 1, true, ar -> { });
+        scheduler.request("C", 100, true, ar -> { });
+        scheduler.request("D", 10, true, ar -> { });
+        assertEquals(List.of("A"), fetched);
+        assertEquals(3, scheduler.queuedCount());
+
+        // The bucket is empty until a second has passed
+        completeFetch("A");
+        assertEquals(List.of("A"), fetched);
+
+        now += 1_000_000_000L;
+        scheduler.request("B", 1, true, ar -> { });
+        assertEquals(List.of("A", "C"), fetched);
+
+        now += 1_000_000_000L;
+        completeFetch("C");
+        assertEquals(List.of("A", "C", "D"), fetched);
+    }
+
+    @Test
+    void testRateLimitedFetchIsRequeued() {
+        List<Boolean> outcomes = new ArrayList<>();
+        scheduler.request("A", 0, true, ar -> outcomes.add(ar.succeeded()));
+        inFlight.remove("A").handle(Future.failedFuture(new SnapshotScheduler.RateLimitedException("429")));
+        assertTrue(outcomes.isEmpty());
+        assertEquals(1, scheduler.queuedCount());
+
+        now += 1_000_000_000L;
+        scheduler.request("A", 0, true, ar -> outcomes.add(ar.succeeded()));
+        completeFetch("A");
+        assertEquals(List.of(true, true), outcomes);
+    }
+
+    @Test
+    void testFailedFetchFreesItsSlot() {
+        List<Boolean> outcomes = new ArrayList<>();
+        scheduler.request("A", 0, true, ar -> outcomes.add(ar.succeeded()));
+        Handler<AsyncResult<OrderBookSnapshot>> handler = inFlight.remove("A");
+        handler.handle(Future.failedFuture("timed out"));
+        assertEquals(List.of(false), outcomes);
+        assertEquals(0, scheduler.runningCount());
+
+        // A late second answer for the same fetch changes nothing
+        handler.handle(Future.failedFuture("timed out"));
+        assertEquals(List.of(false), outcomes);
+
+        now += 1_000_000_000L;
+        scheduler.request("B", 0, true, ar -> { });
+        assertEquals(List.of("A", "B"), fetched);
+    }
+
+    @Test
+    void testFetcherThatThrowsFailsTheFetch() {
+        SnapshotScheduler throwing = new SnapshotScheduler(mock(Vertx.class), (symbol, record, handler) -> {
+            throw new IllegalStateException("client closed");
+        }, 1.0, 2, 1, () -> now);
+        List<String> failures = new ArrayList<>();
+        throwing.request("A", 0, true, ar -> failures.add(ar.cause().getMessage()));
+        assertEquals(List.of("client closed"), failures);
+        assertEquals(0, throwing.runningCount());
+    }
+}
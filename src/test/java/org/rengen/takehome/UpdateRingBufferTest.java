@@ -0,0 +1,95 @@
+package org.rengen.takehome;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateRingBufferTest {
+
+    private static Level2Update update(long start, long end) {
+        Level2Update update = new Level2Update();
+        update.setSequenceStart(start);
+        update.setSequenceEnd(end);
+        return update;
+    }
+
+    @Test
+    void testLateUpdateIsSlottedInOrder() {
+        UpdateRingBuffer buffer = new UpdateRingBuffer(8, UpdateRingBuffer.OverflowPolicy.DROP_OLDEST);
+        buffer.add(update(10, 12));
+        buffer.add(update(16, 18));
+        buffer.add(update(13, 15));
+        assertFalse(buffer.add(update(13, 15)));
+
+        assertEquals(3, buffer.size());
+        assertEquals(10, buffer.poll().getSequenceStart());
+        assertEquals(13, buffer.poll().getSequenceStart());
+        assertEquals(16, buffer.poll().getSequenceStart());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void testDropOldestKeepsNewestWhenFull() {
+        UpdateRingBuffer buffer = new UpdateRingBuffer(3, UpdateRingBuffer.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(update(i * 10, i * 10 + 9));
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.getDropped());
+        assertEquals(20, buffer.peek().getSequenceStart());
+
+        // Older than anything buffered: dropped rather than evicting something newer
+        assertFalse(buffer.add(update(5, 9)));
+        assertEquals(20, buffer.peek().getSequenceStart());
+        assertEquals(3, buffer.getDropped());
+
+        while (!buffer.isEmpty()) {
+            buffer.poll();
+        }
+        assertEquals(0, buffer.getDropped());
+    }
+
+    @Test
+    void testClearPolicyStartsOver() {
+        UpdateRingBuffer buffer = new UpdateRingBuffer(2, UpdateRingBuffer.OverflowPolicy.CLEAR);
+        buffer.add(update(1, 1));
+        buffer.add(update(2, 2));
+        buffer.add(update(3, 3));
+        assertEquals(1, buffer.size());
+        assertEquals(2, buffer.getDropped());
+        assertEquals(3, buffer.peek().getSequenceStart());
+    }
+
+    @Test
+    void testEvictedAndClearedUpdatesGoBackToTheirPool() {
+        Level2UpdatePool pool = new Level2UpdatePool(8);
+        UpdateRingBuffer buffer = new UpdateRingBuffer(2, UpdateRingBuffer.OverflowPolicy.DROP_OLDEST);
+        for (long seq = 1; seq <= 3; seq++) {
+            Level2Update update = pool.acquire();
+            update.setSequenceStart(seq);
+            update.setSequenceEnd(seq);
+            assertTrue(buffer.add(update));
+        }
+        // The first was evicted for the third
+        assertEquals(1, pool.available());
+
+        Level2Update old = pool.acquire();
+        old.setSequenceStart(0);
+        old.setSequenceEnd(0);
+        // Not kept, so still the caller's to release
+        assertFalse(buffer.add(old));
+        assertEquals(0, pool.available());
+        old.release();
+
+        buffer.clear();
+        assertEquals(3, pool.available());
+        assertTrue(buffer.isEmpty());
+
+        UpdateRingBuffer clearing = new UpdateRingBuffer(1, UpdateRingBuffer.OverflowPolicy.CLEAR);
+        clearing.add(pool.acquire());
+        Level2Update next = pool.acquire();
+        next.setSequenceStart(5);
+        assertTrue(clearing.add(next));
+        assertEquals(2, pool.available());
+    }
+}
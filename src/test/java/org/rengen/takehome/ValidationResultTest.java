@@ -0,0 +1,72 @@
+package org.rengen.takehome;
+
+import io.vertx.core.json.JsonArray;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationResultTest {
+
+    private static PriceLevels levels(boolean descending, double... priceSizePairs) {
+        PriceLevels levels = new PriceLevels(descending);
+        for (int i = 0; i < priceSizePairs.length; i += 2) {
+            levels.set(priceSizePairs[i], priceSizePairs[i + 1]);
+        }
+        return levels;
+    }
+
+    @Test
+    void testLevelsBeyondOfficialDepthAreNotCounted() {
+        PriceLevels official = levels(true, 100, 1, 99, 2);
+        PriceLevels mine = levels(true, 100, 1, 99, 2, 98, 5, 97, 5);
+        assertEquals(0, OrderBookComparator.countSideDiffs(mine, official));
+
+        PriceLevels drifted = levels(true, 100.5, 1, 100, 3, 98, 5);
+        // 100.5 extra, 100 size differs, 99 missing
+        assertEquals(3, OrderBookComparator.countSideDiffs(drifted, official));
+    }
+
+    @Test
+    void testCompareAgainstSnapshot() {
+        BookView view = new BookView(101, 1, 0, levels(true, 100, 1, 99, 2), levels(false, 101, 1, 102, 4));
+        OrderBookSnapshot official = new OrderBookSnapshot("BTC-USDT", 100,
+                levels(true, 100, 1, 99, 2), levels(false, 101, 1, 102, 2));
+
+        ValidationResult result = ValidationResult.compare(view, official, 1000L);
+        assertEquals(100.0, result.getBidsMatchPercentage());
+        assertEquals(0, result.getBidDiffs());
+        assertEquals(1, result.getAskDiffs());
+        assertFalse(result.booksMatch());
+        assertEquals(101L, result.toJson().getLong("bookSequence"));
+    }
+
+    @Test
+    void testSizesCompareExactly() {
+        PriceLevels official = levels(true, 0.00001234, 0.00000012, 0.00001233, 5);
+        assertEquals(0, OrderBookComparator.countSideDiffs(levels(true, 0.00001234, 0.00000012, 0.00001233, 5), official));
+        // Differences far below the old 1e-6 tolerance are still differences
+        assertEquals(1, OrderBookComparator.countSideDiffs(levels(true, 0.00001234, 0.00000013, 0.00001233, 5), official));
+
+        JsonArray diff = new JsonArray();
+        OrderBookComparator.compareSideDiff(levels(true, 0.00001234, 0.00000012, 0.00001233, 5.00000001), official, diff);
+        assertEquals(1, diff.size());
+        assertEquals(0.00001233, diff.getJsonObject(0).getDouble("price"));
+        assertEquals(5.00000001, diff.getJsonObject(0).getDouble("mySize"));
+    }
+
+    @Test
+    void testHistoryKeepsMostRecentResults() {
+        ValidationHistory history = new ValidationHistory(3);
+        assertNull(history.latest());
+        for (int i = 1; i <= 5; i++) {
+            history.add(new ValidationResult(i, i, i, 100, 100, 0, 0));
+        }
+        assertEquals(3, history.size());
+        assertEquals(5L, history.latest().getTimestamp());
+
+        JsonArray json = history.toJson();
+        assertEquals(3, json.size());
+        assertEquals(3L, json.getJsonObject(0).getLong("timestamp"));
+        assertEquals(5L, json.getJsonObject(2).getLong("timestamp"));
+    }
+}